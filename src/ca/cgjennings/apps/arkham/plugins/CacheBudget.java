@@ -0,0 +1,296 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.awt.EventQueue;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+import java.util.logging.Level;
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.swing.Timer;
+import resources.CacheMetrics;
+import resources.ResourceKit;
+import resources.Settings;
+
+/**
+ * Enforces byte budgets on the registered caches. Each cache can have its own
+ * budget, and there is a global budget for all caches combined. Since
+ * {@link CacheMetrics} can only clear a cache completely, a cache that is
+ * over budget is cleared; when the combined size is over the global budget,
+ * the largest caches are cleared until it fits.
+ *
+ * <p>
+ * Optionally, a heap guard also sets a usage threshold on the tenured heap
+ * pool. When the pool crosses the threshold, the largest cache is cleared so
+ * that the application can recover before running out of memory.
+ *
+ * <p>
+ * Caches that do not report their size are measured by the shared
+ * {@link CacheSizer}, so that they can be budgeted too. The sizer is only
+ * kept running while there is something that needs the sizes: a budget, the
+ * heap guard, or automatic trimming by the {@link CacheTrimmer}.
+ *
+ * <p>
+ * Budgets are stored in user settings and are enforced whenever the plug-in
+ * is loaded, whether or not the Cache Manager is open. Except for
+ * {@link #install} and {@link #uninstall}, all methods must be called from
+ * the event dispatch thread.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class CacheBudget {
+
+    private static final String KEY_PREFIX = "devtools-cache-budget-";
+    private static final String GLOBAL_KEY = KEY_PREFIX + "all-caches";
+    private static final String HEAP_GUARD_KEY = "devtools-cache-heap-guard";
+
+    /**
+     * The fraction of the tenured pool's maximum size at which the heap guard
+     * clears a cache.
+     */
+    public static final double HEAP_THRESHOLD = 0.85d;
+
+    private static final int CHECK_DELAY = 5000;
+    private static final long MIB = 1024L * 1024L;
+
+    private static Timer checkTimer;
+    private static boolean sizerAcquired;
+    private static MemoryPoolMXBean guardedPool;
+    private static long previousThreshold;
+    private static NotificationListener heapListener;
+
+    private CacheBudget() {
+    }
+
+    /**
+     * Starts enforcing the stored budgets.
+     */
+    public static void install() {
+        if (checkTimer != null) {
+            return;
+        }
+        checkTimer = new Timer(CHECK_DELAY, (e) -> check());
+        checkTimer.start();
+        if (isHeapGuardEnabled()) {
+            startHeapGuard();
+        }
+    }
+
+    /**
+     * Stops enforcing budgets and removes the heap guard.
+     */
+    public static void uninstall() {
+        if (checkTimer != null) {
+            checkTimer.stop();
+            checkTimer = null;
+        }
+        if (sizerAcquired) {
+            sizerAcquired = false;
+            CacheSizer.release();
+        }
+        stopHeapGuard();
+    }
+
+    private static String key(CacheMetrics cm) {
+        return KEY_PREFIX + cm.toString().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "-");
+    }
+
+    /**
+     * Returns the budget for a cache.
+     *
+     * @param cm the cache
+     * @return the budget in MiB, or 0 if the cache has no budget
+     */
+    public static int getBudget(CacheMetrics cm) {
+        return Settings.getUser().getInt(key(cm), 0);
+    }
+
+    /**
+     * Sets the budget for a cache. The budget takes effect at the next
+     * periodic check rather than immediately, so that stepping a budget
+     * through smaller values on the way to the one wanted does not clear the
+     * cache.
+     *
+     * @param cm the cache
+     * @param mib the budget in MiB, or 0 for no budget
+     */
+    public static void setBudget(CacheMetrics cm, int mib) {
+        Settings.getUser().set(key(cm), String.valueOf(Math.max(0, mib)));
+    }
+
+    /**
+     * Returns the budget for all caches combined.
+     *
+     * @return the global budget in MiB, or 0 if there is no global budget
+     */
+    public static int getGlobalBudget() {
+        return Settings.getUser().getInt(GLOBAL_KEY, 0);
+    }
+
+    /**
+     * Sets the budget for all caches combined. Like {@link #setBudget}, it
+     * takes effect at the next periodic check.
+     *
+     * @param mib the global budget in MiB, or 0 for no budget
+     */
+    public static void setGlobalBudget(int mib) {
+        Settings.getUser().set(GLOBAL_KEY, String.valueOf(Math.max(0, mib)));
+    }
+
+    public static boolean isHeapGuardEnabled() {
+        return Settings.getUser().getInt(HEAP_GUARD_KEY, 0) != 0;
+    }
+
+    /**
+     * Sets whether the largest cache is cleared when the heap is nearly full.
+     *
+     * @param enable if true, install the heap guard
+     */
+    public static void setHeapGuardEnabled(boolean enable) {
+        Settings.getUser().set(HEAP_GUARD_KEY, enable ? "1" : "0");
+        if (checkTimer == null) {
+            return;
+        }
+        if (enable) {
+            startHeapGuard();
+        } else {
+            stopHeapGuard();
+        }
+    }
+
+    /**
+     * Starts or stops the sizer as needed, then enforces the budgets.
+     */
+    private static void check() {
+        final CacheMetrics[] caches = ResourceKit.getRegisteredCacheMetrics();
+        boolean budgeted = getGlobalBudget() > 0;
+        for (int i = 0; i < caches.length && !budgeted; ++i) {
+            budgeted = getBudget(caches[i]) > 0;
+        }
+        final boolean needSizes = budgeted || isHeapGuardEnabled() || CacheTrimmer.isEnabled();
+        if (needSizes != sizerAcquired) {
+            if (needSizes) {
+                CacheSizer.acquire();
+            } else {
+                CacheSizer.release();
+            }
+            sizerAcquired = needSizes;
+        }
+        if (budgeted) {
+            enforce(caches);
+        }
+    }
+
+    /**
+     * Clears any cache that is over its own budget, then clears the largest
+     * caches until all caches together fit in the global budget.
+     */
+    private static void enforce(CacheMetrics[] caches) {
+        long total = 0L;
+        for (CacheMetrics cm : caches) {
+            final long bytes = CacheSizer.getByteSize(cm);
+            final int budget = getBudget(cm);
+            if (budget > 0 && bytes > budget * MIB && cm.isClearSupported()) {
+                clear(cm, bytes, "over its " + budget + " MiB budget");
+            } else if (bytes > 0L) {
+                total += bytes;
+            }
+        }
+
+        final int global = getGlobalBudget();
+        for (int i = 0; i < caches.length && global > 0 && total > global * MIB; ++i) {
+            CacheMetrics largest = findLargest(caches);
+            if (largest == null) {
+                break;
+            }
+            final long bytes = CacheSizer.getByteSize(largest);
+            clear(largest, bytes, "caches over the " + global + " MiB global budget");
+            total -= bytes;
+        }
+    }
+
+    /**
+     * Returns the largest cache that can be cleared and is not empty.
+     */
+    static CacheMetrics findLargest(CacheMetrics[] caches) {
+        CacheMetrics largest = null;
+        long largestBytes = 0L;
+        for (CacheMetrics cm : caches) {
+            final long bytes = CacheSizer.getByteSize(cm);
+            if (bytes > largestBytes && cm.isClearSupported() && cm.getItemCount() > 0) {
+                largest = cm;
+                largestBytes = bytes;
+            }
+        }
+        return largest;
+    }
+
+    static void clear(CacheMetrics cm, long bytes, String reason) {
+        StrangeEons.log.log(Level.INFO, "clearing {0} ({1} MiB): {2}", new Object[]{cm, bytes / MIB, reason});
+        cm.clear();
+    }
+
+    private static void startHeapGuard() {
+        if (guardedPool != null) {
+            return;
+        }
+        MemoryPoolMXBean pool = findTenuredPool();
+        if (pool == null) {
+            StrangeEons.log.warning("no heap pool supports usage thresholds; heap guard disabled");
+            return;
+        }
+        previousThreshold = pool.getUsageThreshold();
+        pool.setUsageThreshold((long) (pool.getUsage().getMax() * HEAP_THRESHOLD));
+        heapListener = (notification, handback) -> {
+            if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                EventQueue.invokeLater(() -> {
+                    CacheMetrics largest = findLargest(ResourceKit.getRegisteredCacheMetrics());
+                    if (largest != null) {
+                        clear(largest, CacheSizer.getByteSize(largest), "heap over " + Math.round(HEAP_THRESHOLD * 100d) + "%");
+                    }
+                });
+            }
+        };
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(heapListener, null, null);
+        guardedPool = pool;
+    }
+
+    private static void stopHeapGuard() {
+        if (guardedPool == null) {
+            return;
+        }
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(heapListener);
+        } catch (ListenerNotFoundException ex) {
+            StrangeEons.log.log(Level.WARNING, null, ex);
+        }
+        guardedPool.setUsageThreshold(previousThreshold);
+        guardedPool = null;
+        heapListener = null;
+    }
+
+    /**
+     * Returns the heap pool that holds long-lived objects, or if there is no
+     * such pool, the largest heap pool that supports usage thresholds.
+     */
+    static MemoryPoolMXBean findTenuredPool() {
+        MemoryPoolMXBean best = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported() || pool.getUsage().getMax() <= 0L) {
+                continue;
+            }
+            final String name = pool.getName();
+            if (name.contains("Old Gen") || name.contains("Tenured")) {
+                return pool;
+            }
+            if (best == null || pool.getUsage().getMax() > best.getUsage().getMax()) {
+                best = pool;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,246 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import resources.CacheMetrics;
+
+/**
+ * Locates the map that backs a registered cache so that its contents can be
+ * examined. {@link CacheMetrics} does not expose the cache itself, so the
+ * map is found by reflection: the fields of the metrics object, of its
+ * enclosing instance, and the static fields of its enclosing classes are
+ * searched for a map whose size matches the metrics' item count and whose
+ * values are all of the cache's content type. Values held through a
+ * {@link Reference} are checked by their referent. The map is only used if
+ * exactly one candidate matches; if several do, or the cache is empty and
+ * there is more than one map to choose from, the map is treated as not found
+ * rather than guessed.
+ *
+ * <p>
+ * Not every cache can be located this way; callers must be prepared for
+ * {@link #findMap} to return <code>null</code>.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class CacheContents {
+
+    private static final int RETRIES = 3;
+
+    private CacheContents() {
+    }
+
+    /**
+     * Returns the live map that holds a cache's entries, or <code>null</code>
+     * if it cannot be found.
+     *
+     * @param cm the metrics of the cache to locate
+     * @return the backing map, or <code>null</code>
+     */
+    public static Map<?, ?> findMap(CacheMetrics cm) {
+        final int count = cm.getItemCount();
+        // maps define equality by content, so track the ones seen by identity
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Map<?, ?>> candidates = new ArrayList<>();
+
+        collectInstanceMaps(cm, candidates, seen);
+        Object outer = enclosingInstance(cm);
+        if (outer != null) {
+            collectInstanceMaps(outer, candidates, seen);
+        }
+        for (Class<?> c = cm.getClass(); c != null; c = c.getEnclosingClass()) {
+            collectStaticMaps(c, candidates, seen);
+        }
+
+        // an empty map matches any empty cache, so it is only trusted alone
+        if (count == 0) {
+            return candidates.size() == 1 && candidates.get(0).isEmpty() ? candidates.get(0) : null;
+        }
+        final Class<?> type = cm.getContentType();
+        Map<?, ?> match = null;
+        for (Map<?, ?> m : candidates) {
+            try {
+                if (m.size() == count && hasValuesOf(m, type)) {
+                    if (match != null) {
+                        return null;
+                    }
+                    match = m;
+                }
+            } catch (RuntimeException ex) {
+                // unsafe to use while being modified
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Returns whether every value in a map is of a given type. Cleared
+     * references and null values are allowed.
+     */
+    private static boolean hasValuesOf(Map<?, ?> m, Class<?> type) {
+        if (type == null || type == Object.class) {
+            return true;
+        }
+        for (Object v : m.values()) {
+            if (v instanceof Reference && !Reference.class.isAssignableFrom(type)) {
+                v = ((Reference<?>) v).get();
+            }
+            if (v != null && !type.isInstance(v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a copy of the keys of a cache, or <code>null</code> if the
+     * cache's map cannot be found or keeps changing while it is copied.
+     *
+     * @param cm the metrics of the cache
+     * @return the keys currently in the cache
+     */
+    public static List<Object> getKeys(CacheMetrics cm) {
+        Map<?, ?> map = findMap(cm);
+        if (map == null) {
+            return null;
+        }
+        for (int attempt = 0; attempt < RETRIES; ++attempt) {
+            try {
+                synchronized (map) {
+                    return new ArrayList<>(map.keySet());
+                }
+            } catch (ConcurrentModificationException ex) {
+                // try again
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a copy of the entries of a cache, or <code>null</code> if the
+     * cache's map cannot be found or keeps changing while it is copied. The
+     * entries are detached from the cache, but the keys and values are the
+     * live objects.
+     *
+     * @param cm the metrics of the cache
+     * @return the entries currently in the cache
+     */
+    public static List<Map.Entry<Object, Object>> getEntries(CacheMetrics cm) {
+        Map<?, ?> map = findMap(cm);
+        if (map == null) {
+            return null;
+        }
+        for (int attempt = 0; attempt < RETRIES; ++attempt) {
+            try {
+                synchronized (map) {
+                    List<Map.Entry<Object, Object>> entries = new ArrayList<>(map.size());
+                    for (Map.Entry<?, ?> e : map.entrySet()) {
+                        entries.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue()));
+                    }
+                    return entries;
+                }
+            } catch (ConcurrentModificationException ex) {
+                // try again
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a random sample of the values in a cache, or <code>null</code>
+     * if the cache's map cannot be found or keeps changing while it is
+     * sampled. Every value has an equal chance of being chosen, but only the
+     * chosen values are copied.
+     *
+     * @param cm the metrics of the cache
+     * @param size the maximum number of values to return
+     * @param random the source of randomness
+     * @return up to <code>size</code> values from the cache
+     */
+    public static List<Object> sampleValues(CacheMetrics cm, int size, Random random) {
+        Map<?, ?> map = findMap(cm);
+        if (map == null) {
+            return null;
+        }
+        for (int attempt = 0; attempt < RETRIES; ++attempt) {
+            try {
+                synchronized (map) {
+                    // reservoir sampling
+                    List<Object> sample = new ArrayList<>(Math.min(size, map.size()));
+                    int seen = 0;
+                    for (Object v : map.values()) {
+                        if (sample.size() < size) {
+                            sample.add(v);
+                        } else {
+                            final int slot = random.nextInt(seen + 1);
+                            if (slot < size) {
+                                sample.set(slot, v);
+                            }
+                        }
+                        ++seen;
+                    }
+                    return sample;
+                }
+            } catch (ConcurrentModificationException ex) {
+                // try again
+            }
+        }
+        return null;
+    }
+
+    private static Object enclosingInstance(Object o) {
+        for (Field f : o.getClass().getDeclaredFields()) {
+            if (f.isSynthetic() && f.getName().startsWith("this$")) {
+                try {
+                    f.setAccessible(true);
+                    return f.get(o);
+                } catch (ReflectiveOperationException | RuntimeException ex) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void collectInstanceMaps(Object o, List<Map<?, ?>> candidates, Set<Object> seen) {
+        for (Class<?> c = o.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(f.getModifiers())) {
+                    addIfMap(f, o, candidates, seen);
+                }
+            }
+        }
+    }
+
+    private static void collectStaticMaps(Class<?> c, List<Map<?, ?>> candidates, Set<Object> seen) {
+        for (Field f : c.getDeclaredFields()) {
+            if (Modifier.isStatic(f.getModifiers())) {
+                addIfMap(f, null, candidates, seen);
+            }
+        }
+    }
+
+    private static void addIfMap(Field f, Object owner, List<Map<?, ?>> candidates, Set<Object> seen) {
+        if (f.getType().isPrimitive()) {
+            return;
+        }
+        try {
+            f.setAccessible(true);
+            Object v = f.get(owner);
+            if (v instanceof Map && seen.add(v)) {
+                candidates.add((Map<?, ?>) v);
+            }
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // inaccessible; skip it
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.project.ProjectUtilities;
+import ca.cgjennings.ui.DocumentEventAdapter;
+import ca.cgjennings.ui.JFilterField;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.FlowLayout;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.RowFilter;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
+import resources.CacheMetrics;
+
+/**
+ * Lists the individual entries of one cache with their estimated size and
+ * age, so that the few entries that dominate a large cache can be found.
+ * The entries are copied on the event dispatch thread, then sized on a
+ * background thread by a {@link SizeEstimator}.
+ *
+ * <p>
+ * Caches do not record when their entries are used, so the age of an entry
+ * is the time since the panel first saw its key. Caches whose contents cannot
+ * be located by {@link CacheContents} cannot be listed.
+ *
+ * <p>
+ * The rows keep only the text of each key, the type of its value, and the
+ * estimated size, so the listing does not keep entries alive after the cache
+ * lets go of them. The values are held only until they have been sized.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class CacheEntriesPanel extends JPanel {
+
+    private static final Color PANEL_BACKGROUND = new Color(64, 64, 64);
+
+    private final JLabel status = new JLabel(" ");
+    private final JFilterField filterField = new JFilterField();
+    private final EntryModel model = new EntryModel();
+    private final JTable table = new JTable(model);
+    private final ExecutorService executor;
+
+    private CacheMetrics cache;
+    private final Map<String, Long> firstSeen = new HashMap<>();
+    // incremented to discard the sizes of a listing that has been replaced;
+    // also read by the inspector thread so that it can stop early
+    private volatile int generation;
+
+    public CacheEntriesPanel() {
+        super(new BorderLayout());
+        setBackground(PANEL_BACKGROUND);
+        setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, new Color(128, 128, 128)));
+        setPreferredSize(new Dimension(320, 220));
+
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        controlPanel.setBackground(Color.DARK_GRAY);
+        JButton refreshBtn = new JButton("Refresh");
+        refreshBtn.addActionListener((e) -> refresh());
+        smallFont(refreshBtn);
+        smallFont(status);
+        status.setForeground(new Color(192, 192, 192));
+        filterField.setBackground(PANEL_BACKGROUND);
+        filterField.setForeground(Color.LIGHT_GRAY);
+        filterField.setCaretColor(Color.WHITE);
+        filterField.setLabel("Key filter");
+        filterField.setSelectedTextColor(Color.BLACK);
+        filterField.setSelectionColor(new Color(255, 200, 0));
+        filterField.setTextForeground(Color.WHITE);
+        filterField.setColumns(16);
+        filterField.getDocument().addDocumentListener(new DocumentEventAdapter() {
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                EventQueue.invokeLater(CacheEntriesPanel.this::updateFilter);
+            }
+        });
+        controlPanel.add(filterField);
+        controlPanel.add(refreshBtn);
+        controlPanel.add(status);
+        add(controlPanel, BorderLayout.PAGE_START);
+
+        table.setBackground(PANEL_BACKGROUND);
+        table.setForeground(Color.WHITE);
+        table.setFillsViewportHeight(true);
+        smallFont(table);
+        table.getColumnModel().getColumn(0).setPreferredWidth(240);
+        table.setDefaultRenderer(Long.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setHorizontalAlignment(RIGHT);
+                setText(value == null ? "..." : ProjectUtilities.formatByteSize((Long) value));
+            }
+        });
+        table.setDefaultRenderer(Age.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setHorizontalAlignment(RIGHT);
+                setText(value == null ? "" : value.toString());
+            }
+        });
+        TableRowSorter<EntryModel> sorter = new TableRowSorter<>(model);
+        // largest entries first
+        sorter.setSortKeys(Collections.singletonList(new RowSorter.SortKey(2, SortOrder.DESCENDING)));
+        table.setRowSorter(sorter);
+        JScrollPane scroll = new JScrollPane(table);
+        scroll.setBorder(BorderFactory.createEmptyBorder());
+        add(scroll, BorderLayout.CENTER);
+
+        executor = Executors.newSingleThreadExecutor((r) -> {
+            Thread t = new Thread(r, "Developer Tools cache inspector");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    private static void smallFont(JComponent c) {
+        c.setFont(c.getFont().deriveFont(c.getFont().getSize() - 1f));
+    }
+
+    /**
+     * Sets the cache to list. Nothing happens if the cache is already shown;
+     * call {@link #refresh()} to list its entries again.
+     *
+     * @param cm the cache to list
+     */
+    public void setCache(CacheMetrics cm) {
+        if (cm == cache) {
+            return;
+        }
+        cache = cm;
+        firstSeen.clear();
+        refresh();
+    }
+
+    /**
+     * Lists the current entries of the cache and starts estimating their
+     * sizes.
+     */
+    public void refresh() {
+        final int gen = ++generation;
+        List<Map.Entry<Object, Object>> entries = cache == null ? null : CacheContents.getEntries(cache);
+        if (entries == null) {
+            model.setRows(Collections.<Row>emptyList());
+            status.setText(cache == null ? " " : "The entries of this cache cannot be listed");
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        Map<String, Long> stillPresent = new HashMap<>(entries.size() * 2);
+        final List<Row> rows = new ArrayList<>(entries.size());
+        // the values are only held by the inspector until they are sized
+        final List<Object> values = new ArrayList<>(entries.size());
+        for (Map.Entry<Object, Object> e : entries) {
+            final String key = String.valueOf(e.getKey());
+            Long seen = firstSeen.get(key);
+            if (seen == null) {
+                seen = now;
+            }
+            stillPresent.put(key, seen);
+            rows.add(new Row(key, e.getValue(), new Age(now - seen)));
+            values.add(e.getValue());
+        }
+        // forget the entries that have left the cache
+        firstSeen.clear();
+        firstSeen.putAll(stillPresent);
+        model.setRows(rows);
+        status.setText(String.format("%,d entries, estimating sizes...", rows.size()));
+
+        executor.submit(() -> {
+            SizeEstimator estimator = new SizeEstimator();
+            final long[] sizes = new long[rows.size()];
+            long total = 0L;
+            boolean truncated = false;
+            for (int i = 0; i < sizes.length; ++i) {
+                if (gen != generation || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                try {
+                    sizes[i] = Math.max(0L, estimator.estimate(values.set(i, null)));
+                    truncated |= estimator.isTruncated();
+                } catch (RuntimeException ex) {
+                    // the entry changed while it was being walked
+                    sizes[i] = 0L;
+                }
+                total += sizes[i];
+            }
+            final long totalBytes = total;
+            final boolean lowerBound = truncated;
+            EventQueue.invokeLater(() -> {
+                if (gen != generation) {
+                    return;
+                }
+                for (int i = 0; i < sizes.length; ++i) {
+                    rows.get(i).size = sizes[i];
+                }
+                if (!rows.isEmpty()) {
+                    model.fireTableRowsUpdated(0, rows.size() - 1);
+                }
+                status.setText(String.format("%,d entries, %s%s estimated",
+                        rows.size(), lowerBound ? "at least " : "", ProjectUtilities.formatByteSize(totalBytes)));
+            });
+        });
+    }
+
+    /**
+     * Stops estimating sizes and empties the listing.
+     */
+    public void dispose() {
+        ++generation;
+        executor.shutdownNow();
+        cache = null;
+        firstSeen.clear();
+        model.setRows(Collections.<Row>emptyList());
+    }
+
+    private String currentFilterText = "";
+
+    private void updateFilter() {
+        String text = filterField.getText();
+        if (!text.equals(currentFilterText)) {
+            RowFilter<Object, Object> newFilter = null;
+            if (!text.isEmpty()) {
+                newFilter = RowFilter.regexFilter("(?i)" + Pattern.quote(text), 0);
+            }
+            ((TableRowSorter) table.getRowSorter()).setRowFilter(newFilter);
+            currentFilterText = text;
+        }
+    }
+
+    private static final class Row {
+
+        final String key;
+        final String type;
+        final Age age;
+        Long size;
+
+        Row(String key, Object value, Age age) {
+            this.key = key;
+            this.age = age;
+            Object v = value instanceof Reference ? ((Reference<?>) value).get() : value;
+            type = v == null ? "" : v.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * Wraps an age in milliseconds so that it is displayed in readable units
+     * while still sorting numerically.
+     */
+    private static final class Age implements Comparable<Age> {
+
+        final long ms;
+
+        Age(long ms) {
+            this.ms = ms;
+        }
+
+        @Override
+        public int compareTo(Age o) {
+            return Long.compare(ms, o.ms);
+        }
+
+        @Override
+        public String toString() {
+            final long s = ms / 1000L;
+            if (s < 60L) {
+                return s + " s";
+            }
+            if (s < 3600L) {
+                return (s / 60L) + " min";
+            }
+            return String.format("%.1f h", s / 3600d);
+        }
+    }
+
+    private static final class EntryModel extends AbstractTableModel {
+
+        private final String[] names = new String[]{"Key", "Type", "Size", "Age"};
+        private final Class<?>[] types = new Class<?>[]{String.class, String.class, Long.class, Age.class};
+        private List<Row> rows = Collections.emptyList();
+
+        void setRows(List<Row> rows) {
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return names.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return names[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return types[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Row r = rows.get(row);
+            switch (column) {
+                case 0:
+                    return r.key;
+                case 1:
+                    return r.type;
+                case 2:
+                    return r.size;
+                default:
+                    return r.age;
+            }
+        }
+    }
+}
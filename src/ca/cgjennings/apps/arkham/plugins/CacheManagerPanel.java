@@ -1,31 +1,99 @@
 package ca.cgjennings.apps.arkham.plugins;
 
+import ca.cgjennings.apps.arkham.StrangeEons;
 import ca.cgjennings.apps.arkham.ToolWindow;
 import ca.cgjennings.apps.arkham.project.ProjectUtilities;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.geom.Path2D;
+import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.logging.Level;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.DefaultListModel;
+import javax.swing.JList;
+import javax.swing.JTabbedPane;
 import javax.swing.Timer;
 import resources.CacheMetrics;
 import resources.ResourceKit;
 
 /**
- * Panel for the tool window that displays cache metrics info.
+ * Panel for the tool window that displays cache metrics info. Load and
+ * eviction statistics are derived by the shared {@link CacheSampler}. A
+ * second tab compares all caches at once in a {@link CacheTablePanel}.
  */
-final class CacheManagerPanel extends javax.swing.JPanel {
+final class CacheManagerPanel extends javax.swing.JPanel implements DevToolProxy.UnloadablePanel {
 
     /**
      * Creates new form CacheManagerPanel
      */
     public CacheManagerPanel(ToolWindow tw) {
         initComponents();
+        turnoverLabel.setToolTipText("Share of loaded entries that were later evicted; "
+                + "high turnover at a steady size means the cache is thrashing");
+        sampler = CacheSampler.acquire();
+        cacheList.setCellRenderer(new SparklineRenderer());
+        globalBudgetSpinner.setValue(CacheBudget.getGlobalBudget());
+        heapGuardCheck.setSelected(CacheBudget.isHeapGuardEnabled());
+        autoTrimCheck.setSelected(CacheTrimmer.isEnabled());
+        autoTrimCheck.setToolTipText(String.format(
+                "Clear the largest cache when the tenured heap pool is over %.0f%% full after %d collections in a row",
+                CacheTrimmer.OCCUPANCY_THRESHOLD * 100d, CacheTrimmer.CYCLES
+        ));
+        warmUpCheck.setSelected(WarmUpProfile.isEnabled());
+        exportCheck.setSelected(MetricsExporter.isEnabled());
+        exportCheck.setToolTipText("Register the memory and cache statistics as MBeans in the "
+                + MetricsExporter.DOMAIN + " domain, for JConsole or other JMX clients");
+        entriesPanel.setVisible(false);
+        cachePanel.add(entriesPanel, java.awt.BorderLayout.PAGE_END);
+
+        tablePanel = new CacheTablePanel(sampler);
+        remove(splitter);
+        tabs.addTab("Cache", splitter);
+        tabs.addTab("All Caches", tablePanel);
+        // only snapshot every cache while the table is showing
+        tabs.addChangeListener((e) -> updateTablePanel());
+        add(tabs, java.awt.BorderLayout.CENTER);
+        heapGuardCheck.setToolTipText(String.format(
+                "Clear the largest cache when the tenured heap pool is over %.0f%% full", CacheBudget.HEAP_THRESHOLD * 100d
+        ));
         install(tw);
         reload();
     }
 
+    private CacheSampler sampler;
+    private final CacheEntriesPanel entriesPanel = new CacheEntriesPanel();
+    private final JTabbedPane tabs = new JTabbedPane();
+    private CacheTablePanel tablePanel;
+
+    private void updateTablePanel() {
+        if (owner != null && owner.isVisible() && tabs.getSelectedComponent() == tablePanel) {
+            tablePanel.start();
+        } else {
+            tablePanel.stop();
+        }
+    }
+
+    @Override
+    public void onUnload() {
+        updateTimer.stop();
+        entriesPanel.dispose();
+        tablePanel.dispose();
+        if (sampler != null) {
+            sampler = null;
+            CacheSampler.release();
+        }
+        releaseSizer();
+    }
+
     private ToolWindow owner;
 
     void install(ToolWindow tw) {
@@ -46,13 +114,34 @@ final class CacheManagerPanel extends javax.swing.JPanel {
     }
 
     private void windowVisible() {
+        if (!sizerAcquired) {
+            sizerAcquired = true;
+            CacheSizer.acquire();
+            sampler.startTrackingKeys();
+        }
         reload();
         updateCachePanel();
         updateTimer.start();
+        updateTablePanel();
     }
 
     private void windowHidden() {
         updateTimer.stop();
+        updateTablePanel();
+        // let the listed entries go; updateCachePanel() lists them again
+        entriesPanel.setCache(null);
+        releaseSizer();
+    }
+
+    // the sizer and key tracking are only needed while the results can be seen
+    private boolean sizerAcquired;
+
+    private void releaseSizer() {
+        if (sizerAcquired) {
+            sizerAcquired = false;
+            CacheSizer.release();
+            sampler.stopTrackingKeys();
+        }
     }
 
     private void reload() {
@@ -60,7 +149,7 @@ final class CacheManagerPanel extends javax.swing.JPanel {
         if (model.getSize() == metrics.length) {
             int i;
             for (i = 0; i < metrics.length; ++i) {
-                if (metrics[i] != (CacheMetrics) model.get(i)) {
+                if (metrics[i] != model.get(i)) {
                     break;
                 }
             }
@@ -72,7 +161,7 @@ final class CacheManagerPanel extends javax.swing.JPanel {
 
         // if we reach here, then the current list of metrics instances is
         // different and we need to update the list
-        Object selection = cacheList.getSelectedValue();
+        CacheMetrics selection = cacheList.getSelectedValue();
         model.removeAllElements();
         for (int i = 0; i < metrics.length; ++i) {
             model.addElement(metrics[i]);
@@ -82,10 +171,10 @@ final class CacheManagerPanel extends javax.swing.JPanel {
             cacheList.setSelectedIndex(0);
         }
     }
-    private DefaultListModel model = new DefaultListModel();
+    private DefaultListModel<CacheMetrics> model = new DefaultListModel<>();
 
     private void updateCachePanel() {
-        CacheMetrics cm = (CacheMetrics) cacheList.getSelectedValue();
+        CacheMetrics cm = cacheList.getSelectedValue();
         if (cm == null) {
             return;
         }
@@ -96,24 +185,57 @@ final class CacheManagerPanel extends javax.swing.JPanel {
         String size;
         long bytes = cm.getByteSize();
         if (bytes < 0) {
-            size = "Unknown";
+            long estimate = CacheSizer.getByteSize(cm);
+            size = estimate < 0 ? "Unknown" : "~" + ProjectUtilities.formatByteSize(estimate) + " (estimated)";
         } else {
             size = ProjectUtilities.formatByteSize(bytes);
         }
         sizeLabel.setText(size);
         clearBtn.setEnabled(cm.isClearSupported());
+        if (cm != budgetCache) {
+            // set the spinner without storing the value back as a new budget
+            budgetCache = null;
+            budgetSpinner.setValue(CacheBudget.getBudget(cm));
+            // caches of unknown size can be budgeted if the sizer can sample them
+            budgetSpinner.setEnabled(cm.isClearSupported() && (bytes >= 0 || CacheContents.findMap(cm) != null));
+            budgetCache = cm;
+        }
+        updateStatistics(cm);
+        if (entriesBtn.isSelected()) {
+            entriesPanel.setCache(cm);
+        }
+    }
+
+    private void updateStatistics(CacheMetrics cm) {
+        CacheSampler.Stats stats = sampler == null ? null : sampler.getStats(cm);
+        if (stats == null) {
+            loadedLabel.setText("-");
+            evictedLabel.setText("-");
+            turnoverLabel.setText("-");
+            rateLabel.setText("-");
+            return;
+        }
+        loadedLabel.setText(formatter.format(stats.getLoads()) + " (" + ProjectUtilities.formatByteSize(stats.getLoadedBytes()) + ')');
+        evictedLabel.setText(formatter.format(stats.getEvictions()) + " (" + ProjectUtilities.formatByteSize(stats.getEvictedBytes()) + ')');
+        final double turnover = stats.getTurnover();
+        turnoverLabel.setText(turnover < 0d ? "-" : String.format("%.0f%%", turnover * 100d));
+        rateLabel.setText(String.format("%.1f/min", stats.getLoadRate()));
     }
 
+    private CacheMetrics budgetCache;
+
     private NumberFormat formatter = NumberFormat.getIntegerInstance();
 
-    private static final int UPDATE_DELAY = 3000;
+    private static final int UPDATE_DELAY = CacheSampler.PERIOD;
+    private static final int RELOAD_INTERVAL = 30;
 
     private Timer updateTimer = new Timer(UPDATE_DELAY, new ActionListener() {
         @Override
         public void actionPerformed(ActionEvent e) {
             if (isVisible()) {
                 updateCachePanel();
-                if (++callNum == 10) {
+                cacheList.repaint();
+                if (++callNum == RELOAD_INTERVAL) {
                     callNum = 0;
                     reload();
                 }
@@ -122,6 +244,68 @@ final class CacheManagerPanel extends javax.swing.JPanel {
         private int callNum = 0;
     });
 
+    /**
+     * Renders each cache in the list with sparklines of its recent entry count
+     * and size, so that growing caches stand out.
+     */
+    private final class SparklineRenderer extends DefaultListCellRenderer {
+
+        private static final int SPARK_WIDTH = 64;
+        private final SampleRing.Snapshot snapshot = SampleRing.createSnapshot(CacheSampler.HISTORY, 2);
+        private CacheSampler.Stats stats;
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            setBorder(BorderFactory.createEmptyBorder(2, 2, 2, SPARK_WIDTH + 6));
+            stats = sampler == null ? null : sampler.getStats((CacheMetrics) value);
+            return this;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g1) {
+            super.paintComponent(g1);
+            if (stats == null) {
+                return;
+            }
+            stats.getHistory().snapshot(snapshot, CacheSampler.HISTORY);
+            Graphics2D g = (Graphics2D) g1;
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            final int x = getWidth() - SPARK_WIDTH - 2;
+            final int h = getHeight() - 4;
+            drawLine(g, CacheSampler.BYTES, x, 2, h, SIZE_COLOR);
+            drawLine(g, CacheSampler.COUNT, x, 2, h, COUNT_COLOR);
+        }
+
+        private void drawLine(Graphics2D g, int channel, int x, int y, int h, Color c) {
+            final int n = snapshot.size();
+            long max = 0L;
+            for (int i = 0; i < n; ++i) {
+                max = Math.max(max, snapshot.get(i, channel));
+            }
+            if (n < 2 || max <= 0L) {
+                return;
+            }
+            // right align so that the newest sample is always at the right edge
+            final double dx = SPARK_WIDTH / (double) (CacheSampler.HISTORY - 1);
+            final double x0 = x + SPARK_WIDTH - (n - 1) * dx;
+            Path2D.Double path = new Path2D.Double();
+            for (int i = 0; i < n; ++i) {
+                final double py = y + h - Math.max(0L, snapshot.get(i, channel)) * (double) h / max;
+                if (i == 0) {
+                    path.moveTo(x0, py);
+                } else {
+                    path.lineTo(x0 + i * dx, py);
+                }
+            }
+            g.setPaint(c);
+            g.draw(path);
+        }
+    }
+
+    private static final Color COUNT_COLOR = Color.ORANGE;
+    private static final Color SIZE_COLOR = new Color(0x4dabf7);
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -133,7 +317,7 @@ final class CacheManagerPanel extends javax.swing.JPanel {
 
         splitter = new javax.swing.JSplitPane();
         listScroll = new javax.swing.JScrollPane();
-        cacheList = new javax.swing.JList();
+        cacheList = new javax.swing.JList<>();
         cachePanel = new javax.swing.JPanel();
         cacheNameLabel = new javax.swing.JLabel();
         infoPanel = new javax.swing.JPanel();
@@ -143,7 +327,25 @@ final class CacheManagerPanel extends javax.swing.JPanel {
         objLabel = new javax.swing.JLabel();
         jLabel3 = new javax.swing.JLabel();
         sizeLabel = new javax.swing.JLabel();
+        jLabel4 = new javax.swing.JLabel();
+        loadedLabel = new javax.swing.JLabel();
+        jLabel5 = new javax.swing.JLabel();
+        evictedLabel = new javax.swing.JLabel();
+        jLabel6 = new javax.swing.JLabel();
+        turnoverLabel = new javax.swing.JLabel();
+        jLabel7 = new javax.swing.JLabel();
+        rateLabel = new javax.swing.JLabel();
+        jLabel8 = new javax.swing.JLabel();
+        budgetSpinner = new javax.swing.JSpinner();
+        jLabel9 = new javax.swing.JLabel();
+        globalBudgetSpinner = new javax.swing.JSpinner();
+        heapGuardCheck = new javax.swing.JCheckBox();
+        autoTrimCheck = new javax.swing.JCheckBox();
+        warmUpCheck = new javax.swing.JCheckBox();
+        exportCheck = new javax.swing.JCheckBox();
         clearBtn = new javax.swing.JButton();
+        saveProfileBtn = new javax.swing.JButton();
+        entriesBtn = new javax.swing.JToggleButton();
 
         setLayout(new java.awt.BorderLayout());
 
@@ -208,6 +410,105 @@ final class CacheManagerPanel extends javax.swing.JPanel {
         sizeLabel.setForeground(java.awt.Color.white);
         sizeLabel.setText(" ");
 
+        jLabel4.setFont(jLabel4.getFont().deriveFont(jLabel4.getFont().getSize()-1f));
+        jLabel4.setForeground(java.awt.Color.white);
+        jLabel4.setText("Loaded");
+
+        loadedLabel.setFont(loadedLabel.getFont().deriveFont(loadedLabel.getFont().getSize()-1f));
+        loadedLabel.setForeground(java.awt.Color.white);
+        loadedLabel.setText(" ");
+
+        jLabel5.setFont(jLabel5.getFont().deriveFont(jLabel5.getFont().getSize()-1f));
+        jLabel5.setForeground(java.awt.Color.white);
+        jLabel5.setText("Evicted");
+
+        evictedLabel.setFont(evictedLabel.getFont().deriveFont(evictedLabel.getFont().getSize()-1f));
+        evictedLabel.setForeground(java.awt.Color.white);
+        evictedLabel.setText(" ");
+
+        jLabel6.setFont(jLabel6.getFont().deriveFont(jLabel6.getFont().getSize()-1f));
+        jLabel6.setForeground(java.awt.Color.white);
+        jLabel6.setText("Turnover");
+
+        turnoverLabel.setFont(turnoverLabel.getFont().deriveFont(turnoverLabel.getFont().getSize()-1f));
+        turnoverLabel.setForeground(java.awt.Color.white);
+        turnoverLabel.setText(" ");
+
+        jLabel7.setFont(jLabel7.getFont().deriveFont(jLabel7.getFont().getSize()-1f));
+        jLabel7.setForeground(java.awt.Color.white);
+        jLabel7.setText("Load Rate");
+
+        rateLabel.setFont(rateLabel.getFont().deriveFont(rateLabel.getFont().getSize()-1f));
+        rateLabel.setForeground(java.awt.Color.white);
+        rateLabel.setText(" ");
+
+        jLabel8.setFont(jLabel8.getFont().deriveFont(jLabel8.getFont().getSize()-1f));
+        jLabel8.setForeground(java.awt.Color.white);
+        jLabel8.setText("Budget (MiB)");
+
+        budgetSpinner.setFont(budgetSpinner.getFont().deriveFont(budgetSpinner.getFont().getSize()-1f));
+        budgetSpinner.setModel(new javax.swing.SpinnerNumberModel(0, 0, 65536, 16));
+        budgetSpinner.setToolTipText("Clear this cache when it grows past this size (0 for no limit)");
+        budgetSpinner.addChangeListener(new javax.swing.event.ChangeListener() {
+            public void stateChanged(javax.swing.event.ChangeEvent evt) {
+                budgetSpinnerStateChanged(evt);
+            }
+        });
+
+        jLabel9.setFont(jLabel9.getFont().deriveFont(jLabel9.getFont().getSize()-1f));
+        jLabel9.setForeground(java.awt.Color.white);
+        jLabel9.setText("All Caches (MiB)");
+
+        globalBudgetSpinner.setFont(globalBudgetSpinner.getFont().deriveFont(globalBudgetSpinner.getFont().getSize()-1f));
+        globalBudgetSpinner.setModel(new javax.swing.SpinnerNumberModel(0, 0, 65536, 16));
+        globalBudgetSpinner.setToolTipText("Clear the largest caches when all caches together grow past this size (0 for no limit)");
+        globalBudgetSpinner.addChangeListener(new javax.swing.event.ChangeListener() {
+            public void stateChanged(javax.swing.event.ChangeEvent evt) {
+                globalBudgetSpinnerStateChanged(evt);
+            }
+        });
+
+        heapGuardCheck.setBackground(java.awt.Color.darkGray);
+        heapGuardCheck.setFont(heapGuardCheck.getFont().deriveFont(heapGuardCheck.getFont().getSize()-1f));
+        heapGuardCheck.setForeground(java.awt.Color.white);
+        heapGuardCheck.setText("Clear largest cache when heap is nearly full");
+        heapGuardCheck.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                heapGuardCheckActionPerformed(evt);
+            }
+        });
+
+        autoTrimCheck.setBackground(java.awt.Color.darkGray);
+        autoTrimCheck.setFont(autoTrimCheck.getFont().deriveFont(autoTrimCheck.getFont().getSize()-1f));
+        autoTrimCheck.setForeground(java.awt.Color.white);
+        autoTrimCheck.setText("Trim caches when memory stays high after GC");
+        autoTrimCheck.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                autoTrimCheckActionPerformed(evt);
+            }
+        });
+
+        warmUpCheck.setBackground(java.awt.Color.darkGray);
+        warmUpCheck.setFont(warmUpCheck.getFont().deriveFont(warmUpCheck.getFont().getSize()-1f));
+        warmUpCheck.setForeground(java.awt.Color.white);
+        warmUpCheck.setText("Warm up image caches at startup");
+        warmUpCheck.setToolTipText("Prefetch the images in the saved warm-up profile when the plug-in starts");
+        warmUpCheck.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                warmUpCheckActionPerformed(evt);
+            }
+        });
+
+        exportCheck.setBackground(java.awt.Color.darkGray);
+        exportCheck.setFont(exportCheck.getFont().deriveFont(exportCheck.getFont().getSize()-1f));
+        exportCheck.setForeground(java.awt.Color.white);
+        exportCheck.setText("Publish statistics over JMX");
+        exportCheck.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                exportCheckActionPerformed(evt);
+            }
+        });
+
         clearBtn.setFont(clearBtn.getFont().deriveFont(clearBtn.getFont().getSize()-1f));
         clearBtn.setText("Clear");
         clearBtn.addActionListener(new java.awt.event.ActionListener() {
@@ -216,6 +517,24 @@ final class CacheManagerPanel extends javax.swing.JPanel {
             }
         });
 
+        saveProfileBtn.setFont(saveProfileBtn.getFont().deriveFont(saveProfileBtn.getFont().getSize()-1f));
+        saveProfileBtn.setText("Save Warm-up Profile");
+        saveProfileBtn.setToolTipText("Record the images that are cached now as the warm-up profile");
+        saveProfileBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                saveProfileBtnActionPerformed(evt);
+            }
+        });
+
+        entriesBtn.setFont(entriesBtn.getFont().deriveFont(entriesBtn.getFont().getSize()-1f));
+        entriesBtn.setText("Entries");
+        entriesBtn.setToolTipText("Show the individual entries of this cache");
+        entriesBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                entriesBtnActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout infoPanelLayout = new javax.swing.GroupLayout(infoPanel);
         infoPanel.setLayout(infoPanelLayout);
         infoPanelLayout.setHorizontalGroup(
@@ -227,13 +546,34 @@ final class CacheManagerPanel extends javax.swing.JPanel {
                         .addGroup(infoPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addComponent(jLabel2)
                             .addComponent(jLabel1)
-                            .addComponent(jLabel3))
+                            .addComponent(jLabel3)
+                            .addComponent(jLabel4)
+                            .addComponent(jLabel5)
+                            .addComponent(jLabel6)
+                            .addComponent(jLabel7)
+                            .addComponent(jLabel8)
+                            .addComponent(jLabel9))
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                         .addGroup(infoPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addComponent(objLabel, javax.swing.GroupLayout.DEFAULT_SIZE, 102, Short.MAX_VALUE)
                             .addComponent(typeLabel, javax.swing.GroupLayout.DEFAULT_SIZE, 102, Short.MAX_VALUE)
-                            .addComponent(sizeLabel, javax.swing.GroupLayout.DEFAULT_SIZE, 102, Short.MAX_VALUE)))
-                    .addComponent(clearBtn))
+                            .addComponent(sizeLabel, javax.swing.GroupLayout.DEFAULT_SIZE, 102, Short.MAX_VALUE)
+                            .addComponent(loadedLabel, javax.swing.GroupLayout.DEFAULT_SIZE, 102, Short.MAX_VALUE)
+                            .addComponent(evictedLabel, javax.swing.GroupLayout.DEFAULT_SIZE, 102, Short.MAX_VALUE)
+                            .addComponent(turnoverLabel, javax.swing.GroupLayout.DEFAULT_SIZE, 102, Short.MAX_VALUE)
+                            .addComponent(rateLabel, javax.swing.GroupLayout.DEFAULT_SIZE, 102, Short.MAX_VALUE)
+                            .addComponent(budgetSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 80, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(globalBudgetSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 80, javax.swing.GroupLayout.PREFERRED_SIZE)))
+                    .addComponent(heapGuardCheck)
+                    .addComponent(autoTrimCheck)
+                    .addComponent(warmUpCheck)
+                    .addComponent(exportCheck)
+                    .addGroup(infoPanelLayout.createSequentialGroup()
+                        .addComponent(clearBtn)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(saveProfileBtn)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(entriesBtn)))
                 .addContainerGap())
         );
         infoPanelLayout.setVerticalGroup(
@@ -251,8 +591,43 @@ final class CacheManagerPanel extends javax.swing.JPanel {
                 .addGroup(infoPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(jLabel3)
                     .addComponent(sizeLabel))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(infoPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel4)
+                    .addComponent(loadedLabel))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(infoPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel5)
+                    .addComponent(evictedLabel))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(infoPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel6)
+                    .addComponent(turnoverLabel))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(infoPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel7)
+                    .addComponent(rateLabel))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                .addGroup(infoPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel8)
+                    .addComponent(budgetSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(infoPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel9)
+                    .addComponent(globalBudgetSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(heapGuardCheck)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(autoTrimCheck)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(warmUpCheck)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(exportCheck)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED, 35, Short.MAX_VALUE)
-                .addComponent(clearBtn)
+                .addGroup(infoPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(clearBtn)
+                    .addComponent(saveProfileBtn)
+                    .addComponent(entriesBtn))
                 .addContainerGap())
         );
 
@@ -268,25 +643,91 @@ final class CacheManagerPanel extends javax.swing.JPanel {
 	}//GEN-LAST:event_cacheListValueChanged
 
 	private void clearBtnActionPerformed( java.awt.event.ActionEvent evt ) {//GEN-FIRST:event_clearBtnActionPerformed
-            CacheMetrics cm = (CacheMetrics) cacheList.getSelectedValue();
+            CacheMetrics cm = cacheList.getSelectedValue();
             if (cm != null && cm.isClearSupported()) {
                 cm.clear();
+                if (entriesBtn.isSelected()) {
+                    entriesPanel.refresh();
+                }
             }
 	}//GEN-LAST:event_clearBtnActionPerformed
 
+    private void budgetSpinnerStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_budgetSpinnerStateChanged
+        if (budgetCache != null) {
+            CacheBudget.setBudget(budgetCache, (Integer) budgetSpinner.getValue());
+        }
+    }//GEN-LAST:event_budgetSpinnerStateChanged
+
+    private void globalBudgetSpinnerStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_globalBudgetSpinnerStateChanged
+        CacheBudget.setGlobalBudget((Integer) globalBudgetSpinner.getValue());
+    }//GEN-LAST:event_globalBudgetSpinnerStateChanged
+
+    private void heapGuardCheckActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_heapGuardCheckActionPerformed
+        CacheBudget.setHeapGuardEnabled(heapGuardCheck.isSelected());
+    }//GEN-LAST:event_heapGuardCheckActionPerformed
+
+    private void autoTrimCheckActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_autoTrimCheckActionPerformed
+        CacheTrimmer.setEnabled(autoTrimCheck.isSelected());
+    }//GEN-LAST:event_autoTrimCheckActionPerformed
+
+    private void warmUpCheckActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_warmUpCheckActionPerformed
+        WarmUpProfile.setEnabled(warmUpCheck.isSelected());
+    }//GEN-LAST:event_warmUpCheckActionPerformed
+
+    private void exportCheckActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_exportCheckActionPerformed
+        MetricsExporter.setEnabled(exportCheck.isSelected());
+    }//GEN-LAST:event_exportCheckActionPerformed
+
+    private void saveProfileBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_saveProfileBtnActionPerformed
+        try {
+            int count = WarmUpProfile.record();
+            saveProfileBtn.setToolTipText("Last saved profile has " + formatter.format(count) + " images");
+        } catch (IOException ex) {
+            StrangeEons.log.log(Level.WARNING, "unable to save warm-up profile", ex);
+        }
+    }//GEN-LAST:event_saveProfileBtnActionPerformed
+
+    private void entriesBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_entriesBtnActionPerformed
+        final boolean show = entriesBtn.isSelected();
+        entriesPanel.setVisible(show);
+        // release the listed entries while hidden so they can be collected
+        entriesPanel.setCache(show ? cacheList.getSelectedValue() : null);
+        if (owner != null) {
+            owner.pack();
+        }
+    }//GEN-LAST:event_entriesBtnActionPerformed
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
-    private javax.swing.JList cacheList;
+    private javax.swing.JSpinner budgetSpinner;
+    private javax.swing.JList<CacheMetrics> cacheList;
+    private javax.swing.JCheckBox autoTrimCheck;
     private javax.swing.JLabel cacheNameLabel;
     private javax.swing.JPanel cachePanel;
     private javax.swing.JButton clearBtn;
+    private javax.swing.JToggleButton entriesBtn;
+    private javax.swing.JLabel evictedLabel;
+    private javax.swing.JCheckBox exportCheck;
+    private javax.swing.JSpinner globalBudgetSpinner;
+    private javax.swing.JCheckBox heapGuardCheck;
     private javax.swing.JPanel infoPanel;
     private javax.swing.JLabel jLabel1;
     private javax.swing.JLabel jLabel2;
     private javax.swing.JLabel jLabel3;
+    private javax.swing.JLabel jLabel4;
+    private javax.swing.JLabel jLabel5;
+    private javax.swing.JLabel jLabel6;
+    private javax.swing.JLabel jLabel7;
+    private javax.swing.JLabel jLabel8;
+    private javax.swing.JLabel jLabel9;
     private javax.swing.JScrollPane listScroll;
+    private javax.swing.JLabel loadedLabel;
     private javax.swing.JLabel objLabel;
+    private javax.swing.JLabel rateLabel;
+    private javax.swing.JButton saveProfileBtn;
     private javax.swing.JLabel sizeLabel;
     private javax.swing.JSplitPane splitter;
+    private javax.swing.JLabel turnoverLabel;
     private javax.swing.JLabel typeLabel;
+    private javax.swing.JCheckBox warmUpCheck;
     // End of variables declaration//GEN-END:variables
 }
@@ -0,0 +1,167 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.project.ProjectUtilities;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates how many of the loads in a recorded {@link CacheTrace} a cache
+ * with a given byte budget would have avoided. This is a simulation, not a
+ * benchmark: the real caches are not involved, and nothing is loaded. The
+ * recorded entries of every cache are fed through a single idealized least
+ * recently used cache that is limited to the budget, using the sizes
+ * recorded in the trace. A recorded load whose key is still held by the
+ * simulated cache counts as a hit, that is, a load the budget would have
+ * saved.
+ *
+ * <p>
+ * The model is deliberately simple. Traces only contain loads, not lookups,
+ * so recency is updated by loads alone, and an entry that was used often but
+ * loaded once looks stale. The real caches each have their own eviction
+ * policy, and {@link CacheBudget} enforces budgets by clearing whole caches,
+ * so the results are a guide to how much reuse a trace contains at each
+ * size, not a prediction of how a budget will perform.
+ *
+ * <p>
+ * Replays can be started from the Cache Manager, or from the command line
+ * with the Strange Eons and plug-in classes on the class path:
+ * <pre>java ca.cgjennings.apps.arkham.plugins.CacheReplay trace.txt 0 64 256</pre>
+ * where the numbers are budgets in MiB (0 for unlimited).
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class CacheReplay {
+
+    private static final long MIB = 1024L * 1024L;
+
+    private final CacheTrace trace;
+
+    public CacheReplay(CacheTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Replays the trace against each budget in turn.
+     *
+     * @param budgetsMiB the budgets to simulate, in MiB (0 for unlimited)
+     * @return the result for each budget
+     */
+    public List<Result> run(int... budgetsMiB) {
+        List<Result> results = new ArrayList<>(budgetsMiB.length);
+        for (int budget : budgetsMiB) {
+            results.add(replay(budget * MIB));
+        }
+        return results;
+    }
+
+    /**
+     * Replays the trace once.
+     */
+    private Result replay(long budget) {
+        final Result r = new Result(budget);
+        // values are the recorded entry sizes
+        final LinkedHashMap<String, Long> cache = new LinkedHashMap<>(256, 0.75f, true);
+        long bytes = 0L;
+
+        for (CacheTrace.Event e : trace.getEvents()) {
+            final String key = e.cache + '\u0000' + e.key;
+            final long[] perCache = r.cacheCounts(e.cache);
+            if (cache.get(key) != null) {
+                ++r.hits;
+                ++perCache[0];
+                continue;
+            }
+            ++r.misses;
+            ++perCache[1];
+            cache.put(key, e.bytes);
+            bytes += e.bytes;
+            // evict least recently used entries until within budget
+            for (Iterator<Map.Entry<String, Long>> it = cache.entrySet().iterator(); budget > 0L && bytes > budget && it.hasNext();) {
+                Map.Entry<String, Long> victim = it.next();
+                if (victim.getKey().equals(key)) {
+                    continue;
+                }
+                it.remove();
+                bytes -= victim.getValue();
+                ++r.evictions;
+            }
+            r.peakBytes = Math.max(r.peakBytes, bytes);
+        }
+        return r;
+    }
+
+    /**
+     * The outcome of replaying a trace with one budget.
+     */
+    static final class Result {
+
+        final long budget;
+        long hits, misses, evictions;
+        long peakBytes;
+        final Map<String, long[]> perCache = new LinkedHashMap<>();
+
+        Result(long budget) {
+            this.budget = budget;
+        }
+
+        long[] cacheCounts(String cache) {
+            long[] counts = perCache.get(cache);
+            if (counts == null) {
+                counts = new long[2];
+                perCache.put(cache, counts);
+            }
+            return counts;
+        }
+
+        /**
+         * Returns the fraction of the recorded loads that the simulated cache
+         * would have avoided.
+         *
+         * @return the hit ratio, from 0 to 1
+         */
+        public double getHitRatio() {
+            final long n = hits + misses;
+            return n == 0L ? 0d : hits / (double) n;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder();
+            b.append(String.format("budget %s: %.1f%% of loads avoided, %,d evictions, peak %s",
+                    budget == 0L ? "unlimited" : ProjectUtilities.formatByteSize(budget),
+                    getHitRatio() * 100d, evictions, ProjectUtilities.formatByteSize(peakBytes)));
+            for (Map.Entry<String, long[]> e : perCache.entrySet()) {
+                final long[] c = e.getValue();
+                b.append(String.format("%n    %s: %.1f%% of %,d", e.getKey(), 100d * c[0] / Math.max(1L, c[0] + c[1]), c[0] + c[1]));
+            }
+            return b.toString();
+        }
+    }
+
+    /**
+     * Replays a trace file from the command line and prints the results.
+     *
+     * @param args the trace file, followed by budgets in MiB
+     * @throws IOException if the trace cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: CacheReplay trace-file [budget-MiB...]");
+            System.exit(2);
+        }
+        int[] budgets = new int[Math.max(1, args.length - 1)];
+        for (int i = 1; i < args.length; ++i) {
+            budgets[i - 1] = Integer.parseInt(args[i]);
+        }
+        CacheTrace trace = CacheTrace.read(new File(args[0]));
+        System.out.printf("%,d loads over %,d ms%n", trace.getEvents().size(), trace.getDuration());
+        for (Result r : new CacheReplay(trace).run(budgets)) {
+            System.out.println(r);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.awt.EventQueue;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import resources.CacheMetrics;
+import resources.ResourceKit;
+
+/**
+ * Periodically samples every registered cache and derives statistics from the
+ * changes between samples. Like the {@link MemorySampler}, a single sampler
+ * is shared by all of the tools that need it, and it runs on a background
+ * thread so that the tools only need to read its results.
+ *
+ * <p>
+ * {@link CacheMetrics} reports only the current entry count and size, so the
+ * sampler cannot observe individual lookups. Instead, when the map behind a
+ * cache can be found with {@link CacheContents}, the hash codes of its keys are
+ * compared with those of the previous sample: keys that appeared are counted
+ * as loads and keys that disappeared as evictions. This sees entries being
+ * replaced even when the size of the cache does not change. Only the hash
+ * codes are kept, so the keys themselves are not held. For other caches, and
+ * for those with more than {@link #MAX_TRACKED_KEYS} entries, a rise in the
+ * entry count is counted as loads and a fall as evictions. Either way, an
+ * entry that is added and removed within one period is not seen, so the
+ * counts are lower bounds.
+ *
+ * <p>
+ * Caches are not required to be thread safe, so the key hash codes are
+ * collected on the event dispatch thread; everything else is done on the
+ * sampler thread. Since that costs time on the event dispatch thread every
+ * period, keys are only compared while a tool that shows the results asks
+ * for it with {@link #startTrackingKeys}; at other times, only the net
+ * change is counted.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class CacheSampler {
+
+    /**
+     * The time between samples, in milliseconds.
+     */
+    public static final int PERIOD = 1000;
+
+    /**
+     * The number of samples kept in each cache's history; five minutes at the
+     * sample period.
+     */
+    public static final int HISTORY = 300;
+
+    /**
+     * History channel that holds the entry count.
+     */
+    public static final int COUNT = 0;
+    /**
+     * History channel that holds the byte size, or -1 if unknown.
+     */
+    public static final int BYTES = 1;
+
+    /**
+     * The largest cache whose keys are compared between samples.
+     */
+    public static final int MAX_TRACKED_KEYS = 50_000;
+
+    private static CacheSampler shared;
+    private static int refCount;
+
+    /**
+     * Returns the shared sampler, starting it if necessary. Each call must be
+     * balanced by a call to {@link #release()}.
+     *
+     * @return the shared sampler
+     */
+    public static synchronized CacheSampler acquire() {
+        if (refCount++ == 0) {
+            shared = new CacheSampler();
+            shared.start();
+        }
+        return shared;
+    }
+
+    /**
+     * Releases the shared sampler, stopping it if it is no longer used.
+     */
+    public static synchronized void release() {
+        if (refCount <= 0) {
+            throw new IllegalStateException("not acquired");
+        }
+        if (--refCount == 0) {
+            shared.stop();
+            shared = null;
+        }
+    }
+
+    private ScheduledExecutorService executor;
+    private final Map<CacheMetrics, Stats> stats = new IdentityHashMap<>();
+    // only accessed from the event dispatch thread
+    private final Map<CacheMetrics, Map<?, ?>> maps = new IdentityHashMap<>();
+    private final AtomicInteger keyTrackers = new AtomicInteger();
+
+    private CacheSampler() {
+    }
+
+    private void start() {
+        executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "Developer Tools cache sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleAtFixedRate(this::takeSample, 0, PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    private void stop() {
+        executor.shutdownNow();
+    }
+
+    private void takeSample() {
+        try {
+            final long now = System.currentTimeMillis();
+            final CacheMetrics[] caches = ResourceKit.getRegisteredCacheMetrics();
+            final int[][] keys = new int[caches.length][];
+            if (keyTrackers.get() > 0) {
+                EventQueue.invokeAndWait(() -> {
+                    // tracking may have stopped while this was queued
+                    if (keyTrackers.get() == 0) {
+                        return;
+                    }
+                    for (int i = 0; i < caches.length; ++i) {
+                        keys[i] = keyHashes(caches[i]);
+                    }
+                });
+            }
+            for (int i = 0; i < caches.length; ++i) {
+                final CacheMetrics cm = caches[i];
+                Stats s;
+                synchronized (stats) {
+                    s = stats.get(cm);
+                    if (s == null) {
+                        s = new Stats();
+                        stats.put(cm, s);
+                    }
+                }
+                if (keys[i] != null) {
+                    Arrays.sort(keys[i]);
+                }
+                try {
+                    s.update(now, cm.getItemCount(), cm.getByteSize(), keys[i]);
+                } catch (RuntimeException ex) {
+                    // caches are not required to be thread safe; skip this sample
+                }
+            }
+        } catch (InterruptedException ex) {
+            // stopped
+        } catch (Throwable t) {
+            StrangeEons.log.log(Level.WARNING, "cache sample failed", t);
+        }
+    }
+
+    /**
+     * Starts comparing the keys of each cache between samples, so that
+     * entries replaced at a steady size are counted. Each call must be
+     * balanced by a call to {@link #stopTrackingKeys()}.
+     */
+    public void startTrackingKeys() {
+        keyTrackers.incrementAndGet();
+    }
+
+    /**
+     * Stops comparing keys, unless another caller still wants them compared.
+     * When no caller does, the sampler lets go of the cache maps it found, so
+     * that a map a cache has replaced can be collected.
+     */
+    public void stopTrackingKeys() {
+        if (keyTrackers.decrementAndGet() == 0) {
+            if (EventQueue.isDispatchThread()) {
+                maps.clear();
+            } else {
+                EventQueue.invokeLater(() -> {
+                    if (keyTrackers.get() == 0) {
+                        maps.clear();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Returns the hash codes of the keys in a cache, or null if its map
+     * cannot be found or is too large to track. Must be called on the event
+     * dispatch thread.
+     */
+    private int[] keyHashes(CacheMetrics cm) {
+        final int count = cm.getItemCount();
+        if (count > MAX_TRACKED_KEYS) {
+            return null;
+        }
+        Map<?, ?> map = maps.get(cm);
+        if (map == null || map.size() != count) {
+            // a cache may replace its map, such as when it is cleared
+            map = CacheContents.findMap(cm);
+            if (map == null) {
+                maps.remove(cm);
+                return null;
+            }
+            maps.put(cm, map);
+        }
+        try {
+            final int[] hashes = new int[map.size()];
+            int n = 0;
+            for (Object key : map.keySet()) {
+                if (n == hashes.length) {
+                    return null;
+                }
+                hashes[n++] = key == null ? 0 : key.hashCode();
+            }
+            return n == hashes.length ? hashes : Arrays.copyOf(hashes, n);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the statistics for a cache, or <code>null</code> if the cache
+     * has not been sampled yet.
+     *
+     * @param cm the cache metrics of the cache
+     * @return the statistics gathered for the cache
+     */
+    public Stats getStats(CacheMetrics cm) {
+        synchronized (stats) {
+            return stats.get(cm);
+        }
+    }
+
+    /**
+     * Statistics derived from the samples of one cache. The values are
+     * written by the sampler thread and may be read from any thread.
+     */
+    static final class Stats {
+
+        // smoothing factor for the load rate; about one minute at one sample per second
+        private static final double ALPHA = 2d / 61d;
+
+        private volatile long loads, evictions, clears;
+        private volatile long loadedBytes, evictedBytes;
+        private volatile double loadRate;
+        private int lastCount = -1;
+        private long lastBytes;
+        private long lastTime;
+        // the sorted hash codes of the keys at the last sample, if tracked
+        private int[] lastKeys;
+        // one extra slot since a snapshot can copy at most capacity-1 samples
+        private final SampleRing history = new SampleRing(HISTORY + 1, 2);
+        private final long[] sample = new long[2];
+
+        private Stats() {
+        }
+
+        private void update(long time, int count, long bytes, int[] keys) {
+            sample[COUNT] = count;
+            sample[BYTES] = bytes;
+            history.add(time, sample);
+
+            if (lastCount < 0) {
+                lastCount = count;
+                lastBytes = bytes;
+                lastTime = time;
+                lastKeys = keys;
+                return;
+            }
+
+            long added, removed;
+            if (keys != null && lastKeys != null) {
+                added = difference(keys, lastKeys);
+                removed = difference(lastKeys, keys);
+            } else {
+                final int dc = count - lastCount;
+                added = Math.max(0, dc);
+                removed = Math.max(0, -dc);
+            }
+            loads += added;
+            evictions += removed;
+            if (bytes >= 0L && count > 0) {
+                loadedBytes += added * bytes / count;
+            }
+            if (lastBytes >= 0L && lastCount > 0) {
+                evictedBytes += removed * lastBytes / lastCount;
+            }
+            if (count == 0 && lastCount > 0) {
+                ++clears;
+            }
+
+            final double seconds = Math.max(1L, time - lastTime) / 1000d;
+            loadRate += ALPHA * (added / seconds * 60d - loadRate);
+
+            lastCount = count;
+            lastBytes = bytes;
+            lastTime = time;
+            lastKeys = keys;
+        }
+
+        /**
+         * Counts the values in one sorted array that are not matched by a
+         * value in another, counting repeated values separately.
+         */
+        private static long difference(int[] a, int[] b) {
+            long n = 0L;
+            int j = 0;
+            for (int i = 0; i < a.length; ++i) {
+                while (j < b.length && b[j] < a[i]) {
+                    ++j;
+                }
+                if (j < b.length && b[j] == a[i]) {
+                    ++j;
+                } else {
+                    ++n;
+                }
+            }
+            return n;
+        }
+
+        /**
+         * Returns the recent entry counts and sizes of the cache, on the
+         * {@link #COUNT} and {@link #BYTES} channels.
+         *
+         * @return the history of the cache
+         */
+        public SampleRing getHistory() {
+            return history;
+        }
+
+        /**
+         * Returns the number of entries added to the cache.
+         *
+         * @return the estimated number of loads
+         */
+        public long getLoads() {
+            return loads;
+        }
+
+        /**
+         * Returns the number of entries removed from the cache.
+         *
+         * @return the estimated number of evictions
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Returns the number of times the cache was seen to become empty.
+         *
+         * @return the number of clears
+         */
+        public long getClears() {
+            return clears;
+        }
+
+        public long getLoadedBytes() {
+            return loadedBytes;
+        }
+
+        public long getEvictedBytes() {
+            return evictedBytes;
+        }
+
+        /**
+         * Returns the recent rate at which entries are being added.
+         *
+         * @return the smoothed loads per minute
+         */
+        public double getLoadRate() {
+            return loadRate;
+        }
+
+        /**
+         * Returns the fraction of loaded entries that were later evicted. A
+         * cache that stays the same size while its turnover approaches 1 is
+         * replacing entries as fast as it loads them, which suggests that it
+         * is too small for the working set. This can only be seen for caches
+         * whose keys are tracked; for others, entries replaced at a steady
+         * size are not counted.
+         *
+         * @return the turnover between 0 and 1, or -1 if nothing has been
+         * loaded
+         */
+        public double getTurnover() {
+            final long l = loads;
+            return l == 0L ? -1d : Math.min(1d, evictions / (double) l);
+        }
+    }
+}
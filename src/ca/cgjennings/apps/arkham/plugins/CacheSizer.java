@@ -0,0 +1,191 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.awt.EventQueue;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import resources.CacheMetrics;
+import resources.ResourceKit;
+
+/**
+ * Estimates the size of caches that report their size as unknown. Every
+ * period, one such cache is chosen in turn and a random sample of its
+ * entries is measured with a {@link SizeEstimator}; the mean entry size,
+ * smoothed over successive samples, times the entry count gives the
+ * estimate. Only the sample is copied, on the event dispatch thread since
+ * caches are not required to be thread safe; the measuring is done on a
+ * low priority background thread, so even very large caches are sized
+ * without stalling the interface.
+ *
+ * <p>
+ * Like the {@link CacheSampler}, a single sizer is shared by all of the tools
+ * that need it.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class CacheSizer {
+
+    /**
+     * The time between samples, in milliseconds.
+     */
+    public static final int PERIOD = 2000;
+
+    /**
+     * The maximum number of entries measured per sample.
+     */
+    public static final int SAMPLE_SIZE = 32;
+
+    private static CacheSizer shared;
+    private static int refCount;
+
+    /**
+     * Returns the shared sizer, starting it if necessary. Each call must be
+     * balanced by a call to {@link #release()}.
+     *
+     * @return the shared sizer
+     */
+    public static synchronized CacheSizer acquire() {
+        if (refCount++ == 0) {
+            shared = new CacheSizer();
+            shared.start();
+        }
+        return shared;
+    }
+
+    /**
+     * Releases the shared sizer, stopping it if it is no longer used.
+     */
+    public static synchronized void release() {
+        if (refCount <= 0) {
+            throw new IllegalStateException("not acquired");
+        }
+        if (--refCount == 0) {
+            shared.stop();
+            shared = null;
+        }
+    }
+
+    /**
+     * Returns the size of a cache as reported by its metrics or, if the size
+     * is unknown, as estimated by the shared sizer.
+     *
+     * @param cm the cache metrics of the cache
+     * @return the size in bytes, or -1 if the size is unknown and has not
+     * been estimated
+     */
+    public static long getByteSize(CacheMetrics cm) {
+        final long bytes = cm.getByteSize();
+        if (bytes >= 0L) {
+            return bytes;
+        }
+        CacheSizer sizer;
+        synchronized (CacheSizer.class) {
+            sizer = shared;
+        }
+        return sizer == null ? -1L : sizer.getEstimate(cm);
+    }
+
+    private ScheduledExecutorService executor;
+    private final Map<CacheMetrics, double[]> meanEntrySize = new IdentityHashMap<>();
+    private final Random random = new Random();
+    private SizeEstimator estimator;
+    private int next;
+
+    private CacheSizer() {
+    }
+
+    private void start() {
+        estimator = new SizeEstimator();
+        executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "Developer Tools cache sizer");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::sizeNext, 0, PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    private void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the estimated size of a cache.
+     *
+     * @param cm the cache metrics of the cache
+     * @return the estimated size in bytes, or -1 if the cache has not been
+     * sampled yet
+     */
+    public long getEstimate(CacheMetrics cm) {
+        double mean;
+        synchronized (meanEntrySize) {
+            double[] m = meanEntrySize.get(cm);
+            if (m == null) {
+                return -1L;
+            }
+            mean = m[0];
+        }
+        return Math.round(mean * cm.getItemCount());
+    }
+
+    /**
+     * Samples and measures the next cache of unknown size.
+     */
+    private void sizeNext() {
+        try {
+            final CacheMetrics[] caches = ResourceKit.getRegisteredCacheMetrics();
+            List<CacheMetrics> unknown = new ArrayList<>(caches.length);
+            for (CacheMetrics cm : caches) {
+                if (cm.getByteSize() < 0L && cm.getItemCount() > 0) {
+                    unknown.add(cm);
+                }
+            }
+            if (unknown.isEmpty()) {
+                return;
+            }
+            final CacheMetrics cm = unknown.get(next++ % unknown.size());
+
+            final List<List<Object>> sample = new ArrayList<>(1);
+            EventQueue.invokeAndWait(() -> sample.add(CacheContents.sampleValues(cm, SAMPLE_SIZE, random)));
+            final List<Object> values = sample.get(0);
+            if (values == null || values.isEmpty()) {
+                return;
+            }
+
+            long total = 0L;
+            for (Object v : values) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                try {
+                    total += Math.max(0L, estimator.estimate(v));
+                } catch (RuntimeException ex) {
+                    // the entry changed while it was being walked
+                }
+            }
+            final double sampleMean = total / (double) values.size();
+
+            synchronized (meanEntrySize) {
+                double[] mean = meanEntrySize.get(cm);
+                if (mean == null) {
+                    meanEntrySize.put(cm, new double[]{sampleMean});
+                } else {
+                    // blend with earlier samples to reduce sampling noise
+                    mean[0] += (sampleMean - mean[0]) / 2d;
+                }
+            }
+        } catch (InterruptedException ex) {
+            // stopped
+        } catch (InvocationTargetException | RuntimeException ex) {
+            StrangeEons.log.log(Level.WARNING, "cache sizing failed", ex);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+/**
+ * Management interface that publishes the metrics and derived statistics of
+ * one registered cache. Statistics derived by the {@link CacheSampler} are
+ * lower bounds; see that class for details.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+public interface CacheStatsMXBean {
+
+    String getName();
+
+    String getContentType();
+
+    int getItemCount();
+
+    /**
+     * Returns the size reported by the cache, or -1 if unknown.
+     *
+     * @return the reported size in bytes
+     */
+    long getByteSize();
+
+    /**
+     * Returns the reported size or, if unknown, the estimated size.
+     *
+     * @return the size in bytes, or -1 if not yet estimated
+     */
+    long getEstimatedByteSize();
+
+    long getLoads();
+
+    long getEvictions();
+
+    long getClears();
+
+    long getLoadedBytes();
+
+    long getEvictedBytes();
+
+    /**
+     * Returns the smoothed number of entries added per minute.
+     *
+     * @return the recent load rate
+     */
+    double getLoadRate();
+
+    /**
+     * Returns the fraction of loaded entries that were later evicted, or -1
+     * if nothing has been loaded.
+     *
+     * @return the turnover
+     */
+    double getTurnover();
+
+    /**
+     * Returns the cache's budget in MiB, or 0 if it has none.
+     *
+     * @return the budget
+     */
+    int getBudget();
+
+    boolean isClearSupported();
+
+    /**
+     * Clears the cache, if supported. The cache is cleared on the event
+     * dispatch thread and the clearing is logged, as for a budget.
+     */
+    void clear();
+}
@@ -0,0 +1,475 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import ca.cgjennings.apps.arkham.project.ProjectUtilities;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.JToggleButton;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
+import resources.CacheMetrics;
+import resources.ResourceKit;
+
+/**
+ * Lists every registered cache in one table with its size, growth, and load
+ * statistics, so that caches can be compared and cleared together. The rows
+ * are built from a snapshot taken on a background thread; the event dispatch
+ * thread only swaps in the finished snapshot. Cache load traces can also be
+ * recorded here and replayed against different budgets; see
+ * {@link CacheReplay}.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class CacheTablePanel extends JPanel {
+
+    private static final Color PANEL_BACKGROUND = new Color(64, 64, 64);
+    private static final Color GROWTH = new Color(255, 160, 122);
+    private static final Color SHRINKAGE = new Color(144, 238, 144);
+
+    /**
+     * The number of samples that growth is measured over; one minute at the
+     * cache sampler's period.
+     */
+    private static final int GROWTH_WINDOW = 60_000 / CacheSampler.PERIOD;
+
+    private final CacheSampler sampler;
+    private final CacheModel model = new CacheModel();
+    private final JTable table = new JTable(model);
+    private final JLabel totals = new JLabel(" ");
+    private final JButton clearBtn = new JButton("Clear Selected");
+    private final JButton clearOthersBtn = new JButton("Clear All Except Selected");
+    private final JToggleButton recordBtn = new JToggleButton("Record Trace");
+    private final JButton replayBtn = new JButton("Replay Trace...");
+    private final SampleRing.Snapshot history;
+    private ScheduledExecutorService executor;
+    private CacheTrace.Recorder recorder;
+
+    public CacheTablePanel(CacheSampler sampler) {
+        super(new BorderLayout());
+        this.sampler = sampler;
+        history = SampleRing.createSnapshot(GROWTH_WINDOW + 1, 2);
+        setBackground(PANEL_BACKGROUND);
+
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        controlPanel.setBackground(PANEL_BACKGROUND);
+        controlPanel.setBorder(BorderFactory.createMatteBorder(0, 0, 1, 0, new Color(128, 128, 128)));
+        smallFont(clearBtn);
+        smallFont(clearOthersBtn);
+        smallFont(recordBtn);
+        smallFont(replayBtn);
+        clearBtn.addActionListener((e) -> clear(true));
+        clearOthersBtn.addActionListener((e) -> clear(false));
+        recordBtn.setToolTipText("Record the entries loaded into the caches for replay at different budgets");
+        recordBtn.addActionListener((e) -> record());
+        replayBtn.setToolTipText("Estimate how many recorded loads a range of cache budgets would have avoided");
+        replayBtn.addActionListener((e) -> replay());
+        controlPanel.add(clearBtn);
+        controlPanel.add(clearOthersBtn);
+        controlPanel.add(recordBtn);
+        controlPanel.add(replayBtn);
+        add(controlPanel, BorderLayout.PAGE_START);
+
+        table.setBackground(PANEL_BACKGROUND);
+        table.setForeground(Color.WHITE);
+        table.setFillsViewportHeight(true);
+        smallFont(table);
+        table.getColumnModel().getColumn(0).setPreferredWidth(200);
+        table.setDefaultRenderer(Long.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setHorizontalAlignment(RIGHT);
+                setText(value == null ? "Unknown" : ProjectUtilities.formatByteSize((Long) value));
+            }
+        });
+        table.setDefaultRenderer(Integer.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setHorizontalAlignment(RIGHT);
+                setText(String.format("%,d", (Integer) value));
+            }
+        });
+        table.setDefaultRenderer(Double.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setHorizontalAlignment(RIGHT);
+                setText(value == null ? "-" : String.format("%.1f", (Double) value));
+            }
+        });
+        table.setDefaultRenderer(Delta.class, new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+                super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                setHorizontalAlignment(RIGHT);
+                long v = value == null ? 0L : ((Delta) value).value;
+                setText(value == null ? "-" : (v < 0 ? "-" : "+") + ProjectUtilities.formatByteSize(Math.abs(v)));
+                if (!isSelected) {
+                    setForeground(v > 0 ? GROWTH : v < 0 ? SHRINKAGE : table.getForeground());
+                }
+                return this;
+            }
+        });
+        TableRowSorter<CacheModel> sorter = new TableRowSorter<>(model);
+        sorter.setSortKeys(Collections.singletonList(new RowSorter.SortKey(3, SortOrder.DESCENDING)));
+        sorter.setSortsOnUpdates(true);
+        table.setRowSorter(sorter);
+        table.getSelectionModel().addListSelectionListener((e) -> updateTotals());
+        JScrollPane scroll = new JScrollPane(table);
+        scroll.setBorder(BorderFactory.createEmptyBorder());
+        add(scroll, BorderLayout.CENTER);
+
+        JPanel totalsPanel = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        totalsPanel.setBackground(Color.DARK_GRAY);
+        totalsPanel.setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, new Color(128, 128, 128)));
+        smallFont(totals);
+        totals.setForeground(new Color(192, 192, 192));
+        totalsPanel.add(totals);
+        add(totalsPanel, BorderLayout.PAGE_END);
+        updateTotals();
+    }
+
+    private static void smallFont(JComponent c) {
+        c.setFont(c.getFont().deriveFont(c.getFont().getSize() - 1f));
+    }
+
+    /**
+     * Starts refreshing the table.
+     */
+    public void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "Developer Tools cache table");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::takeSnapshot, 0, CacheSampler.PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops refreshing the table.
+     */
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Stops refreshing the table and releases the listed caches.
+     */
+    public void dispose() {
+        stop();
+        if (recorder != null) {
+            recorder.stop();
+            recorder = null;
+        }
+        model.setRows(Collections.<Row>emptyList());
+    }
+
+    /**
+     * Reads every cache on the snapshot thread and passes the finished rows
+     * to the event dispatch thread.
+     */
+    private void takeSnapshot() {
+        try {
+            final CacheMetrics[] caches = ResourceKit.getRegisteredCacheMetrics();
+            final List<Row> rows = new ArrayList<>(caches.length);
+            for (CacheMetrics cm : caches) {
+                rows.add(new Row(cm));
+            }
+            EventQueue.invokeLater(() -> {
+                // ignore snapshots that finish after the table is stopped
+                if (executor != null) {
+                    model.setRows(rows);
+                    updateTotals();
+                }
+            });
+        } catch (Throwable t) {
+            // an exception would cancel the periodic task
+            StrangeEons.log.log(Level.WARNING, "cache table snapshot failed", t);
+        }
+    }
+
+    private void updateTotals() {
+        int entries = 0, selectedCount = 0;
+        long bytes = 0L, selectedBytes = 0L;
+        for (int i = 0; i < model.getRowCount(); ++i) {
+            Row r = model.getRow(i);
+            entries += r.entries;
+            bytes += r.bytes == null ? 0L : r.bytes;
+        }
+        for (int viewRow : table.getSelectedRows()) {
+            Row r = model.getRow(table.convertRowIndexToModel(viewRow));
+            ++selectedCount;
+            selectedBytes += r.bytes == null ? 0L : r.bytes;
+        }
+        totals.setText(String.format("%,d caches    %,d entries    %s total    %,d selected (%s)",
+                model.getRowCount(), entries, ProjectUtilities.formatByteSize(bytes),
+                selectedCount, ProjectUtilities.formatByteSize(selectedBytes)));
+        clearBtn.setEnabled(selectedCount > 0);
+        clearOthersBtn.setEnabled(selectedCount > 0);
+    }
+
+    /**
+     * Clears either the selected caches or all caches except the selected
+     * caches.
+     */
+    private void clear(boolean selected) {
+        Map<CacheMetrics, Boolean> chosen = new IdentityHashMap<>();
+        for (int viewRow : table.getSelectedRows()) {
+            chosen.put(model.getRow(table.convertRowIndexToModel(viewRow)).cm, Boolean.TRUE);
+        }
+        final String reason = selected ? "cleared from the cache table" : "cleared from the cache table (all except selected)";
+        for (int i = 0; i < model.getRowCount(); ++i) {
+            Row r = model.getRow(i);
+            if (chosen.containsKey(r.cm) == selected && r.cm.isClearSupported() && r.entries > 0) {
+                CacheBudget.clear(r.cm, r.bytes == null ? -1L : r.bytes, reason);
+            }
+        }
+    }
+
+    /**
+     * Starts recording a trace, or stops recording and asks where to save
+     * the trace.
+     */
+    private void record() {
+        if (recorder == null) {
+            recorder = new CacheTrace.Recorder();
+            recordBtn.setText("Stop Recording");
+            return;
+        }
+        CacheTrace trace = recorder.stop();
+        recorder = null;
+        recordBtn.setText("Record Trace");
+        recordBtn.setSelected(false);
+
+        JFileChooser fc = new JFileChooser();
+        fc.setSelectedFile(new File(fc.getCurrentDirectory(),
+                "cache-trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt"
+        ));
+        if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            trace.write(fc.getSelectedFile());
+            StrangeEons.log.log(Level.INFO, "wrote {0} cache loads to {1}", new Object[]{trace.getEvents().size(), fc.getSelectedFile()});
+        } catch (IOException ex) {
+            StrangeEons.log.log(Level.WARNING, "unable to write cache trace", ex);
+        }
+    }
+
+    /**
+     * Asks for a trace and budgets, then replays the trace in the background
+     * and shows the results.
+     */
+    private void replay() {
+        JFileChooser fc = new JFileChooser();
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        final File f = fc.getSelectedFile();
+        String text = JOptionPane.showInputDialog(this, "Budgets to compare in MiB (0 for unlimited)", "0 64 128 256");
+        if (text == null) {
+            return;
+        }
+        final int[] budgets;
+        try {
+            String[] tokens = text.trim().split("[\\s,]+");
+            budgets = new int[tokens.length];
+            for (int i = 0; i < tokens.length; ++i) {
+                budgets[i] = Math.max(0, Integer.parseInt(tokens[i]));
+            }
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Not a list of budgets: " + text, "Replay Trace", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        replayBtn.setEnabled(false);
+        new Thread(() -> {
+            String report;
+            try {
+                CacheTrace trace = CacheTrace.read(f);
+                StringBuilder b = new StringBuilder(String.format("%s: %,d loads over %,d s%n",
+                        f.getName(), trace.getEvents().size(), trace.getDuration() / 1000L));
+                for (CacheReplay.Result r : new CacheReplay(trace).run(budgets)) {
+                    b.append(r).append(String.format("%n"));
+                }
+                report = b.toString();
+                StrangeEons.log.info(report);
+            } catch (IOException | RuntimeException ex) {
+                StrangeEons.log.log(Level.WARNING, "unable to replay cache trace", ex);
+                report = "Unable to replay " + f.getName() + ":\n" + ex.getMessage();
+            }
+            final String message = report;
+            EventQueue.invokeLater(() -> {
+                replayBtn.setEnabled(true);
+                JTextArea area = new JTextArea(message, 16, 72);
+                area.setEditable(false);
+                area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, area.getFont().getSize()));
+                JOptionPane.showMessageDialog(this, new JScrollPane(area), "Replay Trace", JOptionPane.PLAIN_MESSAGE);
+            });
+        }, "Developer Tools cache replay").start();
+    }
+
+    /**
+     * One cache's values, read together on the snapshot thread.
+     */
+    private final class Row {
+
+        final CacheMetrics cm;
+        final String name;
+        final String type;
+        final int entries;
+        final Long bytes;
+        final Delta growth;
+        final Double loadRate;
+        final Double turnover;
+
+        Row(CacheMetrics cm) {
+            this.cm = cm;
+            name = cm.toString();
+            type = cm.getContentType().getSimpleName();
+            entries = cm.getItemCount();
+            final long b = CacheSizer.getByteSize(cm);
+            bytes = b < 0L ? null : b;
+
+            CacheSampler.Stats stats = sampler.getStats(cm);
+            if (stats == null) {
+                growth = null;
+                loadRate = null;
+                turnover = null;
+                return;
+            }
+            loadRate = stats.getLoadRate();
+            final double t = stats.getTurnover();
+            turnover = t < 0d ? null : t * 100d;
+            stats.getHistory().snapshot(history, GROWTH_WINDOW + 1);
+            final int n = history.size();
+            if (n < 2 || bytes == null || history.get(0, CacheSampler.BYTES) < 0L) {
+                growth = null;
+            } else {
+                // compare the current size to the oldest sample in the window
+                growth = new Delta(bytes - history.get(0, CacheSampler.BYTES));
+            }
+        }
+    }
+
+    /**
+     * Wraps signed differences so that they can be rendered differently from
+     * absolute values while still sorting numerically.
+     */
+    private static final class Delta implements Comparable<Delta> {
+
+        final long value;
+
+        Delta(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(Delta o) {
+            return Long.compare(value, o.value);
+        }
+    }
+
+    private final class CacheModel extends AbstractTableModel {
+
+        private final String[] names = new String[]{"Cache", "Content", "Entries", "Size", "Growth (1 min)", "Loads/min", "Turnover %"};
+        private final Class<?>[] types = new Class<?>[]{String.class, String.class, Integer.class, Long.class, Delta.class, Double.class, Double.class};
+        private List<Row> rows = Collections.emptyList();
+
+        /**
+         * Replaces the rows. If the same caches are listed in the same order,
+         * the rows are updated in place so that the selection is kept.
+         */
+        void setRows(List<Row> newRows) {
+            boolean sameCaches = newRows.size() == rows.size();
+            for (int i = 0; sameCaches && i < rows.size(); ++i) {
+                sameCaches = rows.get(i).cm == newRows.get(i).cm;
+            }
+            rows = newRows;
+            if (sameCaches && !rows.isEmpty()) {
+                fireTableRowsUpdated(0, rows.size() - 1);
+            } else {
+                fireTableDataChanged();
+            }
+        }
+
+        Row getRow(int row) {
+            return rows.get(row);
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return names.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return names[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return types[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Row r = rows.get(row);
+            switch (column) {
+                case 0:
+                    return r.name;
+                case 1:
+                    return r.type;
+                case 2:
+                    return r.entries;
+                case 3:
+                    return r.bytes;
+                case 4:
+                    return r.growth;
+                case 5:
+                    return r.loadRate;
+                default:
+                    return r.turnover;
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.awt.EventQueue;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import resources.CacheMetrics;
+import resources.ResourceKit;
+
+/**
+ * A recorded sequence of cache loads that can be saved, loaded, and replayed
+ * by {@link CacheReplay}. Each event records when an entry appeared in a
+ * cache, which cache it appeared in, its key, and its estimated size.
+ *
+ * <p>
+ * Caches do not report individual lookups, so the {@link Recorder} can only
+ * observe loads: keys that appear in a cache between samples. A key that is
+ * loaded again after being evicted appears again in the trace, and it is
+ * these repeat loads that a larger cache would have turned into hits.
+ *
+ * <p>
+ * Traces are stored as UTF-8 text with one event per line: the time offset
+ * in milliseconds, the cache name, the size in bytes, and the key, separated
+ * by tabs. Lines that start with <code>#</code> are comments, so traces can
+ * also be written by hand or by a script.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class CacheTrace {
+
+    private final List<Event> events;
+
+    /**
+     * Creates a trace from a list of events, which must be in time order.
+     *
+     * @param events the events in the trace
+     */
+    public CacheTrace(List<Event> events) {
+        this.events = Collections.unmodifiableList(new ArrayList<>(events));
+    }
+
+    /**
+     * Returns the events in the trace, in time order.
+     *
+     * @return the trace events
+     */
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * Returns the time covered by the trace.
+     *
+     * @return the offset of the last event, in milliseconds
+     */
+    public long getDuration() {
+        return events.isEmpty() ? 0L : events.get(events.size() - 1).time;
+    }
+
+    /**
+     * One load recorded in a trace.
+     */
+    static final class Event {
+
+        final long time;
+        final String cache;
+        final long bytes;
+        final String key;
+
+        Event(long time, String cache, long bytes, String key) {
+            this.time = time;
+            this.cache = cache;
+            this.bytes = bytes;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Writes the trace to a file.
+     *
+     * @param f the file to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(File f) throws IOException {
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8))) {
+            out.write("# Developer Tools cache trace: time\tcache\tbytes\tkey\n");
+            for (Event e : events) {
+                out.write(Long.toString(e.time));
+                out.write('\t');
+                out.write(clean(e.cache));
+                out.write('\t');
+                out.write(Long.toString(e.bytes));
+                out.write('\t');
+                out.write(clean(e.key));
+                out.write('\n');
+            }
+        }
+    }
+
+    private static String clean(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Reads a trace from a file.
+     *
+     * @param f the file to read
+     * @return the trace
+     * @throws IOException if an I/O error occurs or the file is not a trace
+     */
+    public static CacheTrace read(File f) throws IOException {
+        List<Event> events = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNum = 0;
+            while ((line = in.readLine()) != null) {
+                ++lineNum;
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                String[] fields = line.split("\t", 4);
+                if (fields.length != 4) {
+                    throw new IOException("line " + lineNum + ": expected 4 fields");
+                }
+                try {
+                    events.add(new Event(Long.parseLong(fields[0]), fields[1], Long.parseLong(fields[2]), fields[3]));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("line " + lineNum + ": " + ex.getMessage());
+                }
+            }
+        }
+        events.sort((a, b) -> Long.compare(a.time, b.time));
+        return new CacheTrace(events);
+    }
+
+    /**
+     * Records a trace by sampling the registered caches. Caches are not
+     * required to be thread safe, so each cache's map is read on the event
+     * dispatch thread, but only the hash codes of its keys are collected
+     * there, and only entries whose key hash was not present in the previous
+     * sample are copied out. The new entries are then sized on the
+     * recorder's own thread. A new key whose hash collides with one already
+     * present is missed, and caches with more than
+     * {@link CacheSampler#MAX_TRACKED_KEYS} entries are not recorded.
+     */
+    static final class Recorder {
+
+        /**
+         * The time between samples, in milliseconds.
+         */
+        public static final int PERIOD = 500;
+
+        private final ScheduledExecutorService executor;
+        private final List<Event> events = new ArrayList<>();
+        // sorted key hashes from the previous sample; written by the recorder
+        // thread and read on the event dispatch thread while it waits
+        private final Map<CacheMetrics, int[]> previousKeys = new IdentityHashMap<>();
+        // only accessed from the event dispatch thread
+        private final Map<CacheMetrics, Map<?, ?>> maps = new IdentityHashMap<>();
+        private final SizeEstimator estimator = new SizeEstimator();
+        private final long start = System.currentTimeMillis();
+
+        /**
+         * Creates a recorder and starts recording. Entries that are already
+         * cached when recording starts are not recorded.
+         */
+        public Recorder() {
+            executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+                Thread t = new Thread(r, "Developer Tools trace recorder");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+            executor.scheduleWithFixedDelay(this::sample, 0, PERIOD, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Stops recording and returns the recorded trace.
+         *
+         * @return the trace recorded so far
+         */
+        public CacheTrace stop() {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                // use whatever has been recorded
+            }
+            synchronized (events) {
+                return new CacheTrace(events);
+            }
+        }
+
+        private void sample() {
+            try {
+                final CacheMetrics[] caches = ResourceKit.getRegisteredCacheMetrics();
+                final int[][] keys = new int[caches.length][];
+                final List<List<Map.Entry<Object, Object>>> loaded = new ArrayList<>(caches.length);
+                EventQueue.invokeAndWait(() -> {
+                    for (int c = 0; c < caches.length; ++c) {
+                        List<Map.Entry<Object, Object>> added = new ArrayList<>();
+                        keys[c] = scan(caches[c], previousKeys.get(caches[c]), added);
+                        loaded.add(added);
+                    }
+                });
+                final long time = System.currentTimeMillis() - start;
+
+                for (int c = 0; c < caches.length; ++c) {
+                    if (keys[c] == null) {
+                        previousKeys.remove(caches[c]);
+                        continue;
+                    }
+                    Arrays.sort(keys[c]);
+                    for (Map.Entry<Object, Object> e : loaded.get(c)) {
+                        Event ev = new Event(time, caches[c].toString(), Math.max(0L, estimator.estimate(e.getValue())), String.valueOf(e.getKey()));
+                        synchronized (events) {
+                            events.add(ev);
+                        }
+                    }
+                    previousKeys.put(caches[c], keys[c]);
+                }
+            } catch (InterruptedException ex) {
+                // stopped
+            } catch (InvocationTargetException | RuntimeException ex) {
+                StrangeEons.log.log(Level.WARNING, "trace sample failed", ex);
+            }
+        }
+
+        /**
+         * Collects the key hashes of a cache on the event dispatch thread,
+         * copying out the entries whose key hash is not in the previous
+         * sample.
+         *
+         * @param cm the cache to scan
+         * @param previous the sorted key hashes of the previous sample, or
+         * null if the cache was not sampled; no entries are copied if null
+         * @param added the list to add new entries to
+         * @return the unsorted key hashes, or null if the cache's keys cannot
+         * be read
+         */
+        private int[] scan(CacheMetrics cm, int[] previous, List<Map.Entry<Object, Object>> added) {
+            final int count = cm.getItemCount();
+            if (count > CacheSampler.MAX_TRACKED_KEYS) {
+                return null;
+            }
+            Map<?, ?> map = maps.get(cm);
+            if (map == null || map.size() != count) {
+                // a cache may replace its map, such as when it is cleared
+                map = CacheContents.findMap(cm);
+                if (map == null) {
+                    maps.remove(cm);
+                    return null;
+                }
+                maps.put(cm, map);
+            }
+            try {
+                final int[] hashes = new int[map.size()];
+                int n = 0;
+                for (Map.Entry<?, ?> e : map.entrySet()) {
+                    if (n == hashes.length) {
+                        added.clear();
+                        return null;
+                    }
+                    final Object key = e.getKey();
+                    final int h = key == null ? 0 : key.hashCode();
+                    hashes[n++] = h;
+                    if (previous != null && Arrays.binarySearch(previous, h) < 0) {
+                        added.add(new AbstractMap.SimpleImmutableEntry<>(key, e.getValue()));
+                    }
+                }
+                return n == hashes.length ? hashes : Arrays.copyOf(hashes, n);
+            } catch (RuntimeException ex) {
+                added.clear();
+                return null;
+            }
+        }
+    }
+}
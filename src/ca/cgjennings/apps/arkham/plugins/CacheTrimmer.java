@@ -0,0 +1,200 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.awt.EventQueue;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import resources.CacheMetrics;
+import resources.ResourceKit;
+import resources.Settings;
+
+/**
+ * Trims the registered caches when memory stays under pressure. After each
+ * garbage collection that collects the tenured heap pool, the occupancy of
+ * that pool is checked; if it remains above {@link #OCCUPANCY_THRESHOLD} for
+ * {@link #CYCLES} such collections in a row, the largest cache is cleared. If
+ * the pressure persists for another run of collections, the next largest is
+ * cleared, and so on. Unlike the heap guard of {@link CacheBudget}, which
+ * reacts to the pool crossing a threshold at any moment, this only acts on
+ * memory that collections fail to reclaim.
+ *
+ * <p>
+ * Every action is written to the application log so that it appears in the
+ * log viewer.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class CacheTrimmer {
+
+    private static final String ENABLED_KEY = "devtools-cache-auto-trim";
+
+    /**
+     * The fraction of the tenured pool that must still be in use after a
+     * collection for the collection to count toward a trim.
+     */
+    public static final double OCCUPANCY_THRESHOLD = 0.75d;
+
+    /**
+     * The number of consecutive collections that must leave the tenured pool
+     * above the threshold before a cache is cleared.
+     */
+    public static final int CYCLES = 3;
+
+    private static String poolName;
+    private static NotificationListener listener;
+    private static final List<NotificationEmitter> emitters = new ArrayList<>();
+    private static int highCycles;
+    private static int trimmed;
+
+    private CacheTrimmer() {
+    }
+
+    /**
+     * Starts trimming if it is enabled in user settings.
+     */
+    public static void install() {
+        if (isEnabled()) {
+            start();
+        }
+    }
+
+    /**
+     * Stops trimming.
+     */
+    public static void uninstall() {
+        stop();
+    }
+
+    public static boolean isEnabled() {
+        return Settings.getUser().getInt(ENABLED_KEY, 0) != 0;
+    }
+
+    /**
+     * Sets whether caches are trimmed automatically.
+     *
+     * @param enable if true, start trimming
+     */
+    public static void setEnabled(boolean enable) {
+        Settings.getUser().set(ENABLED_KEY, enable ? "1" : "0");
+        if (enable) {
+            start();
+        } else {
+            stop();
+        }
+    }
+
+    private static synchronized void start() {
+        if (listener != null) {
+            return;
+        }
+        MemoryPoolMXBean pool = CacheBudget.findTenuredPool();
+        if (pool == null) {
+            StrangeEons.log.warning("no tenured heap pool found; automatic cache trimming disabled");
+            return;
+        }
+        poolName = pool.getName();
+        highCycles = 0;
+        trimmed = 0;
+        listener = CacheTrimmer::collectionFinished;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gc;
+                emitter.addNotificationListener(listener, null, null);
+                emitters.add(emitter);
+            }
+        }
+        StrangeEons.log.log(Level.INFO, "trimming caches when {0} stays over {1}% full", new Object[]{
+            poolName, Math.round(OCCUPANCY_THRESHOLD * 100d)
+        });
+    }
+
+    private static synchronized void stop() {
+        if (listener == null) {
+            return;
+        }
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (ListenerNotFoundException ex) {
+                StrangeEons.log.log(Level.WARNING, null, ex);
+            }
+        }
+        emitters.clear();
+        listener = null;
+    }
+
+    /**
+     * Returns whether a collection worked on the tenured pool. Young
+     * collections never reclaim tenured memory, so counting them would trim
+     * after a burst of minor collections. Pool membership cannot tell them
+     * apart, since G1's young collector also reports the old generation. So a
+     * major collection always counts, and any other collection counts only if
+     * the tenured pool shrank, as it does in G1's mixed collections.
+     */
+    private static boolean collectsTenured(String action, MemoryUsage before, MemoryUsage after) {
+        if ("end of major GC".equals(action)) {
+            return true;
+        }
+        return before != null && after.getUsed() < before.getUsed();
+    }
+
+    /**
+     * Called on a notification thread after each collection.
+     */
+    private static void collectionFinished(Notification n, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+        MemoryUsage before = info.getGcInfo().getMemoryUsageBeforeGc().get(poolName);
+        MemoryUsage after = info.getGcInfo().getMemoryUsageAfterGc().get(poolName);
+        if (after == null || !collectsTenured(info.getGcAction(), before, after)) {
+            return;
+        }
+        final long capacity = after.getMax() > 0L ? after.getMax() : after.getCommitted();
+        if (capacity <= 0L) {
+            return;
+        }
+        final double occupancy = after.getUsed() / (double) capacity;
+
+        synchronized (CacheTrimmer.class) {
+            if (occupancy < OCCUPANCY_THRESHOLD) {
+                if (trimmed > 0) {
+                    StrangeEons.log.log(Level.INFO, "memory pressure relieved after trimming {0} cache(s); {1} is {2}% full", new Object[]{
+                        trimmed, poolName, Math.round(occupancy * 100d)
+                    });
+                }
+                highCycles = 0;
+                trimmed = 0;
+                return;
+            }
+            if (++highCycles < CYCLES) {
+                return;
+            }
+            highCycles = 0;
+            ++trimmed;
+        }
+
+        final String reason = String.format("%s still %.0f%% full after %d collections (%s)",
+                poolName, occupancy * 100d, CYCLES, info.getGcName());
+        EventQueue.invokeLater(() -> {
+            CacheMetrics largest = CacheBudget.findLargest(ResourceKit.getRegisteredCacheMetrics());
+            if (largest == null) {
+                StrangeEons.log.log(Level.INFO, "{0}, but there are no caches left to trim", reason);
+            } else {
+                CacheBudget.clear(largest, CacheSizer.getByteSize(largest), reason);
+            }
+        });
+    }
+}
@@ -0,0 +1,170 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A live object histogram: the number of instances and total shallow size of
+ * each loaded class. Histograms are captured with the HotSpot
+ * <code>DiagnosticCommand</code> MBean's <code>gcClassHistogram</code>
+ * operation, which performs a full collection first so that only live objects
+ * are counted.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class ClassHistogram {
+
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+
+    // "   1:         12345        1234567  [B (java.base@11.0.2)"
+    private static final Pattern ROW = Pattern.compile("^\\s*\\d+:\\s+(\\d+)\\s+(\\d+)\\s+(\\S+).*$");
+
+    private final Map<String, Row> rows;
+    private final long time;
+    private long instances;
+    private long bytes;
+
+    private ClassHistogram(int size) {
+        rows = new HashMap<>(size);
+        time = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns whether histograms can be captured in this JVM.
+     *
+     * @return true if the diagnostic command MBean is available
+     */
+    public static boolean isAvailable() {
+        try {
+            return ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(DIAGNOSTIC_COMMAND));
+        } catch (JMException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Captures a histogram of the live objects on the heap. This forces a full
+     * garbage collection and may take some time on a large heap, so it should
+     * not be called from the event dispatch thread.
+     *
+     * @return the new histogram
+     * @throws IOException if the histogram cannot be captured
+     */
+    public static ClassHistogram capture() throws IOException {
+        String text;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            text = (String) server.invoke(
+                    new ObjectName(DIAGNOSTIC_COMMAND), "gcClassHistogram",
+                    new Object[]{new String[0]}, new String[]{String[].class.getName()}
+            );
+        } catch (JMException ex) {
+            throw new IOException("unable to capture class histogram", ex);
+        }
+        return parse(text);
+    }
+
+    /**
+     * Parses the text output of the <code>GC.class_histogram</code>
+     * diagnostic command.
+     *
+     * @param text the command output
+     * @return the parsed histogram
+     * @throws IOException if the text is not a histogram
+     */
+    static ClassHistogram parse(String text) throws IOException {
+        ClassHistogram h = new ClassHistogram(4096);
+        BufferedReader r = new BufferedReader(new StringReader(text));
+        Matcher m = ROW.matcher("");
+        String line;
+        while ((line = r.readLine()) != null) {
+            if (m.reset(line).matches()) {
+                final long n = Long.parseLong(m.group(1));
+                final long b = Long.parseLong(m.group(2));
+                final String name = m.group(3);
+                Row row = h.rows.get(name);
+                if (row == null) {
+                    row = new Row(name);
+                    h.rows.put(name, row);
+                }
+                // the same name can appear once per class loader
+                row.instances += n;
+                row.bytes += b;
+                h.instances += n;
+                h.bytes += b;
+            }
+        }
+        if (h.rows.isEmpty()) {
+            throw new IOException("not a class histogram");
+        }
+        return h;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public long getTotalInstances() {
+        return instances;
+    }
+
+    public long getTotalBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the histogram rows, one per class name.
+     *
+     * @return the classes in the histogram
+     */
+    public Collection<Row> getRows() {
+        return rows.values();
+    }
+
+    /**
+     * Returns the row for the named class, or <code>null</code>.
+     *
+     * @param className the class name, as reported by the histogram
+     * @return the row for the class, or <code>null</code> if it had no live
+     * instances
+     */
+    public Row getRow(String className) {
+        return rows.get(className);
+    }
+
+    /**
+     * The instance count and total shallow size for one class.
+     */
+    static final class Row {
+
+        private final String name;
+        private long instances;
+        private long bytes;
+
+        private Row(String name) {
+            this.name = name;
+        }
+
+        public String getClassName() {
+            return name;
+        }
+
+        public long getInstances() {
+            return instances;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
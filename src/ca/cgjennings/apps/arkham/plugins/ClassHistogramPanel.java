@@ -0,0 +1,279 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import ca.cgjennings.apps.arkham.ToolWindow;
+import ca.cgjennings.ui.DocumentEventAdapter;
+import ca.cgjennings.ui.JFilterField;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Cursor;
+import java.awt.EventQueue;
+import java.awt.FlowLayout;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.regex.PatternSyntaxException;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.RowFilter;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
+
+/**
+ * Captures live object histograms at two points in time and lists the change
+ * in instances and bytes for each class. Capture a baseline, perform the
+ * operation under suspicion (such as opening a project, rendering, and
+ * closing it again), and then compare to see which types grew.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class ClassHistogramPanel extends JPanel {
+
+    private static final Color PANEL_BACKGROUND = new Color(64, 64, 64);
+    private static final Color GROWTH = new Color(255, 160, 122);
+    private static final Color SHRINKAGE = new Color(144, 238, 144);
+
+    private final JButton baselineBtn = new JButton("Capture Baseline");
+    private final JButton compareBtn = new JButton("Capture and Compare");
+    private final JLabel status = new JLabel(" ");
+    private final JTable table = new JTable();
+    private final JFilterField filterField = new JFilterField();
+    private final HistogramModel model = new HistogramModel();
+
+    private ClassHistogram baseline;
+    private ClassHistogram current;
+
+    public ClassHistogramPanel(ToolWindow tw) {
+        super(new BorderLayout());
+
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        controlPanel.setBackground(PANEL_BACKGROUND);
+        controlPanel.setBorder(BorderFactory.createMatteBorder(0, 0, 1, 0, new Color(128, 128, 128)));
+        smallFont(baselineBtn);
+        smallFont(compareBtn);
+        smallFont(status);
+        status.setForeground(new Color(192, 192, 192));
+        baselineBtn.addActionListener((e) -> capture(true));
+        compareBtn.addActionListener((e) -> capture(false));
+        compareBtn.setEnabled(false);
+        controlPanel.add(baselineBtn);
+        controlPanel.add(compareBtn);
+        controlPanel.add(status);
+        add(controlPanel, BorderLayout.PAGE_START);
+
+        table.setModel(model);
+        table.setAutoCreateRowSorter(true);
+        table.setBackground(PANEL_BACKGROUND);
+        table.setForeground(Color.WHITE);
+        table.setFillsViewportHeight(true);
+        smallFont(table);
+        table.getColumnModel().getColumn(0).setPreferredWidth(300);
+        table.setDefaultRenderer(Long.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setHorizontalAlignment(RIGHT);
+                setText(value == null ? "" : String.format("%,d", (Long) value));
+            }
+        });
+        table.setDefaultRenderer(Delta.class, new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+                super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                setHorizontalAlignment(RIGHT);
+                long v = value == null ? 0L : ((Delta) value).value;
+                setText(value == null ? "" : String.format("%+,d", v));
+                if (!isSelected) {
+                    // use a different colour for growth and shrinkage
+                    setForeground(v > 0 ? GROWTH : v < 0 ? SHRINKAGE : table.getForeground());
+                }
+                return this;
+            }
+        });
+        JScrollPane tableScroll = new JScrollPane(table);
+        tableScroll.setBorder(BorderFactory.createEmptyBorder());
+        add(tableScroll, BorderLayout.CENTER);
+
+        JPanel filterPanel = new JPanel(new BorderLayout());
+        filterPanel.setBackground(Color.DARK_GRAY);
+        filterPanel.setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, new Color(128, 128, 128)));
+        filterField.setBackground(PANEL_BACKGROUND);
+        filterField.setForeground(Color.LIGHT_GRAY);
+        filterField.setCaretColor(Color.WHITE);
+        filterField.setLabel("Regex class filter");
+        filterField.setSelectedTextColor(Color.BLACK);
+        filterField.setSelectionColor(new Color(255, 200, 0));
+        filterField.setTextForeground(Color.WHITE);
+        filterField.getDocument().addDocumentListener(new DocumentEventAdapter() {
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                EventQueue.invokeLater(ClassHistogramPanel.this::updateFilter);
+            }
+        });
+        filterPanel.add(filterField, BorderLayout.CENTER);
+        add(filterPanel, BorderLayout.PAGE_END);
+
+        if (!ClassHistogram.isAvailable()) {
+            baselineBtn.setEnabled(false);
+            status.setText("Not supported by this JVM");
+        }
+    }
+
+    private static void smallFont(JComponent c) {
+        c.setFont(c.getFont().deriveFont(c.getFont().getSize() - 1f));
+    }
+
+    private String currentFilterText = "";
+
+    private void updateFilter() {
+        String text = filterField.getText();
+        if (!text.equals(currentFilterText)) {
+            RowFilter<Object, Object> newFilter = null;
+            if (!text.isEmpty()) {
+                try {
+                    newFilter = RowFilter.regexFilter(text, 0);
+                } catch (PatternSyntaxException ex) {
+                    // keep the previous filter until the pattern is valid
+                    return;
+                }
+            }
+            ((TableRowSorter) table.getRowSorter()).setRowFilter(newFilter);
+            currentFilterText = text;
+        }
+    }
+
+    /**
+     * Captures a histogram in the background, then either makes it the new
+     * baseline or compares it to the existing baseline.
+     */
+    private void capture(final boolean asBaseline) {
+        baselineBtn.setEnabled(false);
+        compareBtn.setEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        status.setText("Capturing...");
+        new Thread(() -> {
+            ClassHistogram h = null;
+            try {
+                h = ClassHistogram.capture();
+            } catch (IOException ex) {
+                StrangeEons.log.log(Level.WARNING, null, ex);
+            }
+            final ClassHistogram result = h;
+            EventQueue.invokeLater(() -> {
+                setCursor(Cursor.getDefaultCursor());
+                baselineBtn.setEnabled(true);
+                if (result == null) {
+                    status.setText("Capture failed");
+                } else if (asBaseline) {
+                    baseline = result;
+                    current = null;
+                    status.setText(String.format("Baseline: %,d objects, %,d bytes", result.getTotalInstances(), result.getTotalBytes()));
+                    model.update();
+                } else {
+                    current = result;
+                    status.setText(String.format("Change: %+,d objects, %+,d bytes in %,d s",
+                            result.getTotalInstances() - baseline.getTotalInstances(),
+                            result.getTotalBytes() - baseline.getTotalBytes(),
+                            (result.getTime() - baseline.getTime()) / 1000L));
+                    model.update();
+                }
+                compareBtn.setEnabled(baseline != null);
+            });
+        }, "Developer Tools class histogram").start();
+    }
+
+    /**
+     * Wraps signed differences so that they can be rendered differently from
+     * absolute values while still sorting numerically.
+     */
+    private static final class Delta implements Comparable<Delta> {
+
+        final long value;
+
+        Delta(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(Delta o) {
+            return Long.compare(value, o.value);
+        }
+    }
+
+    private final class HistogramModel extends AbstractTableModel {
+
+        private final String[] names = new String[]{"Class", "Instances", "Δ Instances", "Bytes", "Δ Bytes"};
+        private final Class<?>[] types = new Class<?>[]{String.class, Long.class, Delta.class, Long.class, Delta.class};
+        private List<Object[]> rows = Collections.emptyList();
+
+        void update() {
+            ClassHistogram latest = current == null ? baseline : current;
+            Set<String> classes = new HashSet<>();
+            for (ClassHistogram.Row r : latest.getRows()) {
+                classes.add(r.getClassName());
+            }
+            if (current != null) {
+                for (ClassHistogram.Row r : baseline.getRows()) {
+                    classes.add(r.getClassName());
+                }
+            }
+
+            List<Object[]> newRows = new ArrayList<>(classes.size());
+            for (String c : classes) {
+                ClassHistogram.Row now = latest.getRow(c);
+                long n = now == null ? 0L : now.getInstances();
+                long b = now == null ? 0L : now.getBytes();
+                Delta dn = null, db = null;
+                if (current != null) {
+                    ClassHistogram.Row then = baseline.getRow(c);
+                    dn = new Delta(n - (then == null ? 0L : then.getInstances()));
+                    db = new Delta(b - (then == null ? 0L : then.getBytes()));
+                }
+                newRows.add(new Object[]{c, n, dn, b, db});
+            }
+            rows = newRows;
+            fireTableDataChanged();
+
+            final int sortColumn = current == null ? 3 : 4;
+            table.getRowSorter().setSortKeys(Collections.singletonList(new RowSorter.SortKey(sortColumn, SortOrder.DESCENDING)));
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return names.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return names[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return types[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return rows.get(row)[column];
+        }
+    }
+}
@@ -117,7 +117,7 @@ public class CutCornersPanel extends javax.swing.JPanel implements DevToolProxy.
                     safeSetRadius(s, radius);
                 }
                 if (ed instanceof AbstractGameComponentEditor) {
-                    ((AbstractGameComponentEditor<?>) ed).redrawPreview();
+                    RenderProfiler.redraw((AbstractGameComponentEditor<?>) ed);
                 }
             }
         }
@@ -51,11 +51,17 @@ public class DeveloperTools extends AbstractPlugin {
 
         // force the expansion symbol MIP map cache to register itself
         ca.cgjennings.apps.arkham.sheet.Sheet.getExpansionSymbol(Expansion.getBaseGameExpansion(), "0", 100);
+        // prefetch the images recorded in the cache warm-up profile, if enabled
+        WarmUpProfile.replay();
 
         registerChangeEncodingAction(true);
         registerCatalogTask(true);
         registerRegionBoxesCommand(true);
         registerToolWindows(true);
+        CacheBudget.install();
+        CacheTrimmer.install();
+        MetricsExporter.install();
+        LogArchive.install();
 
         loaded = true;
     }
@@ -66,6 +72,11 @@ public class DeveloperTools extends AbstractPlugin {
         registerCatalogTask(false);
         registerRegionBoxesCommand(false);
         registerToolWindows(false);
+        CacheBudget.uninstall();
+        CacheTrimmer.uninstall();
+        WarmUpProfile.cancel();
+        MetricsExporter.uninstall();
+        LogArchive.uninstall();
 
         loaded = false;
     }
@@ -156,7 +167,10 @@ public class DeveloperTools extends AbstractPlugin {
                 "Cache Manager",
                 "Memory Use",
                 "Log Viewer",
-                StrangeEons.getBuildNumber() > 4204 ? "Cut Corners" : null
+                StrangeEons.getBuildNumber() > 4204 ? "Cut Corners" : null,
+                "Class Histogram",
+                "EDT Monitor",
+                "Render Profiler"
             };
 
             toolWindows = new DevToolProxy[toolTypes.length];
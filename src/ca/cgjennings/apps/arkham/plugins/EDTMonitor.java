@@ -0,0 +1,288 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures the responsiveness of the event dispatch thread. A background
+ * thread posts a timestamped probe to the event queue, waits for it to be
+ * dispatched, and records the delay in a histogram. If a probe is still
+ * waiting after the stall threshold, the stack of the event dispatch thread
+ * is captured so that the operation that was blocking it can be identified.
+ *
+ * <p>
+ * Only one probe is outstanding at a time, so a long stall is counted once,
+ * with its full duration, rather than as many slow probes.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class EDTMonitor {
+
+    /**
+     * Time between a probe being dispatched and the next being posted.
+     */
+    public static final int PROBE_PERIOD = 50;
+
+    /**
+     * The maximum number of stalls that are kept; older stalls are dropped.
+     */
+    public static final int MAX_STALLS = 50;
+
+    /**
+     * The number of histogram buckets. Bucket <i>b</i> counts latencies of
+     * less than 2<sup><i>b</i></sup> ms and at least half that; the last
+     * bucket counts all longer latencies.
+     */
+    public static final int BUCKETS = 14;
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private volatile long probeCount;
+    private volatile long totalLatencyNanos;
+    private volatile long maxLatencyNanos;
+    private volatile int threshold = 100;
+
+    private final LinkedList<Stall> stalls = new LinkedList<>();
+    private Thread prober;
+    private volatile Thread edt;
+
+    /**
+     * Starts posting probes, if not already started.
+     */
+    public synchronized void start() {
+        if (prober != null) {
+            return;
+        }
+        prober = new Thread(this::probeLoop, "Developer Tools EDT monitor");
+        prober.setDaemon(true);
+        prober.start();
+    }
+
+    /**
+     * Stops posting probes.
+     */
+    public synchronized void stop() {
+        if (prober != null) {
+            prober.interrupt();
+            prober = null;
+        }
+    }
+
+    /**
+     * Sets the latency, in milliseconds, above which a stall is recorded.
+     *
+     * @param ms the stall threshold
+     */
+    public void setThreshold(int ms) {
+        threshold = Math.max(1, ms);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * A delay in dispatching a probe that exceeded the threshold.
+     */
+    static final class Stall {
+
+        private final long time;
+        private final StackTraceElement[] stack;
+        private volatile long duration = -1L;
+
+        private Stall(long time, StackTraceElement[] stack) {
+            this.time = time;
+            this.stack = stack;
+        }
+
+        /**
+         * Returns the time that the stalled probe was posted.
+         *
+         * @return the start time, in milliseconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the stack of the event dispatch thread when the threshold
+         * was crossed.
+         *
+         * @return the captured stack
+         */
+        public StackTraceElement[] getStack() {
+            return stack;
+        }
+
+        /**
+         * Returns the length of the stall in milliseconds, or -1 if the probe
+         * has not been dispatched yet.
+         *
+         * @return the stall duration
+         */
+        public long getDuration() {
+            return duration;
+        }
+    }
+
+    private void probeLoop() {
+        final long[] dispatched = new long[1];
+        final Object lock = new Object();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final long posted = System.nanoTime();
+                dispatched[0] = 0L;
+                EventQueue.invokeLater(() -> {
+                    edt = Thread.currentThread();
+                    synchronized (lock) {
+                        dispatched[0] = System.nanoTime();
+                        lock.notifyAll();
+                    }
+                });
+
+                Stall stall = null;
+                synchronized (lock) {
+                    long wait = threshold;
+                    while (dispatched[0] == 0L) {
+                        lock.wait(wait);
+                        if (dispatched[0] == 0L && stall == null) {
+                            stall = captureStall(posted);
+                            wait = 0L;
+                        }
+                    }
+                }
+
+                final long latency = dispatched[0] - posted;
+                record(latency);
+                if (stall != null) {
+                    stall.duration = latency / 1_000_000L;
+                }
+                Thread.sleep(PROBE_PERIOD);
+            }
+        } catch (InterruptedException ex) {
+            // stopped
+        }
+    }
+
+    private Stall captureStall(long posted) {
+        final Thread t = edt;
+        final StackTraceElement[] stack = t == null ? new StackTraceElement[0] : t.getStackTrace();
+        final long age = (System.nanoTime() - posted) / 1_000_000L;
+        final Stall stall = new Stall(System.currentTimeMillis() - age, stack);
+        synchronized (stalls) {
+            stalls.addFirst(stall);
+            if (stalls.size() > MAX_STALLS) {
+                stalls.removeLast();
+            }
+        }
+        return stall;
+    }
+
+    private void record(long nanos) {
+        final long ms = nanos / 1_000_000L;
+        int b = 0;
+        while (b < BUCKETS - 1 && ms >= (1L << b)) {
+            ++b;
+        }
+        histogram.incrementAndGet(b);
+        // only the prober thread writes these
+        totalLatencyNanos += nanos;
+        if (nanos > maxLatencyNanos) {
+            maxLatencyNanos = nanos;
+        }
+        ++probeCount;
+    }
+
+    /**
+     * Returns a copy of the latency histogram.
+     *
+     * @return the probe count in each bucket
+     */
+    public long[] getHistogram() {
+        long[] h = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            h[i] = histogram.get(i);
+        }
+        return h;
+    }
+
+    /**
+     * Returns an upper bound on the latency of the given fraction of probes,
+     * based on the histogram.
+     *
+     * @param fraction the fraction, between 0 and 1
+     * @return the latency, in milliseconds, that the fraction of probes did
+     * not exceed; or -1 if no probes have completed
+     */
+    public long getPercentile(double fraction) {
+        long[] h = getHistogram();
+        long total = 0L;
+        for (long n : h) {
+            total += n;
+        }
+        if (total == 0L) {
+            return -1L;
+        }
+        final long target = (long) Math.ceil(total * fraction);
+        long seen = 0L;
+        for (int b = 0; b < BUCKETS - 1; ++b) {
+            seen += h[b];
+            if (seen >= target) {
+                return 1L << b;
+            }
+        }
+        return getMaxLatency();
+    }
+
+    public long getProbeCount() {
+        return probeCount;
+    }
+
+    /**
+     * Returns the mean dispatch latency.
+     *
+     * @return the mean latency, in milliseconds
+     */
+    public double getMeanLatency() {
+        final long n = probeCount;
+        return n == 0L ? 0d : totalLatencyNanos / 1e6d / n;
+    }
+
+    /**
+     * Returns the longest dispatch latency seen.
+     *
+     * @return the maximum latency, in milliseconds
+     */
+    public long getMaxLatency() {
+        return maxLatencyNanos / 1_000_000L;
+    }
+
+    /**
+     * Returns the recorded stalls, most recent first.
+     *
+     * @return a copy of the stall list
+     */
+    public List<Stall> getStalls() {
+        synchronized (stalls) {
+            return new ArrayList<>(stalls);
+        }
+    }
+
+    /**
+     * Clears the histogram and the recorded stalls.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            histogram.set(i, 0L);
+        }
+        synchronized (stalls) {
+            stalls.clear();
+        }
+        // racing with the prober only loses a probe or two
+        probeCount = 0L;
+        totalLatencyNanos = 0L;
+        maxLatencyNanos = 0L;
+    }
+}
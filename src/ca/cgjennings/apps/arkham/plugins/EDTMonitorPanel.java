@@ -0,0 +1,223 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.ToolWindow;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JSplitPane;
+import javax.swing.JTextArea;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.Timer;
+
+/**
+ * Shows the event dispatch thread latency measured by an {@link EDTMonitor}:
+ * a histogram of probe dispatch delays, and a list of stalls that exceeded
+ * the threshold along with the stack of the event dispatch thread at the time.
+ * Monitoring continues while the window is closed so that stalls are still
+ * caught; it stops when the plug-in is unloaded.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class EDTMonitorPanel extends JPanel implements DevToolProxy.UnloadablePanel {
+
+    private static final Color PANEL_BACKGROUND = new Color(64, 64, 64);
+    private static final int UPDATE_DELAY = 500;
+
+    private final EDTMonitor monitor = new EDTMonitor();
+    private final JLabel summary = new JLabel(" ");
+    private final Histogram histogram = new Histogram();
+    private final DefaultListModel<EDTMonitor.Stall> stallModel = new DefaultListModel<>();
+    private final JList<EDTMonitor.Stall> stallList = new JList<>(stallModel);
+    private final JTextArea stackField = new JTextArea();
+    private final Timer updateTimer;
+
+    public EDTMonitorPanel(ToolWindow tw) {
+        super(new BorderLayout());
+        setBackground(PANEL_BACKGROUND);
+
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        controlPanel.setBackground(PANEL_BACKGROUND);
+        controlPanel.setBorder(BorderFactory.createMatteBorder(0, 0, 1, 0, new Color(128, 128, 128)));
+        JLabel thresholdLabel = new JLabel("Stall threshold (ms)");
+        thresholdLabel.setForeground(Color.WHITE);
+        smallFont(thresholdLabel);
+        final JSpinner thresholdSpinner = new JSpinner(new SpinnerNumberModel(monitor.getThreshold(), 10, 10_000, 10));
+        smallFont(thresholdSpinner);
+        thresholdSpinner.addChangeListener((e) -> monitor.setThreshold((Integer) thresholdSpinner.getValue()));
+        JButton resetBtn = new JButton("Reset");
+        smallFont(resetBtn);
+        resetBtn.addActionListener((e) -> {
+            monitor.reset();
+            stallModel.clear();
+            stackField.setText("");
+            update();
+        });
+        summary.setForeground(new Color(192, 192, 192));
+        smallFont(summary);
+        controlPanel.add(thresholdLabel);
+        controlPanel.add(thresholdSpinner);
+        controlPanel.add(resetBtn);
+        controlPanel.add(summary);
+        add(controlPanel, BorderLayout.PAGE_START);
+
+        stallList.setBackground(PANEL_BACKGROUND);
+        stallList.setForeground(Color.WHITE);
+        smallFont(stallList);
+        stallList.setCellRenderer(new DefaultListCellRenderer() {
+            private final SimpleDateFormat fmt = new SimpleDateFormat("HH:mm:ss");
+
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                EDTMonitor.Stall s = (EDTMonitor.Stall) value;
+                StackTraceElement[] stack = s.getStack();
+                String where = stack.length == 0 ? "" : stack[0].getClassName() + '.' + stack[0].getMethodName();
+                long d = s.getDuration();
+                setText(String.format("%s  %s  %s", fmt.format(new Date(s.getTime())), d < 0 ? "ongoing" : d + " ms", where));
+                return this;
+            }
+        });
+        stallList.addListSelectionListener((e) -> showStack(stallList.getSelectedValue()));
+
+        stackField.setEditable(false);
+        stackField.setBackground(PANEL_BACKGROUND);
+        stackField.setForeground(Color.WHITE);
+        stackField.setFont(new Font(Font.MONOSPACED, Font.PLAIN, stallList.getFont().getSize()));
+
+        JScrollPane listScroll = new JScrollPane(stallList);
+        listScroll.setBorder(BorderFactory.createEmptyBorder());
+        JScrollPane stackScroll = new JScrollPane(stackField);
+        stackScroll.setBorder(BorderFactory.createEmptyBorder());
+        JSplitPane stallSplit = new JSplitPane(JSplitPane.VERTICAL_SPLIT, listScroll, stackScroll);
+        stallSplit.setResizeWeight(0.4d);
+        stallSplit.setBorder(BorderFactory.createEmptyBorder());
+        JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, histogram, stallSplit);
+        split.setResizeWeight(0.35d);
+        split.setBorder(BorderFactory.createEmptyBorder());
+        add(split, BorderLayout.CENTER);
+
+        updateTimer = new Timer(UPDATE_DELAY, (e) -> {
+            if (isShowing()) {
+                update();
+            }
+        });
+        updateTimer.start();
+        monitor.start();
+    }
+
+    private static void smallFont(JComponent c) {
+        c.setFont(c.getFont().deriveFont(c.getFont().getSize() - 1f));
+    }
+
+    private void update() {
+        final long p99 = monitor.getPercentile(0.99d);
+        summary.setText(String.format(
+                "%,d probes    mean %.1f ms    p99 ≤ %s ms    max %,d ms",
+                monitor.getProbeCount(), monitor.getMeanLatency(),
+                p99 < 0 ? "-" : String.format("%,d", p99), monitor.getMaxLatency()
+        ));
+        histogram.repaint();
+
+        // the list is rebuilt only when stalls are added, to keep the selection
+        List<EDTMonitor.Stall> stalls = monitor.getStalls();
+        if (stalls.size() != stallModel.size() || (!stalls.isEmpty() && stalls.get(0) != stallModel.get(0))) {
+            EDTMonitor.Stall sel = stallList.getSelectedValue();
+            stallModel.clear();
+            for (EDTMonitor.Stall s : stalls) {
+                stallModel.addElement(s);
+            }
+            if (sel != null) {
+                stallList.setSelectedValue(sel, false);
+            }
+        } else {
+            // durations of ongoing stalls may have been filled in
+            stallList.repaint();
+        }
+    }
+
+    private void showStack(EDTMonitor.Stall s) {
+        if (s == null) {
+            stackField.setText("");
+            return;
+        }
+        StringBuilder b = new StringBuilder();
+        for (StackTraceElement el : s.getStack()) {
+            b.append("at ").append(el).append('\n');
+        }
+        stackField.setText(b.toString());
+        stackField.select(0, 0);
+    }
+
+    @Override
+    public void onUnload() {
+        updateTimer.stop();
+        monitor.stop();
+    }
+
+    /**
+     * Draws the latency histogram as a bar chart with a logarithmic count
+     * scale, so that rare long delays remain visible.
+     */
+    private final class Histogram extends JComponent {
+
+        Histogram() {
+            setOpaque(true);
+            setPreferredSize(new Dimension(200, 120));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g1) {
+            Graphics2D g = (Graphics2D) g1;
+            final int w = getWidth();
+            final int h = getHeight();
+            g.setPaint(Color.DARK_GRAY);
+            g.fillRect(0, 0, w, h);
+
+            final long[] counts = monitor.getHistogram();
+            double maxLog = 0d;
+            for (long n : counts) {
+                maxLog = Math.max(maxLog, Math.log1p(n));
+            }
+
+            g.setFont(g.getFont().deriveFont(g.getFont().getSize() - 2f));
+            final int labelH = g.getFontMetrics().getHeight();
+            final int barArea = h - labelH - 4;
+            final double barW = (double) w / counts.length;
+            final int threshold = monitor.getThreshold();
+            for (int b = 0; b < counts.length; ++b) {
+                final int x = (int) (b * barW);
+                final int x2 = (int) ((b + 1) * barW);
+                if (counts[b] > 0 && maxLog > 0d) {
+                    final int bh = Math.max(1, (int) (Math.log1p(counts[b]) / maxLog * barArea));
+                    // buckets whose lower bound is at or over the threshold are stalls
+                    final long lower = b == 0 ? 0L : 1L << (b - 1);
+                    g.setPaint(lower >= threshold ? Color.RED : Color.ORANGE);
+                    g.fillRect(x + 1, barArea - bh, Math.max(1, x2 - x - 2), bh);
+                }
+                if (b % 2 == 0) {
+                    g.setPaint(Color.LIGHT_GRAY);
+                    final String label = b == counts.length - 1 ? "∞" : String.valueOf(1L << b);
+                    g.drawString(label, x + 1, h - 3);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jdk.jfr.Configuration;
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Records allocation, garbage collection, monitor contention, and execution
+ * sample events using the JDK Flight Recorder and summarizes the resulting
+ * recording file as a {@link RecordingReport}. This is the only class that
+ * refers to the <code>jdk.jfr</code> API; callers must check
+ * {@link #isAvailable()} before loading it.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class FlightRecorder {
+
+    /**
+     * Returns whether the running JVM includes the flight recorder API. This
+     * is safe to call when the API is missing.
+     *
+     * @return true if recordings can be made
+     */
+    public static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Recording");
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    private static final String SAMPLE_EVENT = "jdk.ObjectAllocationSample";
+    private static final String IN_TLAB_EVENT = "jdk.ObjectAllocationInNewTLAB";
+    private static final String OUTSIDE_TLAB_EVENT = "jdk.ObjectAllocationOutsideTLAB";
+
+    private static final String[] COMMON_EVENTS = new String[]{
+        "jdk.GarbageCollection",
+        "jdk.JavaMonitorEnter",
+        "jdk.ExecutionSample"
+    };
+
+    /**
+     * The most recording data kept on disk; older data is discarded.
+     */
+    private static final long MAX_SIZE = 64L * 1024L * 1024L;
+
+    /**
+     * The oldest recording data kept on disk.
+     */
+    private static final Duration MAX_AGE = Duration.ofMinutes(10);
+
+    private Recording recording;
+
+    /**
+     * Returns the events to record. Allocations are recorded either with the
+     * throttled allocation sample event, when the JVM has it (Java 16 and
+     * later), or with the TLAB events. The two describe the same allocations
+     * in different ways, so they are never recorded together.
+     */
+    private static String[] events() {
+        boolean hasSample = false;
+        for (EventType type : jdk.jfr.FlightRecorder.getFlightRecorder().getEventTypes()) {
+            if (SAMPLE_EVENT.equals(type.getName())) {
+                hasSample = true;
+                break;
+            }
+        }
+        List<String> events = new ArrayList<>(Arrays.asList(COMMON_EVENTS));
+        if (hasSample) {
+            events.add(SAMPLE_EVENT);
+        } else {
+            events.add(IN_TLAB_EVENT);
+            events.add(OUTSIDE_TLAB_EVENT);
+        }
+        return events.toArray(new String[events.size()]);
+    }
+
+    /**
+     * Starts a new recording.
+     *
+     * @throws IOException if the recording configuration cannot be read
+     * @throws IllegalStateException if already recording
+     */
+    public void start() throws IOException {
+        if (recording != null) {
+            throw new IllegalStateException("already recording");
+        }
+        Map<String, String> settings;
+        try {
+            settings = new HashMap<>(Configuration.getConfiguration("profile").getSettings());
+        } catch (ParseException ex) {
+            throw new IOException(ex);
+        }
+        // drop everything else in the profile to keep the file small
+        final String[] events = events();
+        settings.keySet().removeIf((key) -> {
+            for (String ev : events) {
+                if (key.startsWith(ev + '#')) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        Recording r = new Recording(settings);
+        for (String ev : events) {
+            r.enable(ev).withStackTrace();
+        }
+        r.enable("jdk.JavaMonitorEnter").withThreshold(Duration.ofMillis(10));
+        r.enable("jdk.ExecutionSample").withPeriod(Duration.ofMillis(10));
+        r.setName("Developer Tools");
+        r.setToDisk(true);
+        r.setMaxSize(MAX_SIZE);
+        r.setMaxAge(MAX_AGE);
+        r.start();
+        recording = r;
+    }
+
+    public boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * Stops the current recording and writes it to a temporary file.
+     *
+     * @return the recording file, which the caller is responsible for
+     * deleting
+     * @throws IOException if the recording cannot be written
+     * @throws IllegalStateException if not recording
+     */
+    public File stop() throws IOException {
+        if (recording == null) {
+            throw new IllegalStateException("not recording");
+        }
+        Recording r = recording;
+        recording = null;
+        try {
+            r.stop();
+            File f = File.createTempFile("devtools-", ".jfr");
+            f.deleteOnExit();
+            r.dump(f.toPath());
+            return f;
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Reads a recording file and summarizes its events. Events are streamed
+     * from the file one at a time, so the file is never loaded in full.
+     * Allocation samples are weighted by the bytes each sample stands for.
+     * TLAB events are kept apart and only used if the file has no samples: a
+     * new TLAB is weighted by the size of the whole buffer, since the
+     * allocations that fill it are not recorded individually, and an
+     * allocation outside a TLAB by its own size.
+     *
+     * @param file the recording file to analyze
+     * @return a summary of the recording
+     * @throws IOException if the file cannot be read
+     */
+    public static RecordingReport analyze(File file) throws IOException {
+        RecordingReport report = new RecordingReport();
+        long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        try (RecordingFile rf = new RecordingFile(file.toPath())) {
+            while (rf.hasMoreEvents()) {
+                RecordedEvent ev = rf.readEvent();
+                final long t = ev.getStartTime().toEpochMilli();
+                first = Math.min(first, t);
+                last = Math.max(last, t);
+                switch (ev.getEventType().getName()) {
+                    case SAMPLE_EVENT:
+                        report.addAllocation(allocationSite(ev), ev.getLong("weight"));
+                        break;
+                    case IN_TLAB_EVENT:
+                        report.addTlabAllocation(allocationSite(ev), ev.getLong("tlabSize"));
+                        break;
+                    case OUTSIDE_TLAB_EVENT:
+                        report.addTlabAllocation(allocationSite(ev), ev.getLong("allocationSize"));
+                        break;
+                    case "jdk.ExecutionSample":
+                        report.addExecutionSample(topFrame(ev.getStackTrace()));
+                        break;
+                    case "jdk.JavaMonitorEnter":
+                        RecordedClass mc = ev.getClass("monitorClass");
+                        report.addMonitorContention(mc == null ? "<unknown>" : mc.getName(), ev.getDuration().toNanos());
+                        break;
+                    case "jdk.GarbageCollection":
+                        report.addCollection(ev.getDuration("sumOfPauses").toNanos());
+                        break;
+                }
+            }
+        }
+        if (first <= last) {
+            report.setDuration(last - first);
+        }
+        return report;
+    }
+
+    private static String allocationSite(RecordedEvent ev) {
+        RecordedClass type = ev.getClass("objectClass");
+        return (type == null ? "<unknown>" : type.getName()) + " ← " + topFrame(ev.getStackTrace());
+    }
+
+    private static String topFrame(RecordedStackTrace st) {
+        if (st == null) {
+            return "<no stack trace>";
+        }
+        List<RecordedFrame> frames = st.getFrames();
+        for (RecordedFrame f : frames) {
+            if (f.isJavaFrame()) {
+                RecordedMethod m = f.getMethod();
+                String s = m.getType().getName() + '.' + m.getName();
+                return f.getLineNumber() >= 0 ? s + ':' + f.getLineNumber() : s;
+            }
+        }
+        return "<native>";
+    }
+}
@@ -0,0 +1,788 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes heap dumps and summarizes them by class loader. Since each plug-in
+ * bundle is loaded by its own class loader, this attributes memory to
+ * individual plug-ins.
+ *
+ * <p>
+ * An object is charged to a class loader if it can be reached from the
+ * static fields of the classes that the loader defined, or from the loader
+ * itself, but not from those of any other loader. Class objects and class
+ * loaders end a path, since otherwise every loader would reach the objects of
+ * its parents. Objects reachable from more than one loader are summarized as
+ * shared, and those reachable from none, such as objects held only by thread
+ * stacks, as held by other roots. This approximates the retained size of each
+ * loader's static state: an object charged to a loader is freed when that
+ * loader's statics are, unless a thread or native code also holds it.
+ *
+ * <p>
+ * The HPROF file is streamed three times. The first pass reads the classes and
+ * the identifier of every object; the second writes the references between
+ * objects to a temporary file, with each object replaced by its index in the
+ * sorted identifiers; and the third walks the references from each loader's
+ * statics to mark the objects it reaches, reading the temporary file through
+ * a memory mapping. The analysis therefore keeps about 14 bytes per object in
+ * memory, far less than the objects themselves take up, and the rest on disk.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class HeapDumpAnalyzer {
+
+    /**
+     * The pseudo-loader ID used for classes defined by the bootstrap loader.
+     */
+    public static final long BOOTSTRAP = 0L;
+
+    /**
+     * The pseudo-loader ID that summarizes objects reachable from more than
+     * one class loader.
+     */
+    public static final long SHARED = -1L;
+
+    /**
+     * The pseudo-loader ID that summarizes objects that no class loader
+     * reaches through static fields.
+     */
+    public static final long OTHER_ROOTS = -2L;
+
+    private HeapDumpAnalyzer() {
+    }
+
+    /**
+     * Writes a dump of the live objects on the heap. This may take some time,
+     * and should not be called from the event dispatch thread.
+     *
+     * @param file the file to write; must not exist, and should end in
+     * <code>.hprof</code>
+     * @throws IOException if the dump cannot be written
+     */
+    public static void dumpHeap(File file) throws IOException {
+        HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        if (bean == null) {
+            throw new IOException("heap dumps are not supported by this JVM");
+        }
+        bean.dumpHeap(file.getAbsolutePath(), true);
+    }
+
+    /**
+     * Summary of the objects charged to one class loader.
+     */
+    static final class LoaderSummary {
+
+        private final long id;
+        private long loaderClassId = -1L;
+        private String loaderClass;
+        private int classes;
+        private long objects;
+        private long bytes;
+        private final Map<String, Integer> packages = new HashMap<>();
+
+        private LoaderSummary(long id) {
+            this.id = id;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Returns the class name of the loader, such as
+         * <code>java.net.URLClassLoader</code>, or a description in angle
+         * brackets for the bootstrap loader and the pseudo-loaders.
+         *
+         * @return the loader's class name
+         */
+        public String getLoaderClass() {
+            if (id == BOOTSTRAP) {
+                return "<bootstrap>";
+            }
+            if (id == SHARED) {
+                return "<shared by several loaders>";
+            }
+            if (id == OTHER_ROOTS) {
+                return "<held by other roots>";
+            }
+            return loaderClass == null ? "<unknown>" : loaderClass;
+        }
+
+        public int getClassCount() {
+            return classes;
+        }
+
+        /**
+         * Returns the number of objects charged to this loader.
+         *
+         * @return the object count
+         */
+        public long getObjectCount() {
+            return objects;
+        }
+
+        /**
+         * Returns the approximate total size of the objects charged to this
+         * loader.
+         *
+         * @return the approximate size, in bytes
+         */
+        public long getByteSize() {
+            return bytes;
+        }
+
+        /**
+         * Returns the packages with the most classes defined by this loader,
+         * which usually identify the plug-in that the loader belongs to.
+         *
+         * @param limit the maximum number of packages to return
+         * @return the main packages of this loader, most classes first
+         */
+        public List<String> getMainPackages(int limit) {
+            List<Map.Entry<String, Integer>> list = new ArrayList<>(packages.entrySet());
+            Collections.sort(list, (a, b) -> b.getValue() - a.getValue());
+            List<String> names = new ArrayList<>(Math.min(limit, list.size()));
+            for (int i = 0; i < list.size() && i < limit; ++i) {
+                names.add(list.get(i).getKey());
+            }
+            return names;
+        }
+    }
+
+    private static final class ClassInfo {
+
+        long nameId;
+        long loaderId = BOOTSTRAP;
+        long superId;
+        // the types of the instance fields declared by this class
+        byte[] fieldTypes;
+        // the non-null object references held by static fields
+        long[] statics;
+    }
+
+    // record tags
+    private static final int STRING = 0x01;
+    private static final int LOAD_CLASS = 0x02;
+    private static final int HEAP_DUMP = 0x0c;
+    private static final int HEAP_DUMP_SEGMENT = 0x1c;
+
+    // heap dump sub-record tags
+    private static final int ROOT_UNKNOWN = 0xff;
+    private static final int ROOT_JNI_GLOBAL = 0x01;
+    private static final int ROOT_JNI_LOCAL = 0x02;
+    private static final int ROOT_JAVA_FRAME = 0x03;
+    private static final int ROOT_NATIVE_STACK = 0x04;
+    private static final int ROOT_STICKY_CLASS = 0x05;
+    private static final int ROOT_THREAD_BLOCK = 0x06;
+    private static final int ROOT_MONITOR_USED = 0x07;
+    private static final int ROOT_THREAD_OBJECT = 0x08;
+    private static final int CLASS_DUMP = 0x20;
+    private static final int INSTANCE_DUMP = 0x21;
+    private static final int OBJ_ARRAY_DUMP = 0x22;
+    private static final int PRIM_ARRAY_DUMP = 0x23;
+
+    private static final int OBJECT_TYPE = 2;
+
+    // owner marks: 0 is unreached, SHARED_MARK is reached by several loaders,
+    // and anything else is one more than the index of the only loader
+    private static final char SHARED_MARK = Character.MAX_VALUE;
+
+    /**
+     * Parses a heap dump and returns a summary for each class loader, largest
+     * first.
+     *
+     * @param file the HPROF file to analyze
+     * @return the summaries for every class loader
+     * @throws IOException if the file cannot be read or is not a valid dump
+     */
+    public static List<LoaderSummary> analyze(File file) throws IOException {
+        Parser p = new Parser();
+        try (DataInputStream in = open(file)) {
+            p.readClassesAndObjects(in);
+        }
+        File refs = File.createTempFile("devtools-", ".refs");
+        refs.deleteOnExit();
+        try {
+            try (DataInputStream in = open(file);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(refs), 1 << 16))) {
+                p.writeReferences(in, out);
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(refs, "r")) {
+                p.markOwners(new IntFile(raf.getChannel()));
+            }
+        } finally {
+            refs.delete();
+        }
+        return p.summarize();
+    }
+
+    private static DataInputStream open(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    private static final class Parser {
+
+        private DataInputStream in;
+        private int idSize;
+        private final Map<Long, String> strings = new HashMap<>();
+        private final Map<Long, ClassInfo> classes = new HashMap<>();
+        private final Map<Long, LoaderSummary> loaders = new HashMap<>();
+
+        // the sorted identifiers of every instance and array
+        private long[] ids = new long[1 << 16];
+        private int objectCount;
+        // for each object, where its record starts in the reference file, in ints
+        private int[] refOffsets;
+        private char[] owners;
+        // the loaders in the order used by owner marks
+        private LoaderSummary[] loaderIndex;
+
+        // reused buffers for the second pass
+        private byte[] fieldBuffer = new byte[256];
+        private int[] targets = new int[256];
+
+        /**
+         * First pass: reads strings, class names and layouts, and the
+         * identifier of every object.
+         */
+        void readClassesAndObjects(DataInputStream in) throws IOException {
+            this.in = in;
+            readRecords(true, null);
+            ids = Arrays.copyOf(ids, objectCount);
+            Arrays.sort(ids);
+
+            // fail cleanly instead of running out of memory part way through
+            final Runtime rt = Runtime.getRuntime();
+            final long needed = objectCount * 6L;
+            final long free = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+            if (needed > free) {
+                throw new IOException("not enough memory to analyze " + objectCount + " objects");
+            }
+            refOffsets = new int[objectCount];
+            owners = new char[objectCount];
+        }
+
+        /**
+         * Second pass: writes the size and outgoing references of each object
+         * to the reference file.
+         */
+        void writeReferences(DataInputStream in, DataOutputStream out) throws IOException {
+            this.in = in;
+            readRecords(false, out);
+        }
+
+        private void readRecords(boolean firstPass, DataOutputStream out) throws IOException {
+            readHeader();
+            long written = 0L;
+            for (;;) {
+                int tag;
+                try {
+                    tag = in.readUnsignedByte();
+                } catch (EOFException eof) {
+                    break;
+                }
+                in.readInt(); // time offset
+                final long length = in.readInt() & 0xffff_ffffL;
+                if (firstPass && tag == STRING) {
+                    long id = readId();
+                    byte[] utf8 = new byte[(int) (length - idSize)];
+                    in.readFully(utf8);
+                    strings.put(id, new String(utf8, StandardCharsets.UTF_8));
+                } else if (firstPass && tag == LOAD_CLASS) {
+                    in.readInt(); // serial number
+                    long classId = readId();
+                    in.readInt(); // stack trace serial
+                    classInfo(classId).nameId = readId();
+                } else if (tag == HEAP_DUMP || tag == HEAP_DUMP_SEGMENT) {
+                    written = readHeapDump(length, firstPass, out, written);
+                } else {
+                    skip(length);
+                }
+            }
+        }
+
+        private void readHeader() throws IOException {
+            int b;
+            StringBuilder format = new StringBuilder();
+            while ((b = in.readUnsignedByte()) != 0) {
+                format.append((char) b);
+            }
+            if (!format.toString().startsWith("JAVA PROFILE")) {
+                throw new IOException("not an HPROF file");
+            }
+            idSize = in.readInt();
+            if (idSize != 4 && idSize != 8) {
+                throw new IOException("unsupported identifier size " + idSize);
+            }
+            in.readLong(); // timestamp
+        }
+
+        /**
+         * Reads one heap dump record. In the first pass, object identifiers
+         * are collected; in the second, each object's size and references
+         * are written to the reference file.
+         *
+         * @return the number of ints written to the reference file so far
+         */
+        private long readHeapDump(long length, boolean firstPass, DataOutputStream out, long written) throws IOException {
+            long remaining = length;
+            while (remaining > 0) {
+                final int sub = in.readUnsignedByte();
+                --remaining;
+                switch (sub) {
+                    case ROOT_UNKNOWN:
+                    case ROOT_STICKY_CLASS:
+                    case ROOT_MONITOR_USED:
+                        remaining -= skip(idSize);
+                        break;
+                    case ROOT_JNI_GLOBAL:
+                        remaining -= skip(idSize * 2);
+                        break;
+                    case ROOT_JNI_LOCAL:
+                    case ROOT_JAVA_FRAME:
+                    case ROOT_THREAD_OBJECT:
+                        remaining -= skip(idSize + 8);
+                        break;
+                    case ROOT_NATIVE_STACK:
+                    case ROOT_THREAD_BLOCK:
+                        remaining -= skip(idSize + 4);
+                        break;
+                    case CLASS_DUMP:
+                        remaining -= readClassDump(firstPass);
+                        break;
+                    case INSTANCE_DUMP: {
+                        final long objectId = readId();
+                        in.readInt(); // stack trace serial
+                        final long classId = readId();
+                        final int fieldBytes = in.readInt();
+                        remaining -= idSize * 2 + 8 + (fieldBytes & 0xffff_ffffL);
+                        final long size = align(headerSize() + fieldBytes);
+                        if (firstPass) {
+                            // class dumps precede instances, so loaders are known
+                            final LoaderSummary ls = loaders.get(objectId);
+                            if (ls != null) {
+                                ls.loaderClassId = classId;
+                            }
+                            skip(fieldBytes);
+                            addObject(objectId);
+                        } else {
+                            if (fieldBuffer.length < fieldBytes) {
+                                fieldBuffer = new byte[Math.max(fieldBytes, fieldBuffer.length * 2)];
+                            }
+                            in.readFully(fieldBuffer, 0, fieldBytes);
+                            final int n = instanceReferences(classId, fieldBytes);
+                            written = writeObject(out, written, objectId, size, n);
+                        }
+                        break;
+                    }
+                    case OBJ_ARRAY_DUMP: {
+                        final long objectId = readId();
+                        in.readInt(); // stack trace serial
+                        final int n = in.readInt();
+                        readId(); // array class
+                        remaining -= idSize * 2 + 8 + (long) n * idSize;
+                        final long size = align(headerSize() + 4 + (long) n * idSize);
+                        if (firstPass) {
+                            skip((long) n * idSize);
+                            addObject(objectId);
+                        } else {
+                            int count = 0;
+                            for (int i = 0; i < n; ++i) {
+                                count = addTarget(count, readId());
+                            }
+                            written = writeObject(out, written, objectId, size, count);
+                        }
+                        break;
+                    }
+                    case PRIM_ARRAY_DUMP: {
+                        final long objectId = readId();
+                        in.readInt(); // stack trace serial
+                        final long n = in.readInt() & 0xffff_ffffL;
+                        final int type = in.readUnsignedByte();
+                        final long bytes = n * typeSize(type);
+                        skip(bytes);
+                        remaining -= idSize + 9 + bytes;
+                        final long size = align(headerSize() + 4 + bytes);
+                        if (firstPass) {
+                            addObject(objectId);
+                        } else {
+                            written = writeObject(out, written, objectId, size, 0);
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IOException("unknown heap dump record " + Integer.toHexString(sub));
+                }
+            }
+            return written;
+        }
+
+        private long readClassDump(boolean firstPass) throws IOException {
+            long read = 0;
+            final long classId = readId();
+            in.readInt(); // stack trace serial
+            final long superId = readId();
+            final long loaderId = readId();
+            skip(idSize * 4L); // signers, protection domain, 2 reserved
+            in.readInt(); // instance size
+            read += idSize * 7L + 8;
+
+            final int cpSize = in.readUnsignedShort();
+            read += 2;
+            for (int i = 0; i < cpSize; ++i) {
+                in.readUnsignedShort();
+                final int type = in.readUnsignedByte();
+                read += 3 + skip(typeSize(type));
+            }
+            final int staticCount = in.readUnsignedShort();
+            read += 2;
+            long[] statics = new long[staticCount];
+            int refs = 0;
+            for (int i = 0; i < staticCount; ++i) {
+                readId(); // name
+                final int type = in.readUnsignedByte();
+                read += idSize + 1;
+                if (type == OBJECT_TYPE) {
+                    final long ref = readId();
+                    if (ref != 0L) {
+                        statics[refs++] = ref;
+                    }
+                    read += idSize;
+                } else {
+                    read += skip(typeSize(type));
+                }
+            }
+            final int fields = in.readUnsignedShort();
+            read += 2 + fields * (idSize + 1L);
+            byte[] fieldTypes = new byte[fields];
+            for (int i = 0; i < fields; ++i) {
+                readId(); // name
+                fieldTypes[i] = (byte) in.readUnsignedByte();
+            }
+
+            if (firstPass) {
+                final ClassInfo ci = classInfo(classId);
+                ci.loaderId = loaderId;
+                ci.superId = superId;
+                ci.fieldTypes = fieldTypes;
+                ci.statics = Arrays.copyOf(statics, refs);
+                LoaderSummary ls = loader(loaderId);
+                ++ls.classes;
+            }
+            return read;
+        }
+
+        private void addObject(long objectId) {
+            if (objectCount == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length + (ids.length >> 1));
+            }
+            ids[objectCount++] = objectId;
+        }
+
+        /**
+         * Finds the references in the instance fields read into the field
+         * buffer. Fields are listed for the object's class, then for its
+         * superclass, and so on.
+         *
+         * @return the number of references added to the target buffer
+         */
+        private int instanceReferences(long classId, int fieldBytes) throws IOException {
+            int count = 0;
+            int pos = 0;
+            for (ClassInfo ci = classes.get(classId); ci != null && ci.fieldTypes != null; ci = classes.get(ci.superId)) {
+                for (byte type : ci.fieldTypes) {
+                    final int size = typeSize(type);
+                    if (pos + size > fieldBytes) {
+                        return count;
+                    }
+                    if (type == OBJECT_TYPE) {
+                        long ref = 0L;
+                        for (int b = 0; b < size; ++b) {
+                            ref = (ref << 8) | (fieldBuffer[pos + b] & 0xff);
+                        }
+                        count = addTarget(count, ref);
+                    }
+                    pos += size;
+                }
+                if (ci.superId == 0L) {
+                    break;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Adds the index of a referenced object to the target buffer. Null
+         * references and references to objects that end a path, namely
+         * classes and class loaders, are ignored.
+         */
+        private int addTarget(int count, long ref) {
+            if (ref == 0L || loaders.containsKey(ref)) {
+                return count;
+            }
+            final int index = Arrays.binarySearch(ids, ref);
+            if (index < 0) {
+                return count;
+            }
+            if (count == targets.length) {
+                targets = Arrays.copyOf(targets, count * 2);
+            }
+            targets[count] = index;
+            return count + 1;
+        }
+
+        /**
+         * Writes an object's record to the reference file: its size in units
+         * of 8 bytes, the number of references, and the referenced indices.
+         */
+        private long writeObject(DataOutputStream out, long written, long objectId, long size, int count) throws IOException {
+            final int index = Arrays.binarySearch(ids, objectId);
+            if (index < 0) {
+                throw new IOException("heap dump changed between passes");
+            }
+            if (written > Integer.MAX_VALUE) {
+                throw new IOException("too many references to analyze");
+            }
+            refOffsets[index] = (int) written;
+            out.writeInt((int) Math.min(size >>> 3, Integer.MAX_VALUE));
+            out.writeInt(count);
+            for (int i = 0; i < count; ++i) {
+                out.writeInt(targets[i]);
+            }
+            return written + 2 + count;
+        }
+
+        /**
+         * Third pass: marks each object with the loader that reaches it, or
+         * as shared. Marks only ever change from unreached to a loader and
+         * from a loader to shared, so each object is visited at most twice.
+         */
+        void markOwners(IntFile refs) throws IOException {
+            final List<LoaderSummary> list = new ArrayList<>(loaders.values());
+            if (list.size() >= SHARED_MARK - 1) {
+                throw new IOException("too many class loaders to analyze");
+            }
+            loaderIndex = list.toArray(new LoaderSummary[list.size()]);
+            final Map<Long, Integer> markOf = new HashMap<>();
+            for (int i = 0; i < loaderIndex.length; ++i) {
+                markOf.put(loaderIndex[i].id, i + 1);
+            }
+
+            IntStack stack = new IntStack();
+            // a loader's own fields, such as its class path, belong to it
+            for (LoaderSummary ls : loaderIndex) {
+                final int index = Arrays.binarySearch(ids, ls.id);
+                if (index >= 0) {
+                    mark(stack, index, (char) (int) markOf.get(ls.id));
+                }
+            }
+            for (ClassInfo ci : classes.values()) {
+                if (ci.statics == null) {
+                    continue;
+                }
+                final Integer m = markOf.get(ci.loaderId);
+                if (m == null) {
+                    continue;
+                }
+                for (long ref : ci.statics) {
+                    if (loaders.containsKey(ref)) {
+                        continue;
+                    }
+                    final int index = Arrays.binarySearch(ids, ref);
+                    if (index >= 0) {
+                        mark(stack, index, (char) (int) m);
+                    }
+                }
+            }
+
+            while (!stack.isEmpty()) {
+                final int index = stack.pop();
+                final char m = owners[index];
+                final long offset = refOffsets[index] & 0xffff_ffffL;
+                final int count = refs.get(offset + 1);
+                for (int i = 0; i < count; ++i) {
+                    mark(stack, refs.get(offset + 2 + i), m);
+                }
+            }
+
+            for (int i = 0; i < objectCount; ++i) {
+                final char m = owners[i];
+                final LoaderSummary ls = m == 0 ? loader(OTHER_ROOTS)
+                        : m == SHARED_MARK ? loader(SHARED) : loaderIndex[m - 1];
+                ++ls.objects;
+                ls.bytes += (refs.get(refOffsets[i] & 0xffff_ffffL) & 0xffff_ffffL) << 3;
+            }
+        }
+
+        private void mark(IntStack stack, int index, char m) {
+            final char old = owners[index];
+            if (old == m || old == SHARED_MARK) {
+                return;
+            }
+            owners[index] = old == 0 ? m : SHARED_MARK;
+            stack.push(index);
+        }
+
+        private ClassInfo classInfo(long classId) {
+            ClassInfo ci = classes.get(classId);
+            if (ci == null) {
+                ci = new ClassInfo();
+                classes.put(classId, ci);
+            }
+            return ci;
+        }
+
+        private LoaderSummary loader(long loaderId) {
+            LoaderSummary ls = loaders.get(loaderId);
+            if (ls == null) {
+                ls = new LoaderSummary(loaderId);
+                loaders.put(loaderId, ls);
+            }
+            return ls;
+        }
+
+        List<LoaderSummary> summarize() {
+            for (ClassInfo ci : classes.values()) {
+                final String name = className(ci);
+                if (name != null) {
+                    final LoaderSummary ls = loader(ci.loaderId);
+                    final int dot = name.lastIndexOf('.');
+                    final String pkg = dot < 0 ? "<default package>" : name.substring(0, dot);
+                    Integer n = ls.packages.get(pkg);
+                    ls.packages.put(pkg, n == null ? 1 : n + 1);
+                }
+            }
+            for (LoaderSummary ls : loaders.values()) {
+                final ClassInfo ci = classes.get(ls.loaderClassId);
+                if (ci != null) {
+                    ls.loaderClass = className(ci);
+                }
+            }
+            loader(BOOTSTRAP);
+
+            List<LoaderSummary> list = new ArrayList<>(loaders.values());
+            Collections.sort(list, (a, b) -> Long.compare(b.bytes, a.bytes));
+            return list;
+        }
+
+        private String className(ClassInfo ci) {
+            String name = strings.get(ci.nameId);
+            return name == null ? null : name.replace('/', '.');
+        }
+
+        private long readId() throws IOException {
+            return idSize == 4 ? in.readInt() & 0xffff_ffffL : in.readLong();
+        }
+
+        private long skip(long n) throws IOException {
+            long left = n;
+            while (left > 0) {
+                final long skipped = in.skip(left);
+                if (skipped <= 0) {
+                    // skip may return 0 at end of buffer; read to make progress
+                    in.readByte();
+                    --left;
+                } else {
+                    left -= skipped;
+                }
+            }
+            return n;
+        }
+
+        private int typeSize(int type) throws IOException {
+            switch (type) {
+                case OBJECT_TYPE:
+                    return idSize;
+                case 4: // boolean
+                case 8: // byte
+                    return 1;
+                case 5: // char
+                case 9: // short
+                    return 2;
+                case 6: // float
+                case 10: // int
+                    return 4;
+                case 7: // double
+                case 11: // long
+                    return 8;
+                default:
+                    throw new IOException("unknown basic type " + type);
+            }
+        }
+
+        private long headerSize() {
+            return idSize == 8 ? 12L : 8L;
+        }
+
+        private static long align(long size) {
+            return (size + 7L) & ~7L;
+        }
+    }
+
+    /**
+     * Reads the ints of a file through memory mappings of up to 1 GiB each.
+     */
+    private static final class IntFile {
+
+        private static final int SHIFT = 28; // ints per mapping, as a power of 2
+        private final MappedByteBuffer[] maps;
+
+        IntFile(FileChannel ch) throws IOException {
+            final long ints = ch.size() / 4L;
+            maps = new MappedByteBuffer[(int) ((ints + (1L << SHIFT) - 1L) >>> SHIFT)];
+            for (int i = 0; i < maps.length; ++i) {
+                final long start = (long) i << SHIFT;
+                final long length = Math.min(1L << SHIFT, ints - start);
+                maps[i] = ch.map(FileChannel.MapMode.READ_ONLY, start * 4L, length * 4L);
+            }
+        }
+
+        int get(long index) {
+            return maps[(int) (index >>> SHIFT)].getInt((int) (index & ((1L << SHIFT) - 1L)) * 4);
+        }
+    }
+
+    /**
+     * A growable stack of object indices.
+     */
+    private static final class IntStack {
+
+        private int[] items = new int[1_024];
+        private int size;
+
+        void push(int i) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = i;
+        }
+
+        int pop() {
+            return items[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
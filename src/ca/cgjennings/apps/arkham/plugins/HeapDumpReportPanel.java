@@ -0,0 +1,125 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import ca.cgjennings.apps.arkham.ToolWindow;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dialog;
+import java.io.File;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * Displays the per-class loader summary of a heap dump written by the memory
+ * use tool. Each plug-in bundle has its own loader, and is identified by the
+ * main packages of the classes it defines. Objects reachable from more than
+ * one loader's statics, or from none, are summarized on rows of their own.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class HeapDumpReportPanel extends JPanel {
+
+    /**
+     * Shows a heap dump summary in a new tool window.
+     *
+     * @param dump the analyzed dump file
+     * @param loaders the summary of each class loader
+     */
+    public static void showReport(File dump, List<HeapDumpAnalyzer.LoaderSummary> loaders) {
+        ToolWindow tw = new ToolWindow(StrangeEons.getWindow(), "Heap Dump by Class Loader", Dialog.ModalityType.MODELESS);
+        tw.setBody(new HeapDumpReportPanel(dump, loaders));
+        tw.setSize(720, 400);
+        tw.setLocationRelativeTo(StrangeEons.getWindow());
+        tw.setVisible(true);
+    }
+
+    public HeapDumpReportPanel(File dump, final List<HeapDumpAnalyzer.LoaderSummary> loaders) {
+        super(new BorderLayout());
+        setBackground(Color.DARK_GRAY);
+
+        long total = 0L;
+        int loaderCount = 0;
+        for (HeapDumpAnalyzer.LoaderSummary ls : loaders) {
+            total += ls.getByteSize();
+            if (ls.getId() >= 0L) {
+                ++loaderCount;
+            }
+        }
+        JLabel summary = new JLabel(String.format(
+                "%s    %,d class loaders    %.1f MiB in objects, charged to the only loader that reaches them",
+                dump.getName(), loaderCount, total / (1024d * 1024d)
+        ));
+        summary.setToolTipText(dump.getAbsolutePath());
+        summary.setFont(summary.getFont().deriveFont(summary.getFont().getSize() - 1f));
+        summary.setForeground(Color.WHITE);
+        summary.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createMatteBorder(1, 0, 0, 0, Color.LIGHT_GRAY),
+                BorderFactory.createEmptyBorder(2, 4, 2, 4)
+        ));
+        add(summary, BorderLayout.SOUTH);
+
+        final String[] names = new String[]{"Main Packages", "Loader", "Classes", "Objects", "MiB"};
+        final Class<?>[] types = new Class<?>[]{String.class, String.class, Integer.class, Long.class, Double.class};
+        JTable table = new JTable(new AbstractTableModel() {
+            @Override
+            public int getRowCount() {
+                return loaders.size();
+            }
+
+            @Override
+            public int getColumnCount() {
+                return names.length;
+            }
+
+            @Override
+            public String getColumnName(int column) {
+                return names[column];
+            }
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return types[column];
+            }
+
+            @Override
+            public Object getValueAt(int row, int column) {
+                HeapDumpAnalyzer.LoaderSummary ls = loaders.get(row);
+                switch (column) {
+                    case 0:
+                        return String.join(", ", ls.getMainPackages(3));
+                    case 1:
+                        return ls.getLoaderClass();
+                    case 2:
+                        return ls.getClassCount();
+                    case 3:
+                        return ls.getObjectCount();
+                    default:
+                        return ls.getByteSize() / (1024d * 1024d);
+                }
+            }
+        });
+        table.setAutoCreateRowSorter(true);
+        table.setBackground(new Color(64, 64, 64));
+        table.setForeground(Color.WHITE);
+        table.setFont(table.getFont().deriveFont(table.getFont().getSize() - 1f));
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(300);
+        table.getColumnModel().getColumn(1).setPreferredWidth(200);
+        table.setDefaultRenderer(Double.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setHorizontalAlignment(RIGHT);
+                setText(String.format("%,.2f", (Double) value));
+            }
+        });
+        JScrollPane scroll = new JScrollPane(table);
+        scroll.setBorder(BorderFactory.createEmptyBorder());
+        add(scroll, BorderLayout.CENTER);
+    }
+}
@@ -0,0 +1,454 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import resources.Settings;
+
+/**
+ * Saves the application log to disk so that the log of an earlier session,
+ * such as one that ended in a crash, can be opened in the log viewer. When
+ * enabled, a {@link LogStream} collects the records published to the
+ * application log and delivers each batch directly to a single writer
+ * thread, which formats it, appends it to the current segment file, and
+ * flushes it. Saving the log therefore does not depend on the event dispatch
+ * thread, and keeps working while it is blocked. Segments are GZIP-compressed
+ * text files in the user's storage folder. A new segment is started for each
+ * session and whenever the current one reaches {@link #SEGMENT_BYTES} of
+ * text, and only the newest {@link #MAX_SEGMENTS} segments are kept.
+ *
+ * <p>
+ * The compressed stream is flushed after every batch, so a segment that was
+ * never closed, because the application crashed, can still be read up to the
+ * last batch written.
+ *
+ * <p>
+ * Each line of a segment holds one record: the time in milliseconds, the
+ * level name, the logger name, the thread name, the message, and the stack
+ * trace, separated by tabs. Tabs, line breaks, and backslashes in the fields
+ * are escaped with backslashes. Lines that start with <code>#</code> are
+ * comments.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class LogArchive {
+
+    private static final String ENABLED_KEY = "devtools-log-archive";
+    private static final String FOLDER = "devtools-logs";
+
+    /**
+     * The file name extension of log segments.
+     */
+    public static final String EXTENSION = ".log.gz";
+
+    /**
+     * The amount of text written to a segment before starting a new one.
+     */
+    public static final long SEGMENT_BYTES = 4L * 1024L * 1024L;
+
+    /**
+     * The maximum number of segments kept; older segments are deleted.
+     */
+    public static final int MAX_SEGMENTS = 20;
+
+    private static volatile LogStream stream;
+    private static ExecutorService writer;
+
+    // only accessed from the writer thread
+    private static String session;
+    private static int part;
+    private static Writer out;
+    private static long written;
+    private static boolean failed;
+
+    private LogArchive() {
+    }
+
+    /**
+     * Starts saving the log if it is enabled in user settings.
+     */
+    public static void install() {
+        if (isEnabled()) {
+            start();
+        }
+    }
+
+    /**
+     * Stops saving the log.
+     */
+    public static void uninstall() {
+        stop();
+    }
+
+    public static boolean isEnabled() {
+        return Settings.getUser().getInt(ENABLED_KEY, 0) != 0;
+    }
+
+    /**
+     * Sets whether the log is saved to disk.
+     *
+     * @param enable if true, start saving the log
+     */
+    public static void setEnabled(boolean enable) {
+        Settings.getUser().set(ENABLED_KEY, enable ? "1" : "0");
+        if (enable) {
+            start();
+        } else {
+            stop();
+        }
+    }
+
+    /**
+     * Returns the folder that log segments are saved in.
+     *
+     * @return the log folder
+     */
+    public static File getFolder() {
+        return StrangeEons.getUserStorageFile(FOLDER);
+    }
+
+    private static synchronized void start() {
+        if (stream != null) {
+            return;
+        }
+        final String id = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        writer = Executors.newSingleThreadExecutor((r) -> {
+            Thread t = new Thread(r, "Developer Tools log writer");
+            t.setDaemon(true);
+            return t;
+        });
+        // start the first segment with the log so far; the writer waits for
+        // it so that records delivered by the stream are written after it
+        final CountDownLatch attached = new CountDownLatch(1);
+        final String[] history = new String[1];
+        writer.submit(() -> {
+            session = id;
+            part = 0;
+            failed = false;
+            try {
+                attached.await();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (history[0] != null) {
+                List<String> lines = new ArrayList<>();
+                for (String line : history[0].split("\r?\n")) {
+                    if (!line.isEmpty()) {
+                        lines.add(format(0L, null, null, null, line, null));
+                    }
+                }
+                write(lines);
+            }
+        });
+        // attach the stream before reading the history so that no record can
+        // fall between them
+        stream = new LogStream(StrangeEons.log, LogArchive::recordsPublished, writer);
+        history[0] = LogStream.readHistory();
+        attached.countDown();
+    }
+
+    private static synchronized void stop() {
+        if (stream == null) {
+            return;
+        }
+        stream.close();
+        stream = null;
+        writer.submit(LogArchive::closeSegment);
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            // the writer is a daemon; let it finish on its own
+        }
+        writer = null;
+    }
+
+    /**
+     * Formats and writes a batch of records on the writer thread.
+     */
+    private static void recordsPublished(List<LogRecord> records, long dropped) {
+        final LogStream s = stream;
+        if (s == null) {
+            return;
+        }
+        final List<String> lines = new ArrayList<>(records.size() + 1);
+        if (dropped > 0L) {
+            lines.add(format(System.currentTimeMillis(), Level.WARNING, null, null,
+                    dropped + " log record(s) were dropped because the archive fell behind", null));
+        }
+        for (LogRecord r : records) {
+            String message;
+            try {
+                message = s.formatMessage(r);
+            } catch (RuntimeException ex) {
+                message = r.getMessage();
+            }
+            lines.add(format(r.getMillis(), r.getLevel(), r.getLoggerName(), s.getThreadName(r), message, LogStream.getStackTrace(r)));
+        }
+        write(lines);
+    }
+
+    private static String format(long time, Level level, String logger, String thread, String message, String stackTrace) {
+        StringBuilder b = new StringBuilder(128);
+        b.append(time).append('\t');
+        if (level != null) {
+            b.append(level.getName());
+        }
+        b.append('\t');
+        escape(b, logger);
+        b.append('\t');
+        escape(b, thread);
+        b.append('\t');
+        escape(b, message);
+        b.append('\t');
+        escape(b, stackTrace);
+        b.append('\n');
+        return b.toString();
+    }
+
+    private static void escape(StringBuilder b, String s) {
+        if (s == null) {
+            return;
+        }
+        for (int i = 0; i < s.length(); ++i) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                    b.append("\\\\");
+                    break;
+                case '\t':
+                    b.append("\\t");
+                    break;
+                case '\n':
+                    b.append("\\n");
+                    break;
+                case '\r':
+                    b.append("\\r");
+                    break;
+                default:
+                    b.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder b = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                c = s.charAt(++i);
+                c = c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c;
+            }
+            b.append(c);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Writes a batch of lines on the writer thread, starting a new segment if
+     * needed.
+     */
+    private static void write(List<String> lines) {
+        if (failed) {
+            return;
+        }
+        try {
+            if (out == null || written >= SEGMENT_BYTES) {
+                openSegment();
+            }
+            for (String line : lines) {
+                out.write(line);
+                written += line.length();
+            }
+            out.flush();
+        } catch (IOException ex) {
+            // stop writing rather than log a warning for every batch
+            failed = true;
+            closeSegment();
+            StrangeEons.log.log(Level.WARNING, "unable to save log; saving stopped", ex);
+        }
+    }
+
+    private static void openSegment() throws IOException {
+        closeSegment();
+        final File folder = getFolder();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("unable to create " + folder);
+        }
+        final File f = new File(folder, "log-" + session + "-" + (++part) + EXTENSION);
+        out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(f), 8192, true), StandardCharsets.UTF_8
+        ));
+        out.write("# Developer Tools log: time\tlevel\tlogger\tthread\tmessage\tstack trace\n");
+        written = 0L;
+        deleteOldSegments(folder);
+    }
+
+    private static void closeSegment() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                StrangeEons.log.log(Level.WARNING, null, ex);
+            }
+            out = null;
+        }
+    }
+
+    private static void deleteOldSegments(File folder) {
+        File[] segments = listSegments(folder);
+        for (int i = 0; i < segments.length - MAX_SEGMENTS; ++i) {
+            if (!segments[i].delete()) {
+                StrangeEons.log.log(Level.WARNING, "unable to delete old log segment {0}", segments[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the saved log segments in a folder, oldest first.
+     *
+     * @param folder the folder to list
+     * @return the segment files
+     */
+    public static File[] listSegments(File folder) {
+        File[] segments = folder.listFiles((dir, name) -> name.startsWith("log-") && name.endsWith(EXTENSION));
+        if (segments == null) {
+            return new File[0];
+        }
+        // names start with the session time, then the part number
+        Arrays.sort(segments, (a, b) -> {
+            final int cmp = session(a).compareTo(session(b));
+            return cmp != 0 ? cmp : Integer.compare(part(a), part(b));
+        });
+        return segments;
+    }
+
+    private static String session(File f) {
+        final String name = f.getName();
+        final int dash = name.lastIndexOf('-');
+        return dash < 0 ? name : name.substring(0, dash);
+    }
+
+    private static int part(File f) {
+        final String name = f.getName();
+        try {
+            return Integer.parseInt(name.substring(name.lastIndexOf('-') + 1, name.length() - EXTENSION.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads a saved log segment into a store. If the segment ends part way
+     * through, as it will if the application crashed while writing it, the
+     * records read up to that point are kept, and a partial last line is
+     * ignored.
+     *
+     * @param f the segment file to read
+     * @param store the store to add the records to
+     * @return true if the whole segment was read, false if it was cut short
+     * @throws IOException if the file cannot be read or is not a log segment
+     */
+    public static boolean read(File f, LogStore store) throws IOException {
+        final TruncationGuard guard = new TruncationGuard(new GZIPInputStream(new FileInputStream(f)));
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(guard, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNum = 0;
+            while ((line = in.readLine()) != null) {
+                ++lineNum;
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                String problem = null;
+                if (fields.length != 6) {
+                    problem = "expected 6 fields";
+                } else {
+                    Level level = null;
+                    if (!fields[1].isEmpty()) {
+                        try {
+                            level = Level.parse(fields[1]);
+                        } catch (IllegalArgumentException ex) {
+                            // keep the record with an unknown level
+                        }
+                    }
+                    try {
+                        store.add(Long.parseLong(fields[0]), level, unescape(fields[2]), unescape(fields[3]),
+                                unescape(fields[4]), fields[5].isEmpty() ? null : unescape(fields[5]));
+                    } catch (NumberFormatException ex) {
+                        problem = ex.getMessage();
+                    }
+                }
+                if (problem != null) {
+                    // a segment that was never closed can end part way through a line
+                    if (in.readLine() == null && guard.truncated) {
+                        break;
+                    }
+                    throw new IOException("line " + lineNum + ": " + problem);
+                }
+            }
+        }
+        return !guard.truncated;
+    }
+
+    /**
+     * Ends the stream quietly when the compressed data ends before the GZIP
+     * trailer, as it does in a segment that was never closed. Everything
+     * before that point has already been returned.
+     */
+    private static final class TruncationGuard extends FilterInputStream {
+
+        boolean truncated;
+
+        TruncationGuard(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return truncated ? -1 : super.read();
+            } catch (EOFException ex) {
+                truncated = true;
+                return -1;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return truncated ? -1 : super.read(b, off, len);
+            } catch (EOFException ex) {
+                truncated = true;
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * The sequence numbers of the records in a {@link LogStore} that pass a
+ * filter, in order. The index is kept up to date incrementally: new records
+ * are tested once as they arrive, and discarded records are dropped from the
+ * front. Only changing the filter requires the whole store to be scanned;
+ * the level and logger tests compare the store's primitive columns, which
+ * are kept in memory even for spilled records, so the message pattern is
+ * only applied to records that pass them.
+ *
+ * <p>
+ * Since a scan of a large log can take a while, a filter can be changed in
+ * three steps so that the scan runs on another thread: {@link #startFilter}
+ * copies what the scan needs, {@link Rebuild#run} tests the records, and
+ * {@link #finishFilter} installs the result. Otherwise, the index is only
+ * accessed from the thread that owns the store.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class LogIndex {
+
+    private final LogStore store;
+    private int maxLevel = LogStore.LEVELS.length - 1;
+    private int logger = -1;
+    private Pattern pattern;
+
+    private long[] rows = new long[1_024];
+    private int start, end;
+    // the sequence number of the next record to test
+    private long next;
+
+    public LogIndex(LogStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Sets the filter and rebuilds the index.
+     *
+     * @param maxLevel the code of the least severe level to include; records
+     * with an unknown level are always included
+     * @param logger the symbol of the only logger to include, or -1 for all
+     * @param pattern a pattern that must be found in the message, or null
+     */
+    public void setFilter(int maxLevel, int logger, Pattern pattern) {
+        Rebuild r = startFilter(maxLevel, logger, pattern);
+        r.run();
+        finishFilter(r);
+    }
+
+    /**
+     * Starts changing the filter. The records are tested when the returned
+     * rebuild is run, which may be done on any thread; the index keeps its
+     * old filter and rows until the rebuild is passed to
+     * {@link #finishFilter}.
+     *
+     * @param maxLevel the code of the least severe level to include
+     * @param logger the symbol of the only logger to include, or -1 for all
+     * @param pattern a pattern that must be found in the message, or null
+     * @return a rebuild that will test the records in the store
+     */
+    public Rebuild startFilter(int maxLevel, int logger, Pattern pattern) {
+        return new Rebuild(store.copyFilterColumns(), maxLevel, logger, pattern);
+    }
+
+    /**
+     * Replaces the filter and rows with those of a completed rebuild, then
+     * brings them up to date with the records added since it started.
+     *
+     * @param r a rebuild of this index that has finished running
+     */
+    public void finishFilter(Rebuild r) {
+        if (!r.done) {
+            throw new IllegalStateException("rebuild has not run");
+        }
+        maxLevel = r.maxLevel;
+        logger = r.logger;
+        pattern = r.pattern;
+        rows = r.rows;
+        start = 0;
+        end = r.size;
+        next = r.columns.count;
+        prune();
+        scan();
+    }
+
+    /**
+     * Tests the records for a new filter. Only the copied columns and the
+     * spill are read, so a rebuild can run on another thread.
+     */
+    static final class Rebuild {
+
+        private final LogStore.FilterColumns columns;
+        private final int maxLevel;
+        private final int logger;
+        private final Pattern pattern;
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private long[] rows = new long[1_024];
+        private int size;
+
+        private Rebuild(LogStore.FilterColumns columns, int maxLevel, int logger, Pattern pattern) {
+            this.columns = columns;
+            this.maxLevel = maxLevel;
+            this.logger = logger;
+            this.pattern = pattern;
+        }
+
+        /**
+         * Tests every record that was in the store when the rebuild
+         * started. Returns early, without completing, if the rebuild is
+         * cancelled.
+         */
+        public void run() {
+            for (long seq = columns.first; seq < columns.count; ++seq) {
+                if (cancelled) {
+                    return;
+                }
+                try {
+                    if (passes(columns.getLevel(seq), columns.getLogger(seq), maxLevel, logger)
+                            && (pattern == null || pattern.matcher(columns.getMessage(seq)).find())) {
+                        if (size == rows.length) {
+                            rows = Arrays.copyOf(rows, size * 2);
+                        }
+                        rows[size++] = seq;
+                    }
+                } catch (IndexOutOfBoundsException ex) {
+                    // deleted from the spill since the rebuild started
+                }
+            }
+            done = true;
+        }
+
+        /**
+         * Stops the rebuild at the next record if it is running.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Returns whether the rebuild ran to completion.
+         *
+         * @return true if the rebuild can be finished
+         */
+        public boolean isDone() {
+            return done;
+        }
+    }
+
+    private static boolean passes(int level, int loggerSymbol, int maxLevel, int logger) {
+        if (level > maxLevel && level != LogStore.UNKNOWN_LEVEL) {
+            return false;
+        }
+        return logger < 0 || loggerSymbol == logger;
+    }
+
+    /**
+     * Returns whether a record passes the current filter.
+     *
+     * @param seq the sequence number of a record in the store
+     * @return true if the record should be listed
+     */
+    public boolean accept(long seq) {
+        if (!passes(store.getLevel(seq), logger < 0 ? -1 : store.getLogger(seq), maxLevel, logger)) {
+            return false;
+        }
+        return pattern == null || pattern.matcher(store.getMessage(seq)).find();
+    }
+
+    /**
+     * Removes the records that have been discarded from the store.
+     *
+     * @return the number of rows removed from the start of the index
+     */
+    public int prune() {
+        final long first = store.getFirst();
+        final int oldStart = start;
+        while (start < end && rows[start] < first) {
+            ++start;
+        }
+        return start - oldStart;
+    }
+
+    /**
+     * Tests the records added to the store since the last scan.
+     *
+     * @return the number of rows added to the end of the index
+     */
+    public int scan() {
+        final long count = store.getCount();
+        final int oldSize = size();
+        for (long seq = Math.max(next, store.getFirst()); seq < count; ++seq) {
+            if (accept(seq)) {
+                append(seq);
+            }
+        }
+        next = count;
+        return size() - oldSize;
+    }
+
+    private void append(long seq) {
+        if (end == rows.length) {
+            final int size = size();
+            if (start > rows.length / 2) {
+                System.arraycopy(rows, start, rows, 0, size);
+            } else {
+                rows = Arrays.copyOfRange(rows, start, rows.length * 2);
+            }
+            start = 0;
+            end = size;
+        }
+        rows[end++] = seq;
+    }
+
+    /**
+     * Returns the number of records that pass the filter.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return end - start;
+    }
+
+    /**
+     * Returns the sequence number of the record in a row.
+     *
+     * @param row the row index
+     * @return the record's sequence number
+     */
+    public long get(int row) {
+        return rows[start + row];
+    }
+
+    /**
+     * Returns the row of a record, or the row where it would be inserted.
+     *
+     * @param seq the record's sequence number
+     * @return the row index if the record is listed, otherwise
+     * <code>(-(insertion point) - 1)</code>
+     */
+    public int indexOf(long seq) {
+        final int i = Arrays.binarySearch(rows, start, end, seq);
+        return i >= 0 ? i - start : i + start;
+    }
+}
@@ -0,0 +1,352 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Temporary disk storage for the log records that a {@link LogStore} no
+ * longer has room to keep in memory. Records are written in blocks of up to
+ * {@link #BLOCK_SIZE} consecutive records, each compressed separately so
+ * that any block can be read back without reading the others. Blocks are
+ * appended to segment files in the temporary folder; once more than the
+ * record limit has been written, the oldest segment is deleted. A few
+ * recently read blocks are cached so that scrolling through spilled records
+ * does not read the same block repeatedly. The level and logger of every
+ * spilled record are also kept in memory, five bytes per record, so that
+ * filtering by level or logger never has to read a block back.
+ *
+ * <p>
+ * Logger and thread names are written as the symbol numbers of the store
+ * that spilled them, so a spill can only be read back by that store.
+ *
+ * <p>
+ * A spill is thread safe, so that spilled records can be filtered on a
+ * background thread while the store keeps spilling new ones.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class LogSpill {
+
+    /**
+     * The maximum number of records in a block.
+     */
+    public static final int BLOCK_SIZE = 1_024;
+
+    private static final int SEGMENT_BLOCKS = 64;
+    private static final int CACHED_BLOCKS = 8;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private long limit;
+    private long first, end;
+    private final Map<Long, Block> cache = new LinkedHashMap<Long, Block>(CACHED_BLOCKS * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    /**
+     * Creates a new, empty spill.
+     *
+     * @param start the sequence number of the first record that will be
+     * written
+     * @param limit the number of records to keep before deleting old segments
+     */
+    public LogSpill(long start, long limit) {
+        first = end = start;
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the sequence number of the oldest record that can be read.
+     *
+     * @return the first available sequence number
+     */
+    public synchronized long getFirst() {
+        return first;
+    }
+
+    /**
+     * Returns the sequence number of the next record to be written.
+     *
+     * @return one more than the last sequence number written
+     */
+    public synchronized long getEnd() {
+        return end;
+    }
+
+    /**
+     * Sets the number of records to keep. Whole segments are deleted, so
+     * slightly more records than this may be kept.
+     *
+     * @param limit the record limit
+     */
+    public synchronized void setLimit(long limit) {
+        this.limit = limit;
+        trim();
+    }
+
+    /**
+     * Writes a block of records, which must start at {@link #getEnd()}.
+     *
+     * @param b the block to write
+     * @throws IOException if the block cannot be written
+     */
+    public synchronized void write(Block b) throws IOException {
+        if (b.first != end) {
+            throw new IllegalArgumentException("block does not follow last block");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(b.size * 64);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes)))) {
+            for (int i = 0; i < b.size; ++i) {
+                out.writeLong(b.times[i]);
+                out.writeByte(b.levels[i]);
+                out.writeInt(b.loggers[i]);
+                out.writeInt(b.threads[i]);
+                writeString(out, b.messages[i]);
+                writeString(out, b.thrown[i]);
+            }
+        }
+
+        Segment seg = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (seg == null || seg.blocks.size() >= SEGMENT_BLOCKS) {
+            seg = new Segment();
+            segments.add(seg);
+        }
+        final long offset = seg.file.length();
+        seg.file.seek(offset);
+        seg.file.write(bytes.toByteArray());
+        seg.blocks.add(new Entry(b, offset, bytes.size()));
+        end += b.size;
+        trim();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[len];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deletes the oldest segments while the others still hold more records
+     * than the limit. The segment being written is never deleted.
+     */
+    private void trim() {
+        while (segments.size() > 1) {
+            final Segment oldest = segments.get(0);
+            final Entry last = oldest.blocks.get(oldest.blocks.size() - 1);
+            final long next = last.first + last.size;
+            if (end - next < limit) {
+                break;
+            }
+            segments.remove(0);
+            oldest.delete();
+            first = next;
+            cache.keySet().removeIf((blockFirst) -> blockFirst < next);
+        }
+    }
+
+    /**
+     * Returns the block that contains a record, reading it if necessary.
+     *
+     * @param seq the sequence number of a record in the spill
+     * @return the block that holds the record
+     * @throws IOException if the block cannot be read
+     */
+    public synchronized Block read(long seq) throws IOException {
+        final Segment seg = segments.get(segment(seq));
+        final Entry entry = seg.blocks.get(entry(seg, seq));
+        Block b = cache.get(entry.first);
+        if (b != null) {
+            return b;
+        }
+
+        byte[] bytes = new byte[entry.length];
+        seg.file.seek(entry.offset);
+        seg.file.readFully(bytes);
+        b = new Block(entry.first, entry.size);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes))))) {
+            for (int i = 0; i < b.size; ++i) {
+                b.times[i] = in.readLong();
+                b.levels[i] = in.readByte();
+                b.loggers[i] = in.readInt();
+                b.threads[i] = in.readInt();
+                b.messages[i] = readString(in);
+                b.thrown[i] = readString(in);
+            }
+        }
+        cache.put(b.first, b);
+        return b;
+    }
+
+    /**
+     * Returns the level code of a spilled record without reading its block.
+     *
+     * @param seq the sequence number of a record in the spill
+     * @return the record's level code
+     */
+    public synchronized int getLevel(long seq) {
+        final Entry e = find(seq);
+        return e.levels[(int) (seq - e.first)];
+    }
+
+    /**
+     * Returns the logger symbol of a spilled record without reading its
+     * block.
+     *
+     * @param seq the sequence number of a record in the spill
+     * @return the record's logger symbol
+     */
+    public synchronized int getLogger(long seq) {
+        final Entry e = find(seq);
+        return e.loggers[(int) (seq - e.first)];
+    }
+
+    private Entry find(long seq) {
+        final Segment seg = segments.get(segment(seq));
+        return seg.blocks.get(entry(seg, seq));
+    }
+
+    /**
+     * Returns the index of the segment that holds a record.
+     */
+    private int segment(long seq) {
+        if (seq < first || seq >= end) {
+            throw new IndexOutOfBoundsException("record " + seq + " is not spilled");
+        }
+        int s = segments.size() - 1;
+        while (segments.get(s).blocks.get(0).first > seq) {
+            --s;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the index of the block in a segment that holds a record.
+     */
+    private static int entry(Segment seg, long seq) {
+        int lo = 0, hi = seg.blocks.size() - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (seg.blocks.get(mid).first <= seq) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Deletes all of the spilled records.
+     */
+    public synchronized void close() {
+        for (Segment seg : segments) {
+            seg.delete();
+        }
+        segments.clear();
+        cache.clear();
+        first = end;
+    }
+
+    /**
+     * A run of consecutive records, stored by column.
+     */
+    static final class Block {
+
+        final long first;
+        final int size;
+        final long[] times;
+        final byte[] levels;
+        final int[] loggers;
+        final int[] threads;
+        final String[] messages;
+        final String[] thrown;
+
+        Block(long first, int size) {
+            this.first = first;
+            this.size = size;
+            times = new long[size];
+            levels = new byte[size];
+            loggers = new int[size];
+            threads = new int[size];
+            messages = new String[size];
+            thrown = new String[size];
+        }
+    }
+
+    /**
+     * Where a block is stored, and the columns of it that are kept in memory.
+     */
+    private static final class Entry {
+
+        final long first;
+        final long offset;
+        final int length;
+        final int size;
+        final byte[] levels;
+        final int[] loggers;
+
+        Entry(Block b, long offset, int length) {
+            first = b.first;
+            this.offset = offset;
+            this.length = length;
+            size = b.size;
+            levels = b.levels.clone();
+            loggers = b.loggers.clone();
+        }
+    }
+
+    /**
+     * A temporary file that holds a run of blocks.
+     */
+    private static final class Segment {
+
+        final File path;
+        final RandomAccessFile file;
+        final List<Entry> blocks = new ArrayList<>(SEGMENT_BLOCKS);
+
+        Segment() throws IOException {
+            path = File.createTempFile("se-log-", ".spill");
+            path.deleteOnExit();
+            file = new RandomAccessFile(path, "rw");
+        }
+
+        void delete() {
+            try {
+                file.close();
+            } catch (IOException ex) {
+                // deleting anyway
+            }
+            path.delete();
+        }
+    }
+}
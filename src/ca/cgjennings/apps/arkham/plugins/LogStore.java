@@ -0,0 +1,529 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * A ring of log records stored by column. Each record is identified by a
+ * sequence number that increases by one for each record added; once the
+ * ring is full, adding a record discards the record with the lowest sequence
+ * number still held in memory. Times, levels, logger names, and thread
+ * names are kept in primitive arrays, with names replaced by symbol numbers
+ * so that they can be compared without touching the strings. Identical
+ * message strings added close together share a single instance.
+ *
+ * <p>
+ * A store can be given a {@link LogSpill}, in which case records are written
+ * to disk before they are discarded from memory and remain readable until
+ * the spill deletes them. Spilled records are read back a block at a time
+ * when requested, so only the parts of the log that are looked at return to
+ * memory.
+ *
+ * <p>
+ * The store is not thread safe; the log viewer only accesses it from the
+ * event dispatch thread.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class LogStore {
+
+    /**
+     * The default number of records held in memory.
+     */
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    /**
+     * The levels that records are classified into, from most to least
+     * severe. A record's level code is its index in this array.
+     */
+    static final Level[] LEVELS = {
+        Level.SEVERE, Level.WARNING, Level.INFO, Level.CONFIG, Level.FINE, Level.FINER, Level.FINEST
+    };
+
+    /**
+     * The level code of records whose level is not known, such as lines
+     * copied from the log text written before the viewer opened.
+     */
+    static final byte UNKNOWN_LEVEL = (byte) LEVELS.length;
+
+    /**
+     * The maximum number of distinct logger and thread names; once reached,
+     * new names are all recorded as {@link #OTHER}.
+     */
+    private static final int MAX_SYMBOLS = 4_096;
+    private static final String OTHER = "(other)";
+    private static final int INTERNED_MESSAGES = 1_024;
+
+    private int capacity;
+    private long[] times;
+    private byte[] levels;
+    private int[] loggers;
+    private int[] threads;
+    private String[] messages;
+    private String[] thrown;
+    private long count;
+    // the sequence number of the oldest record held in memory
+    private long memFirst;
+    private LogSpill spill;
+
+    private final int otherSymbol;
+    private final List<String> symbols = new ArrayList<>();
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+    private final List<Integer> loggerIds = new ArrayList<>();
+    private final boolean[] isLogger = new boolean[MAX_SYMBOLS];
+    private final Map<String, String> recentMessages = new LinkedHashMap<String, String>(INTERNED_MESSAGES * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > INTERNED_MESSAGES;
+        }
+    };
+
+    /**
+     * Creates a store that holds up to <code>capacity</code> records in
+     * memory.
+     *
+     * @param capacity the maximum number of records held in memory, at least
+     * {@link LogSpill#BLOCK_SIZE}
+     */
+    public LogStore(int capacity) {
+        allocate(capacity);
+        symbol("");
+        otherSymbol = symbol(OTHER);
+    }
+
+    private void allocate(int capacity) {
+        if (capacity < LogSpill.BLOCK_SIZE) {
+            throw new IllegalArgumentException("capacity < " + LogSpill.BLOCK_SIZE);
+        }
+        this.capacity = capacity;
+        times = new long[capacity];
+        levels = new byte[capacity];
+        loggers = new int[capacity];
+        threads = new int[capacity];
+        messages = new String[capacity];
+        thrown = new String[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Changes the number of records held in memory. If the capacity shrinks,
+     * the oldest records are spilled or discarded.
+     *
+     * @param newCapacity the new maximum number of records held in memory
+     */
+    public void setCapacity(int newCapacity) {
+        if (newCapacity == capacity) {
+            return;
+        }
+        final long newFirst = Math.max(memFirst, count - newCapacity);
+        spillTo(newFirst);
+        final long[] oldTimes = times;
+        final byte[] oldLevels = levels;
+        final int[] oldLoggers = loggers;
+        final int[] oldThreads = threads;
+        final String[] oldMessages = messages;
+        final String[] oldThrown = thrown;
+        final int oldCapacity = capacity;
+        allocate(newCapacity);
+        for (long seq = newFirst; seq < count; ++seq) {
+            final int from = (int) (seq % oldCapacity);
+            final int to = (int) (seq % newCapacity);
+            times[to] = oldTimes[from];
+            levels[to] = oldLevels[from];
+            loggers[to] = oldLoggers[from];
+            threads[to] = oldThreads[from];
+            messages[to] = oldMessages[from];
+            thrown[to] = oldThrown[from];
+        }
+        memFirst = newFirst;
+    }
+
+    /**
+     * Sets the spill that records are written to before they are discarded
+     * from memory. Records that were discarded before the spill was set are
+     * not recovered. Setting a new spill, or null, deletes the records in the
+     * old spill.
+     *
+     * @param spill the spill to use, which must be empty and start at
+     * {@link #getSpillStart()}, or null to discard old records
+     */
+    public void setSpill(LogSpill spill) {
+        if (this.spill != null) {
+            this.spill.close();
+        }
+        if (spill != null && spill.getEnd() != memFirst) {
+            throw new IllegalArgumentException("spill must start at " + memFirst);
+        }
+        this.spill = spill;
+    }
+
+    /**
+     * Returns the sequence number that a new spill must start at.
+     *
+     * @return the sequence number of the oldest record in memory
+     */
+    public long getSpillStart() {
+        return memFirst;
+    }
+
+    /**
+     * Writes records to the spill, if any, until all records before
+     * <code>seq</code> have been written.
+     */
+    private void spillTo(long seq) {
+        while (spill != null && spill.getEnd() < seq) {
+            final long start = spill.getEnd();
+            final LogSpill.Block b = new LogSpill.Block(start, (int) Math.min(LogSpill.BLOCK_SIZE, count - start));
+            for (int i = 0; i < b.size; ++i) {
+                final int slot = (int) ((start + i) % capacity);
+                b.times[i] = times[slot];
+                b.levels[i] = levels[slot];
+                b.loggers[i] = loggers[slot];
+                b.threads[i] = threads[slot];
+                b.messages[i] = messages[slot];
+                b.thrown[i] = thrown[slot];
+            }
+            try {
+                spill.write(b);
+            } catch (IOException ex) {
+                StrangeEons.log.log(Level.WARNING, "unable to spill log records; old records will be discarded", ex);
+                setSpill(null);
+            }
+        }
+    }
+
+    /**
+     * Returns the total number of records that have ever been added, which
+     * is also the sequence number that the next record will have.
+     *
+     * @return the number of records added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the sequence number of the oldest record still held.
+     *
+     * @return the first available sequence number
+     */
+    public long getFirst() {
+        return spill == null ? memFirst : Math.min(memFirst, spill.getFirst());
+    }
+
+    /**
+     * Returns the number of records currently available, whether in memory
+     * or spilled.
+     *
+     * @return the number of available records
+     */
+    public long size() {
+        return count - getFirst();
+    }
+
+    /**
+     * Adds a record, discarding the oldest record if the store is full.
+     *
+     * @param time the time the record was logged, in milliseconds
+     * @param level the record's level, or null if unknown
+     * @param logger the name of the logger, or null
+     * @param thread the name of the thread that logged the record, or null
+     * @param message the formatted message
+     * @param stackTrace the stack trace of the record's exception, or null
+     * @return the sequence number of the new record
+     */
+    public long add(long time, Level level, String logger, String thread, String message, String stackTrace) {
+        if (count - memFirst == capacity) {
+            // make room by spilling the next block, unless already spilled
+            spillTo(Math.min(memFirst + LogSpill.BLOCK_SIZE, count));
+            ++memFirst;
+        }
+        final int slot = (int) (count % capacity);
+        times[slot] = time;
+        levels[slot] = levelCode(level);
+        final int loggerId = symbol(logger == null ? "" : logger);
+        if (!isLogger[loggerId]) {
+            isLogger[loggerId] = true;
+            loggerIds.add(loggerId);
+        }
+        loggers[slot] = loggerId;
+        threads[slot] = symbol(thread == null ? "" : thread);
+        messages[slot] = intern(message == null ? "" : message);
+        thrown[slot] = stackTrace;
+        return count++;
+    }
+
+    /**
+     * Returns the level code for a level: the index of the most severe
+     * standard level that is no more severe than the level.
+     *
+     * @param level the level to classify
+     * @return the level's code
+     */
+    static byte levelCode(Level level) {
+        if (level == null) {
+            return UNKNOWN_LEVEL;
+        }
+        final int v = level.intValue();
+        for (int i = 0; i < LEVELS.length; ++i) {
+            if (v >= LEVELS[i].intValue()) {
+                return (byte) i;
+            }
+        }
+        return (byte) (LEVELS.length - 1);
+    }
+
+    private int symbol(String name) {
+        Integer id = symbolIds.get(name);
+        if (id == null) {
+            if (symbols.size() == MAX_SYMBOLS) {
+                return otherSymbol;
+            }
+            id = symbols.size();
+            symbols.add(name);
+            symbolIds.put(name, id);
+        }
+        return id;
+    }
+
+    private String intern(String message) {
+        String shared = recentMessages.get(message);
+        if (shared == null) {
+            recentMessages.put(message, message);
+            shared = message;
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the memory slot of a record, or -1 if the record has been
+     * spilled.
+     */
+    private int slot(long seq) {
+        if (seq >= memFirst && seq < count) {
+            return (int) (seq % capacity);
+        }
+        if (spill != null && seq >= spill.getFirst() && seq < spill.getEnd()) {
+            return -1;
+        }
+        throw new IndexOutOfBoundsException("record " + seq + " is not available");
+    }
+
+    /**
+     * Returns the spilled block that holds a record. If the block cannot be
+     * read, a placeholder block is returned in its place.
+     */
+    private LogSpill.Block spilled(long seq) {
+        return spilled(spill, seq);
+    }
+
+    private static LogSpill.Block spilled(LogSpill spill, long seq) {
+        try {
+            return spill.read(seq);
+        } catch (IOException ex) {
+            StrangeEons.log.log(Level.WARNING, "unable to read spilled log records", ex);
+            LogSpill.Block b = new LogSpill.Block(seq, 1);
+            b.levels[0] = UNKNOWN_LEVEL;
+            b.messages[0] = "(unable to read this record from disk)";
+            return b;
+        }
+    }
+
+    public long getTime(long seq) {
+        final int slot = slot(seq);
+        if (slot < 0) {
+            final LogSpill.Block b = spilled(seq);
+            return b.times[(int) (seq - b.first)];
+        }
+        return times[slot];
+    }
+
+    /**
+     * Returns the level code of a record.
+     *
+     * @param seq the record's sequence number
+     * @return an index into {@link #LEVELS}, or {@link #UNKNOWN_LEVEL}
+     */
+    public int getLevel(long seq) {
+        final int slot = slot(seq);
+        return slot < 0 ? spill.getLevel(seq) : levels[slot];
+    }
+
+    /**
+     * Returns the symbol number of the name of a record's logger.
+     *
+     * @param seq the record's sequence number
+     * @return the logger symbol
+     * @see #getSymbol
+     */
+    public int getLogger(long seq) {
+        final int slot = slot(seq);
+        return slot < 0 ? spill.getLogger(seq) : loggers[slot];
+    }
+
+    /**
+     * Returns the symbol number of the name of the thread that logged a
+     * record.
+     *
+     * @param seq the record's sequence number
+     * @return the thread symbol
+     * @see #getSymbol
+     */
+    public int getThread(long seq) {
+        final int slot = slot(seq);
+        if (slot < 0) {
+            final LogSpill.Block b = spilled(seq);
+            return b.threads[(int) (seq - b.first)];
+        }
+        return threads[slot];
+    }
+
+    public String getMessage(long seq) {
+        final int slot = slot(seq);
+        if (slot < 0) {
+            final LogSpill.Block b = spilled(seq);
+            return b.messages[(int) (seq - b.first)];
+        }
+        return messages[slot];
+    }
+
+    /**
+     * Returns the stack trace of the exception attached to a record.
+     *
+     * @param seq the record's sequence number
+     * @return the stack trace text, or null if the record has no exception
+     */
+    public String getStackTrace(long seq) {
+        final int slot = slot(seq);
+        if (slot < 0) {
+            final LogSpill.Block b = spilled(seq);
+            return b.thrown[(int) (seq - b.first)];
+        }
+        return thrown[slot];
+    }
+
+    /**
+     * Returns the name that a symbol number stands for.
+     *
+     * @param symbol the symbol number
+     * @return the logger or thread name
+     */
+    public String getSymbol(int symbol) {
+        return symbols.get(symbol);
+    }
+
+    /**
+     * Returns the symbol number of a logger or thread name.
+     *
+     * @param name the name to look up
+     * @return the name's symbol number, or -1 if no record has used it
+     */
+    public int getSymbolId(String name) {
+        Integer id = symbolIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the symbol numbers of every logger name that has been added,
+     * in the order they first appeared. Loggers are not removed when their
+     * records are discarded.
+     *
+     * @return a list of logger symbols, which must not be modified
+     */
+    public List<Integer> getLoggers() {
+        return loggerIds;
+    }
+
+    /**
+     * Copies the columns that a filter tests, so that the records can be
+     * tested on another thread while the store keeps changing. Records in
+     * memory are copied; spilled records are read from the spill, which is
+     * thread safe, as they are tested.
+     *
+     * @return a copy of the level, logger, and message columns
+     */
+    FilterColumns copyFilterColumns() {
+        return new FilterColumns(this);
+    }
+
+    /**
+     * The level, logger, and message columns of the records in a store at
+     * the time they were copied.
+     */
+    static final class FilterColumns {
+
+        final long first;
+        final long count;
+        private final long memFirst;
+        private final LogSpill spill;
+        private final byte[] levels;
+        private final int[] loggers;
+        private final String[] messages;
+
+        private FilterColumns(LogStore store) {
+            first = store.getFirst();
+            count = store.count;
+            memFirst = store.memFirst;
+            spill = store.spill;
+            final int n = (int) (count - memFirst);
+            levels = new byte[n];
+            loggers = new int[n];
+            messages = new String[n];
+            if (n > 0) {
+                // the records may wrap around the end of the ring
+                final int start = (int) (memFirst % store.capacity);
+                final int head = Math.min(n, store.capacity - start);
+                System.arraycopy(store.levels, start, levels, 0, head);
+                System.arraycopy(store.loggers, start, loggers, 0, head);
+                System.arraycopy(store.messages, start, messages, 0, head);
+                System.arraycopy(store.levels, 0, levels, head, n - head);
+                System.arraycopy(store.loggers, 0, loggers, head, n - head);
+                System.arraycopy(store.messages, 0, messages, head, n - head);
+            }
+        }
+
+        /**
+         * Returns the level code of a record.
+         *
+         * @throws IndexOutOfBoundsException if the record was spilled and
+         * the spill has since deleted it
+         */
+        int getLevel(long seq) {
+            return seq < memFirst ? spill.getLevel(seq) : levels[(int) (seq - memFirst)];
+        }
+
+        /**
+         * Returns the logger symbol of a record.
+         *
+         * @throws IndexOutOfBoundsException if the record was spilled and
+         * the spill has since deleted it
+         */
+        int getLogger(long seq) {
+            return seq < memFirst ? spill.getLogger(seq) : loggers[(int) (seq - memFirst)];
+        }
+
+        /**
+         * Returns the message of a record, reading it from the spill if
+         * necessary.
+         *
+         * @throws IndexOutOfBoundsException if the record was spilled and
+         * the spill has since deleted it
+         */
+        String getMessage(long seq) {
+            if (seq < memFirst) {
+                final LogSpill.Block b = spilled(spill, seq);
+                return b.messages[(int) (seq - b.first)];
+            }
+            return messages[(int) (seq - memFirst)];
+        }
+    }
+}
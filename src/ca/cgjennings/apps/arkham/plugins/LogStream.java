@@ -0,0 +1,260 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.awt.EventQueue;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * A log handler that streams the records published to a logger to a
+ * listener on the event dispatch thread, or on another thread chosen by
+ * supplying an executor. Publishing a record only adds it to a bounded
+ * lock-free queue and, if a drain is not already pending, posts one to the
+ * executor; the drain then delivers everything queued since in a single
+ * batch. Logging threads therefore never block on the listener, and nothing
+ * runs at all while nothing is logged.
+ *
+ * <p>
+ * If the listener falls so far behind that {@link #CAPACITY} records are
+ * waiting, further records are dropped until it catches up; the number
+ * dropped is reported with the next batch.
+ *
+ * <p>
+ * Log records only identify the thread that created them by number, so the
+ * stream also notes the name of the thread that publishes each record; see
+ * {@link #getThreadName}.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class LogStream extends Handler {
+
+    /**
+     * The maximum number of records waiting to be delivered.
+     */
+    public static final int CAPACITY = 10_000;
+
+    /**
+     * The maximum number of records delivered in one batch. Larger backlogs
+     * are delivered over several drains so that the thread that delivers
+     * them, usually the event dispatch thread, stays responsive.
+     */
+    public static final int BATCH_SIZE = 1_000;
+
+    private static final int MAX_THREAD_NAMES = 1_024;
+
+    /**
+     * Receives batches of records on the stream's executor.
+     */
+    @FunctionalInterface
+    interface Listener {
+
+        /**
+         * Called with the records published since the last batch.
+         *
+         * @param records the new records, oldest first
+         * @param dropped the number of records that were dropped since the
+         * last batch because the queue was full
+         */
+        void recordsPublished(List<LogRecord> records, long dropped);
+    }
+
+    private final Logger logger;
+    private final Listener listener;
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<LogRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean drainPending = new AtomicBoolean();
+    private final ConcurrentHashMap<Integer, String> threadNames = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Creates a stream that delivers records on the event dispatch thread
+     * and attaches it to a logger.
+     *
+     * @param logger the logger to stream records from
+     * @param listener the listener that receives the records
+     */
+    public LogStream(Logger logger, Listener listener) {
+        this(logger, listener, EventQueue::invokeLater);
+    }
+
+    /**
+     * Creates a stream and attaches it to a logger. Drains are posted to the
+     * executor, which must run them one at a time.
+     *
+     * @param logger the logger to stream records from
+     * @param listener the listener that receives the records
+     * @param executor the executor that delivers the records
+     */
+    public LogStream(Logger logger, Listener listener, Executor executor) {
+        this.logger = logger;
+        this.listener = listener;
+        this.executor = executor;
+        setLevel(Level.ALL);
+        setFormatter(findFormatter(logger));
+        logger.addHandler(this);
+    }
+
+    /**
+     * Returns the formatter of the first handler found on a logger or its
+     * parents, so that streamed records can be formatted to match the
+     * application log.
+     */
+    private static Formatter findFormatter(Logger logger) {
+        for (Logger l = logger; l != null; l = l.getParent()) {
+            for (Handler h : l.getHandlers()) {
+                if (h.getFormatter() != null) {
+                    return h.getFormatter();
+                }
+            }
+            if (!l.getUseParentHandlers()) {
+                break;
+            }
+        }
+        return new SimpleFormatter();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        final Integer threadID = record.getThreadID();
+        if (!threadNames.containsKey(threadID)) {
+            if (threadNames.size() >= MAX_THREAD_NAMES) {
+                threadNames.clear();
+            }
+            threadNames.put(threadID, Thread.currentThread().getName());
+        }
+        if (size.incrementAndGet() > CAPACITY) {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+        } else {
+            queue.offer(record);
+        }
+        if (drainPending.compareAndSet(false, true)) {
+            scheduleDrain();
+        }
+    }
+
+    private void scheduleDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException ex) {
+            // the executor was shut down; the stream is being closed
+            drainPending.set(false);
+        }
+    }
+
+    /**
+     * Delivers the queued records to the listener.
+     */
+    private void drain() {
+        // clear the flag first so that a record published during the drain
+        // schedules another one
+        drainPending.set(false);
+        List<LogRecord> batch = new ArrayList<>(Math.min(size.get(), BATCH_SIZE));
+        LogRecord r;
+        while (batch.size() < BATCH_SIZE && (r = queue.poll()) != null) {
+            batch.add(r);
+        }
+        size.addAndGet(-batch.size());
+        final long lost = dropped.getAndSet(0L);
+        if (!queue.isEmpty() && drainPending.compareAndSet(false, true)) {
+            scheduleDrain();
+        }
+        if (!closed && (!batch.isEmpty() || lost > 0L)) {
+            listener.recordsPublished(batch, lost);
+        }
+    }
+
+    /**
+     * Returns the localized and formatted message of a record, formatted the
+     * same way as in the application log.
+     *
+     * @param record the record to format
+     * @return the formatted message text
+     */
+    public String formatMessage(LogRecord record) {
+        return getFormatter().formatMessage(record);
+    }
+
+    /**
+     * Returns the stack trace of the exception attached to a record.
+     *
+     * @param record the record
+     * @return the stack trace text, or null if the record has no exception
+     */
+    public static String getStackTrace(LogRecord record) {
+        if (record.getThrown() == null) {
+            return null;
+        }
+        StringWriter sw = new StringWriter();
+        try (PrintWriter pw = new PrintWriter(sw)) {
+            record.getThrown().printStackTrace(pw);
+        }
+        return sw.toString();
+    }
+
+    /**
+     * Returns the text already written to the application log buffer. To
+     * avoid missing records, a stream should be attached before reading the
+     * history, at the cost of possibly seeing a record in both.
+     *
+     * @return the log text so far, or null if it cannot be accessed
+     */
+    public static String readHistory() {
+        try {
+            Field fLogBuffer = StrangeEons.class.getDeclaredField("logBuffer");
+            fLogBuffer.setAccessible(true);
+            StringBuffer logBuffer = (StringBuffer) fLogBuffer.get(null);
+            fLogBuffer.setAccessible(false);
+            return logBuffer == null ? null : logBuffer.toString();
+        } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException e) {
+            StrangeEons.log.log(Level.WARNING, "unable to read log history", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the name of the thread that published a record, if known.
+     *
+     * @param record a record delivered by this stream
+     * @return the thread name, or null
+     */
+    public String getThreadName(LogRecord record) {
+        return threadNames.get(record.getThreadID());
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Detaches the stream from its logger and discards any queued records.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        logger.removeHandler(this);
+        queue.clear();
+        size.set(0);
+    }
+}
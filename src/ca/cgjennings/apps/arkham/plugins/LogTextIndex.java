@@ -0,0 +1,401 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An inverted index from the words in log messages to the records that
+ * contain them. Records are indexed once as they arrive, so a search only
+ * has to intersect the record lists of the words it contains and then
+ * confirm that each candidate contains the search text as written. Since a
+ * search can start or end part way through a word, the words at the ends of
+ * the search text match any indexed word that they could be part of. Words are
+ * runs of letters and digits, compared without regard to case; words of one
+ * character are not indexed, and words longer than {@link #MAX_WORD} are
+ * indexed by their first {@link #MAX_WORD} characters.
+ *
+ * <p>
+ * Numbers, hash codes, and addresses would make up most of the words and
+ * almost never repeat, so words that are made only of hexadecimal digits and
+ * include at least one decimal digit, with an optional <code>0x</code>
+ * prefix, are not indexed by themselves. Instead, one shared list records
+ * which records contain such words, and a search that includes such a word,
+ * or could match part of one, checks those records.
+ *
+ * <p>
+ * Record lists hold sequence numbers as <code>int</code>s to halve their
+ * size; records after the first 2<sup>31</sup> are not indexed. Entries for
+ * records that the store has discarded are removed in occasional sweeps.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class LogTextIndex {
+
+    /**
+     * The maximum number of characters of a word that are indexed.
+     */
+    public static final int MAX_WORD = 64;
+
+    // sweep when this many records have been discarded since the last sweep
+    private static final long SWEEP_INTERVAL = 65_536L;
+
+    private final LogStore store;
+    private final Map<String, Postings> words = new HashMap<>();
+    // the records that contain words that look like numbers
+    private final Postings numbers = new Postings();
+    // the sequence number of the next record to index
+    private long next;
+    private long lastSweep;
+
+    public LogTextIndex(LogStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Indexes the records added to the store since the last update, and
+     * sweeps out discarded records if enough have accumulated.
+     */
+    public void update() {
+        final long first = store.getFirst();
+        if (first - lastSweep >= SWEEP_INTERVAL) {
+            sweep(first);
+        }
+        final long count = Math.min(store.getCount(), Integer.MAX_VALUE);
+        final List<String> tokens = new ArrayList<>();
+        for (long seq = Math.max(next, first); seq < count; ++seq) {
+            tokens.clear();
+            if (tokenize(store.getMessage(seq), tokens)) {
+                numbers.add((int) seq);
+            }
+            for (int i = 0; i < tokens.size(); ++i) {
+                Postings p = words.get(tokens.get(i));
+                if (p == null) {
+                    p = new Postings();
+                    words.put(tokens.get(i), p);
+                }
+                p.add((int) seq);
+            }
+        }
+        next = Math.max(next, count);
+    }
+
+    private void sweep(long first) {
+        for (Iterator<Postings> it = words.values().iterator(); it.hasNext();) {
+            if (it.next().dropBefore(first)) {
+                it.remove();
+            }
+        }
+        numbers.dropBefore(first);
+        lastSweep = first;
+    }
+
+    /**
+     * Splits text into lower case words of at least two characters, leaving
+     * out words that look like numbers.
+     *
+     * @param text the text to split
+     * @param tokens the list to add the words to
+     * @return true if any words were left out because they look like numbers
+     */
+    static boolean tokenize(String text, List<String> tokens) {
+        return tokenize(text, tokens, false);
+    }
+
+    /**
+     * Splits text into lower case words of at least two characters. Words
+     * that look like numbers are either left out or, if requested, added in
+     * full even if they are longer than {@link #MAX_WORD}.
+     */
+    private static boolean tokenize(String text, List<String> tokens, boolean keepNumbers) {
+        final int len = text.length();
+        boolean numbers = false;
+        int start = -1;
+        for (int i = 0; i <= len; ++i) {
+            final boolean wordChar = i < len && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                if (i - start > 1) {
+                    if (isNumber(text, start, i)) {
+                        numbers = true;
+                        if (keepNumbers) {
+                            tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                        }
+                    } else {
+                        tokens.add(text.substring(start, Math.min(i, start + MAX_WORD)).toLowerCase(Locale.ROOT));
+                    }
+                }
+                start = -1;
+            }
+        }
+        return numbers;
+    }
+
+    /**
+     * Returns whether a word is made of hexadecimal digits, including at
+     * least one decimal digit, with an optional <code>0x</code> prefix.
+     */
+    private static boolean isNumber(CharSequence s, int start, int end) {
+        if (end - start > 2 && s.charAt(start) == '0' && (s.charAt(start + 1) == 'x' || s.charAt(start + 1) == 'X')) {
+            start += 2;
+        }
+        boolean digit = false;
+        for (int i = start; i < end; ++i) {
+            final char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if ((c < 'a' || c > 'f') && (c < 'A' || c > 'F')) {
+                return false;
+            }
+        }
+        return digit;
+    }
+
+    /**
+     * Returns whether a partial word could be part of a word that looks like
+     * a number.
+     */
+    private static boolean couldBePartOfNumber(String fragment) {
+        for (int i = 0; i < fragment.length(); ++i) {
+            final char c = fragment.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f') && c != 'x') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the sequence numbers of the records whose messages contain the
+     * search text, ignoring case.
+     *
+     * @param text the text to find
+     * @return the matching records, in ascending order
+     */
+    public long[] search(String text) {
+        return search(text, 0L);
+    }
+
+    /**
+     * Returns the sequence numbers of the records, starting from a given
+     * record, whose messages contain the search text, ignoring case. This
+     * can be used to extend the results of an earlier search to records
+     * added since.
+     *
+     * @param text the text to find
+     * @param from the sequence number of the first record to consider
+     * @return the matching records, in ascending order
+     */
+    public long[] search(String text, long from) {
+        update();
+        final String needle = text.toLowerCase(Locale.ROOT);
+        // words that look like numbers are searched for in the shared list
+        final List<String> tokens = new ArrayList<>();
+        tokenize(text, tokens, true);
+        final long first = Math.max(from, store.getFirst());
+
+        if (tokens.isEmpty()) {
+            // nothing indexed to narrow the search down
+            long[] hits = new long[16];
+            int n = 0;
+            for (long seq = first; seq < store.getCount(); ++seq) {
+                if (contains(seq, needle)) {
+                    if (n == hits.length) {
+                        hits = Arrays.copyOf(hits, n * 2);
+                    }
+                    hits[n++] = seq;
+                }
+            }
+            return Arrays.copyOf(hits, n);
+        }
+
+        // the words at either end of the search text may be parts of longer
+        // words, so they match every indexed word that they could be part of
+        final boolean partialStart = Character.isLetterOrDigit(text.charAt(0));
+        final boolean partialEnd = Character.isLetterOrDigit(text.charAt(text.length() - 1));
+        final int last = tokens.size() - 1;
+        final List<Postings> exact = new ArrayList<>(tokens.size());
+        for (int t = 0; t <= last; ++t) {
+            if ((t == 0 && partialStart) || (t == last && partialEnd)) {
+                continue;
+            }
+            final String token = tokens.get(t);
+            Postings p = isNumber(token, 0, token.length()) ? numbers : words.get(token);
+            if (p == null) {
+                return new long[0];
+            }
+            exact.add(p);
+        }
+        final long base = first;
+        final BitSet head = partialStart || (last == 0 && partialEnd) ? new BitSet() : null;
+        final BitSet tail = last > 0 && partialEnd ? new BitSet() : null;
+        collectPartial(tokens.get(0), head, partialStart, last == 0 && partialEnd,
+                tokens.get(last), tail, base);
+
+        // walk the shortest list of candidates and check the others
+        Postings shortest = null;
+        for (Postings p : exact) {
+            if (shortest == null || p.size < shortest.size) {
+                shortest = p;
+            }
+        }
+        BitSet walk = null;
+        int walkSize = shortest == null ? Integer.MAX_VALUE : shortest.size;
+        for (BitSet b : new BitSet[]{head, tail}) {
+            if (b != null && b.cardinality() < walkSize) {
+                walk = b;
+                walkSize = b.cardinality();
+            }
+        }
+
+        long[] hits = new long[16];
+        int n = 0;
+        if (walk != null) {
+            for (int i = walk.nextSetBit(0); i >= 0; i = walk.nextSetBit(i + 1)) {
+                final long seq = base + i;
+                if (matches(seq, exact, head, tail, base, needle)) {
+                    if (n == hits.length) {
+                        hits = Arrays.copyOf(hits, n * 2);
+                    }
+                    hits[n++] = seq;
+                }
+            }
+        } else {
+            for (int i = shortest.lowerBound(base); i < shortest.size; ++i) {
+                final long seq = shortest.seqs[i];
+                if (matches(seq, exact, head, tail, base, needle)) {
+                    if (n == hits.length) {
+                        hits = Arrays.copyOf(hits, n * 2);
+                    }
+                    hits[n++] = seq;
+                }
+            }
+        }
+        return Arrays.copyOf(hits, n);
+    }
+
+    /**
+     * Returns whether a candidate record is listed for every word of a
+     * search and contains the search text.
+     */
+    private boolean matches(long seq, List<Postings> exact, BitSet head, BitSet tail, long base, String needle) {
+        for (Postings p : exact) {
+            if (!p.contains((int) seq)) {
+                return false;
+            }
+        }
+        if ((head != null && !head.get((int) (seq - base))) || (tail != null && !tail.get((int) (seq - base)))) {
+            return false;
+        }
+        // the words may be in a different order or be separated differently
+        return contains(seq, needle);
+    }
+
+    /**
+     * Marks the records that contain any indexed word that the partial words
+     * at the ends of a search could be part of, in a single pass over the
+     * indexed words. Bit <i>i</i> of a set stands for the record with
+     * sequence number <code>base + i</code>.
+     *
+     * @param headWord the first word of the search
+     * @param head the set to mark for the first word, or null
+     * @param atStart if true, the first word may be the end of a word
+     * @param atEnd if true, the first word may be the start of a word
+     * @param tailWord the last word of the search
+     * @param tail the set to mark for the last word, which may only be the
+     * start of a word, or null
+     * @param base the sequence number of the first record to mark
+     */
+    private void collectPartial(String headWord, BitSet head, boolean atStart, boolean atEnd, String tailWord, BitSet tail, long base) {
+        if (head == null && tail == null) {
+            return;
+        }
+        for (Map.Entry<String, Postings> e : words.entrySet()) {
+            final String word = e.getKey();
+            if (head != null && (atStart && atEnd ? word.contains(headWord)
+                    : atStart ? word.endsWith(headWord) : word.startsWith(headWord))) {
+                e.getValue().mark(head, base);
+            }
+            if (tail != null && word.startsWith(tailWord)) {
+                e.getValue().mark(tail, base);
+            }
+        }
+        // the words may also be parts of words that were not indexed
+        if (head != null && couldBePartOfNumber(headWord)) {
+            numbers.mark(head, base);
+        }
+        if (tail != null && couldBePartOfNumber(tailWord)) {
+            numbers.mark(tail, base);
+        }
+    }
+
+    private boolean contains(long seq, String needle) {
+        return store.getMessage(seq).toLowerCase(Locale.ROOT).contains(needle);
+    }
+
+    /**
+     * An ascending list of the records that contain a word.
+     */
+    private static final class Postings {
+
+        int[] seqs = new int[2];
+        int size;
+
+        void add(int seq) {
+            // a word repeated in one message is listed once
+            if (size > 0 && seqs[size - 1] == seq) {
+                return;
+            }
+            if (size == seqs.length) {
+                seqs = Arrays.copyOf(seqs, size * 2);
+            }
+            seqs[size++] = seq;
+        }
+
+        boolean contains(int seq) {
+            return Arrays.binarySearch(seqs, 0, size, seq) >= 0;
+        }
+
+        /**
+         * Returns the index of the first record at or after a sequence
+         * number.
+         */
+        int lowerBound(long seq) {
+            final int i = Arrays.binarySearch(seqs, 0, size, (int) Math.min(seq, Integer.MAX_VALUE));
+            return i < 0 ? -i - 1 : i;
+        }
+
+        /**
+         * Sets the bit for each record at or after a base sequence number.
+         */
+        void mark(BitSet bits, long base) {
+            for (int i = lowerBound(base); i < size; ++i) {
+                bits.set((int) (seqs[i] - base));
+            }
+        }
+
+        /**
+         * Removes records before a sequence number, returning true if the
+         * list is then empty.
+         */
+        boolean dropBefore(long first) {
+            final int i = lowerBound(first);
+            if (i > 0) {
+                size -= i;
+                System.arraycopy(seqs, i, seqs, 0, size);
+                if (size < seqs.length / 4) {
+                    seqs = Arrays.copyOf(seqs, Math.max(2, size * 2));
+                }
+            }
+            return size == 0;
+        }
+    }
+}
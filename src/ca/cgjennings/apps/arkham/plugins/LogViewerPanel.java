@@ -2,78 +2,604 @@ package ca.cgjennings.apps.arkham.plugins;
 
 import ca.cgjennings.apps.arkham.StrangeEons;
 import ca.cgjennings.apps.arkham.ToolWindow;
+import ca.cgjennings.ui.DocumentEventAdapter;
+import ca.cgjennings.ui.JFilterField;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.FlowLayout;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.event.ComponentAdapter;
-import java.awt.event.ComponentEvent;
-import java.lang.reflect.Field;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.Timer;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.Document;
+import javax.swing.event.DocumentEvent;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import resources.Settings;
 
 /**
- * Displays the application log content.
+ * Displays the application log content. New records are pushed to the
+ * viewer by a {@link LogStream} attached to the application log and kept in
+ * a {@link LogStore}, so the viewer does no work while nothing is being
+ * logged. The records can be filtered by level, logger, and a message
+ * pattern without changing what the application logs; the log level menu
+ * still changes the application's own log level. When the filter changes,
+ * the records are tested again on a background thread. The log text written
+ * before the viewer opened is copied once from the application's log buffer;
+ * since its structure is not known, each line is listed as a record with no
+ * level.
+ *
+ * <p>
+ * Only a limited number of records are kept in memory. Older records are
+ * spilled to compressed temporary files by a {@link LogSpill} and read back
+ * as they are scrolled into view, and the oldest spilled records are
+ * eventually deleted. Both limits can be set from the log level menu.
+ *
+ * <p>
+ * Records are also added to a {@link LogTextIndex} as they arrive, so that
+ * searching for text finds every record that contains it without scanning
+ * the log. Matching records are highlighted and can be stepped through in
+ * either direction; matches hidden by the filter are skipped.
+ *
+ * <p>
+ * The log can also be saved to disk by the {@link LogArchive}, and a saved
+ * segment from this or an earlier session can be opened in place of the
+ * live log, where it can be filtered and searched in the same way.
  *
  * @author Christopher G. jennings (<https://cgjennings.ca/contact>)
  */
-public class LogViewerPanel extends javax.swing.JPanel {
+public class LogViewerPanel extends javax.swing.JPanel implements DevToolProxy.UnloadablePanel {
+
+    private static final Color PANEL_BACKGROUND = new Color(64, 64, 64);
+    private static final Color SEVERE = new Color(255, 160, 122);
+    private static final Color WARNING = new Color(255, 200, 0);
+    private static final Color MINOR = new Color(160, 160, 160);
+    private static final Color MATCH = new Color(96, 80, 32);
 
-    private StringBuffer logBuffer;
-    private int buffLen;
-    private Timer pollTimer;
+    private static final String RETENTION_KEY = "devtools-log-retention";
+    private static final String SPILL_LIMIT_KEY = "devtools-log-spill-limit";
+    private static final int DEFAULT_SPILL_LIMIT = 1_000_000;
+    private static final int FILTER_DELAY = 250;
+
+    private final LogStore liveStore = new LogStore(getRetention());
+    private final LogIndex liveIndex = new LogIndex(liveStore);
+    private final LogTextIndex liveTextIndex = new LogTextIndex(liveStore);
+    // the records being shown: either the live log or a saved log
+    private LogStore store = liveStore;
+    private LogIndex index = liveIndex;
+    private LogTextIndex textIndex = liveTextIndex;
+    private String savedName;
+    private final LogModel model = new LogModel();
+    private final LogStream stream;
+    private LogSpill spill;
+
+    private final JComboBox<String> levelCombo = new JComboBox<>();
+    private final DefaultComboBoxModel<String> loggerModel = new DefaultComboBoxModel<>();
+    private final JComboBox<String> loggerCombo = new JComboBox<>(loggerModel);
+    // the logger name of each logger combo item after the first, and the
+    // number of the shown store's loggers that have been checked for new names
+    private final List<String> loggerChoices = new ArrayList<>();
+    private int loggersListed;
+    private JMenuItem liveItem;
+    private final JFilterField filterField = new JFilterField();
+    // waits for typing to pause before changing the filter
+    private final Timer filterTimer = new Timer(FILTER_DELAY, (e) -> updateFilter());
+    // the filter change being tested in the background, if any
+    private LogIndex.Rebuild pendingFilter;
+    private final JLabel status = new JLabel(" ");
+    private final JFilterField findField = new JFilterField();
+    // likewise for searching; stepping through matches searches at once
+    private final Timer findTimer = new Timer(FILTER_DELAY, (e) -> updateSearch());
+    private final JLabel findStatus = new JLabel(" ");
+
+    // the text of the current search, the records that match it, and the
+    // sequence number of the first record it has not been tested against
+    private String findText;
+    private long[] hits;
+    private long searchedTo;
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
 
     public LogViewerPanel(ToolWindow tw) {
         initComponents();
         initLevelPopup();
+        initControls();
+        initTable();
+        setSpillLimit(Settings.getUser().getInt(SPILL_LIMIT_KEY, DEFAULT_SPILL_LIMIT));
+
+        // attach the stream before copying the history so that no record can
+        // fall between them; at worst a record logged in between is shown twice
+        stream = new LogStream(StrangeEons.log, this::recordsPublished);
+        String history = LogStream.readHistory();
+        if (history != null) {
+            for (String line : history.split("\r?\n")) {
+                if (!line.isEmpty()) {
+                    liveStore.add(0L, null, null, null, line, null);
+                }
+            }
+        }
+        update(true);
+    }
+
+    private void initControls() {
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        controlPanel.setBackground(PANEL_BACKGROUND);
+        controlPanel.setBorder(BorderFactory.createMatteBorder(0, 0, 1, 0, new Color(128, 128, 128)));
 
-        try {
-            Field fLogBuffer = StrangeEons.class.getDeclaredField("logBuffer");
-            fLogBuffer.setAccessible(true);
-            logBuffer = (StringBuffer) fLogBuffer.get(null);
-            fLogBuffer.setAccessible(false);
-        } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException e) {
-            StrangeEons.log.log(Level.SEVERE, null, e);
-            throw new AssertionError();
+        levelCombo.addItem("All Levels");
+        for (int i = LogStore.LEVELS.length - 2; i >= 0; --i) {
+            levelCombo.addItem(LogStore.LEVELS[i].getLocalizedName());
         }
-        pollTimer = new Timer(100, new ActionListener() {
+        levelCombo.setToolTipText("Show records at this level or above; does not change what is logged");
+        levelCombo.addActionListener((e) -> updateFilter());
+        smallFont(levelCombo);
+
+        loggerModel.addElement("All Loggers");
+        loggerCombo.setPrototypeDisplayValue("ca.cgjennings.apps.arkham");
+        loggerCombo.addActionListener((e) -> updateFilter());
+        smallFont(loggerCombo);
+
+        filterField.setBackground(PANEL_BACKGROUND);
+        filterField.setForeground(Color.LIGHT_GRAY);
+        filterField.setCaretColor(Color.WHITE);
+        filterField.setLabel("Message filter (regex)");
+        filterField.setSelectedTextColor(Color.BLACK);
+        filterField.setSelectionColor(new Color(255, 200, 0));
+        filterField.setTextForeground(Color.WHITE);
+        filterField.setColumns(20);
+        filterTimer.setRepeats(false);
+        filterField.getDocument().addDocumentListener(new DocumentEventAdapter() {
             @Override
-            public void actionPerformed(ActionEvent e) {
-                updateLog();
+            public void changedUpdate(DocumentEvent e) {
+                filterTimer.restart();
             }
         });
-        tw.addComponentListener(new ComponentAdapter() {
+
+        smallFont(status);
+        status.setForeground(new Color(192, 192, 192));
+
+        findField.setBackground(PANEL_BACKGROUND);
+        findField.setForeground(Color.LIGHT_GRAY);
+        findField.setCaretColor(Color.WHITE);
+        findField.setLabel("Find in log");
+        findField.setSelectedTextColor(Color.BLACK);
+        findField.setSelectionColor(new Color(255, 200, 0));
+        findField.setTextForeground(Color.WHITE);
+        findField.setColumns(16);
+        findField.addActionListener((e) -> find(true));
+        findTimer.setRepeats(false);
+        findField.getDocument().addDocumentListener(new DocumentEventAdapter() {
             @Override
-            public void componentShown(ComponentEvent e) {
-                updateLog();
-                pollTimer.start();
+            public void changedUpdate(DocumentEvent e) {
+                findTimer.restart();
             }
+        });
+        JButton prevBtn = new JButton("Previous");
+        prevBtn.addActionListener((e) -> find(false));
+        smallFont(prevBtn);
+        JButton nextBtn = new JButton("Next");
+        nextBtn.addActionListener((e) -> find(true));
+        smallFont(nextBtn);
+        smallFont(findStatus);
+        findStatus.setForeground(new Color(192, 192, 192));
+
+        controlPanel.add(levelCombo);
+        controlPanel.add(loggerCombo);
+        controlPanel.add(filterField);
+        controlPanel.add(status);
+        controlPanel.add(findField);
+        controlPanel.add(prevBtn);
+        controlPanel.add(nextBtn);
+        controlPanel.add(findStatus);
+        add(controlPanel, BorderLayout.PAGE_START);
+    }
 
+    private void initTable() {
+        logTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        logTable.getColumnModel().getColumn(0).setPreferredWidth(90);
+        logTable.getColumnModel().getColumn(1).setPreferredWidth(60);
+        logTable.getColumnModel().getColumn(2).setPreferredWidth(160);
+        logTable.getColumnModel().getColumn(3).setPreferredWidth(120);
+        logTable.getColumnModel().getColumn(4).setPreferredWidth(600);
+        logTable.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
             @Override
-            public void componentHidden(ComponentEvent e) {
-                pollTimer.stop();
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+                super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                if (!isSelected) {
+                    final long seq = index.get(row);
+                    final int level = store.getLevel(seq);
+                    setForeground(level == 0 ? SEVERE : level == 1 ? WARNING
+                            : level > 2 && level != LogStore.UNKNOWN_LEVEL ? MINOR : table.getForeground());
+                    setBackground(hits != null && Arrays.binarySearch(hits, seq) >= 0 ? MATCH : table.getBackground());
+                }
+                return this;
             }
         });
+        logTable.getSelectionModel().addListSelectionListener((e) -> {
+            if (!e.getValueIsAdjusting()) {
+                showDetail();
+            }
+        });
+    }
+
+    private static void smallFont(JComponent c) {
+        c.setFont(c.getFont().deriveFont(c.getFont().getSize() - 1f));
+    }
+
+    private void recordsPublished(List<LogRecord> records, long dropped) {
+        if (dropped > 0L) {
+            liveStore.add(System.currentTimeMillis(), Level.WARNING, null, null,
+                    dropped + " log record(s) were dropped because the viewer fell behind", null);
+        }
+        for (LogRecord r : records) {
+            String message;
+            try {
+                message = stream.formatMessage(r);
+            } catch (RuntimeException ex) {
+                message = r.getMessage();
+            }
+            liveStore.add(r.getMillis(), r.getLevel(), r.getLoggerName(), stream.getThreadName(r), message, LogStream.getStackTrace(r));
+        }
+        if (store == liveStore) {
+            update(false);
+        }
+    }
+
+    /**
+     * Brings the table up to date with the records added to the store,
+     * keeping the newest record in view if it was already.
+     */
+    private void update(boolean forceScroll) {
+        final Rectangle visible = logTable.getVisibleRect();
+        final boolean atEnd = forceScroll || visible.y + visible.height >= logTable.getHeight() - logTable.getRowHeight();
+
+        final int removed = index.prune();
+        if (removed > 0) {
+            model.fireTableRowsDeleted(0, removed - 1);
+        }
+        final int oldSize = index.size();
+        final int added = index.scan();
+        if (added > 0) {
+            model.fireTableRowsInserted(oldSize, oldSize + added - 1);
+        }
+
+        textIndex.update();
+        if (findText != null) {
+            // extend the search to the new records
+            long[] more = textIndex.search(findText, searchedTo);
+            if (more.length > 0) {
+                long[] joined = Arrays.copyOf(hits, hits.length + more.length);
+                System.arraycopy(more, 0, joined, hits.length, more.length);
+                hits = joined;
+            }
+            searchedTo = store.getCount();
+        }
+
+        final List<Integer> loggers = store.getLoggers();
+        for (; loggersListed < loggers.size(); ++loggersListed) {
+            final String name = store.getSymbol(loggers.get(loggersListed));
+            if (!loggerChoices.contains(name)) {
+                loggerChoices.add(name);
+                loggerModel.addElement(name.isEmpty() ? "(root)" : name);
+            }
+        }
+
+        updateStatus();
+        if (atEnd && index.size() > 0) {
+            EventQueue.invokeLater(() -> {
+                if (index.size() > 0) {
+                    logTable.scrollRectToVisible(logTable.getCellRect(index.size() - 1, 0, true));
+                }
+            });
+        }
+    }
+
+    private void updateFilter() {
+        final int maxLevel = LogStore.LEVELS.length - 1 - Math.max(0, levelCombo.getSelectedIndex());
+        final int loggerItem = loggerCombo.getSelectedIndex();
+        int logger = -1;
+        if (loggerItem > 0) {
+            logger = store.getSymbolId(loggerChoices.get(loggerItem - 1));
+            if (logger < 0) {
+                // no record in the shown log is from this logger
+                logger = Integer.MAX_VALUE;
+            }
+        }
+        Pattern pattern = null;
+        final String filter = filterField.getText();
+        if (!filter.isEmpty()) {
+            try {
+                pattern = Pattern.compile(filter, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            } catch (PatternSyntaxException ex) {
+                pattern = Pattern.compile(Pattern.quote(filter), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            }
+        }
+
+        // test the records in the background; a newer change cancels this one
+        if (pendingFilter != null) {
+            pendingFilter.cancel();
+        }
+        final LogIndex.Rebuild r = index.startFilter(maxLevel, logger, pattern);
+        pendingFilter = r;
+        new Thread(() -> {
+            r.run();
+            if (r.isDone()) {
+                EventQueue.invokeLater(() -> finishFilter(r));
+            }
+        }, "Developer Tools log filter").start();
+    }
+
+    /**
+     * Shows the rows of a completed filter change, unless it has since been
+     * replaced by another.
+     */
+    private void finishFilter(LogIndex.Rebuild r) {
+        if (r != pendingFilter) {
+            return;
+        }
+        pendingFilter = null;
+
+        // keep the selected record selected if it still passes
+        final int selRow = logTable.getSelectedRow();
+        final long selected = selRow < 0 ? -1L : index.get(selRow);
+        index.finishFilter(r);
+        model.fireTableDataChanged();
+        if (selected >= 0L) {
+            final int row = index.indexOf(selected);
+            if (row >= 0) {
+                logTable.getSelectionModel().setSelectionInterval(row, row);
+                logTable.scrollRectToVisible(logTable.getCellRect(row, 0, true));
+            }
+        }
+        updateStatus();
+    }
+
+    /**
+     * Searches for the text in the find field and highlights the matches.
+     */
+    private void updateSearch() {
+        final String text = findField.getText().trim();
+        if (text.isEmpty()) {
+            findText = null;
+            hits = null;
+            findStatus.setText(" ");
+        } else if (!text.equals(findText)) {
+            findText = text;
+            hits = textIndex.search(text);
+            searchedTo = store.getCount();
+            findStatus.setText(String.format("%,d matches", hits.length));
+        }
+        logTable.repaint();
     }
 
-    private void updateLog() {
-        String newText = null;
-        synchronized (logBuffer) {
-            int newLen = logBuffer.length();
-            if (buffLen != newLen) {
-                newText = logBuffer.substring(buffLen, newLen);
-                buffLen = newLen;
+    /**
+     * Selects the next or previous record that matches the search text and
+     * passes the filter, wrapping around at the end of the log.
+     *
+     * @param forward if true, search forward from the selected record
+     */
+    private void find(boolean forward) {
+        updateSearch();
+        if (hits == null || hits.length == 0) {
+            return;
+        }
+        final int selRow = logTable.getSelectedRow();
+        final long from = selRow < 0 ? (forward ? -1L : Long.MAX_VALUE) : index.get(selRow);
+        int i = Arrays.binarySearch(hits, from);
+        if (i >= 0) {
+            i += forward ? 1 : -1;
+        } else {
+            i = -i - 1 - (forward ? 0 : 1);
+        }
+        for (int tries = 0; tries < hits.length; ++tries, i += forward ? 1 : -1) {
+            i = (i + hits.length) % hits.length;
+            final int row = index.indexOf(hits[i]);
+            if (row >= 0) {
+                logTable.getSelectionModel().setSelectionInterval(row, row);
+                logTable.scrollRectToVisible(logTable.getCellRect(row, 0, true));
+                findStatus.setText(String.format("%,d of %,d matches", i + 1, hits.length));
+                return;
             }
         }
-        if (newText != null) {
+        findStatus.setText(String.format("%,d matches, all filtered out", hits.length));
+    }
+
+    private void updateStatus() {
+        status.setText(String.format("%s%,d of %,d records",
+                savedName == null ? "" : savedName + ": ", index.size(), store.size()));
+    }
+
+    private void showDetail() {
+        final int row = logTable.getSelectedRow();
+        if (row < 0) {
+            detailField.setText("");
+            return;
+        }
+        final long seq = index.get(row);
+        StringBuilder b = new StringBuilder();
+        if (store.getLevel(seq) != LogStore.UNKNOWN_LEVEL) {
+            b.append(new Date(store.getTime(seq))).append(' ')
+                    .append(LogStore.LEVELS[store.getLevel(seq)].getLocalizedName()).append(' ')
+                    .append(store.getSymbol(store.getLogger(seq)))
+                    .append(" [").append(store.getSymbol(store.getThread(seq))).append("]\n");
+        }
+        b.append(store.getMessage(seq));
+        if (store.getStackTrace(seq) != null) {
+            b.append('\n').append(store.getStackTrace(seq));
+        }
+        detailField.setText(b.toString());
+        detailField.select(0, 0);
+    }
+
+    private static int getRetention() {
+        return Math.max(LogSpill.BLOCK_SIZE, Settings.getUser().getInt(RETENTION_KEY, LogStore.DEFAULT_CAPACITY));
+    }
+
+    private void setSpillLimit(int limit) {
+        if (limit <= 0) {
+            liveStore.setSpill(null);
+            spill = null;
+        } else if (spill == null) {
+            spill = new LogSpill(liveStore.getSpillStart(), limit);
+            liveStore.setSpill(spill);
+        } else {
+            spill.setLimit(limit);
+        }
+    }
+
+    private void showRetentionDialog() {
+        JSpinner memory = new JSpinner(new SpinnerNumberModel(liveStore.getCapacity(), LogSpill.BLOCK_SIZE, 10_000_000, 10_000));
+        JSpinner disk = new JSpinner(new SpinnerNumberModel(
+                Settings.getUser().getInt(SPILL_LIMIT_KEY, DEFAULT_SPILL_LIMIT), 0, 100_000_000, 100_000));
+        Object[] message = {
+            "Records kept in memory:", memory,
+            "Older records kept on disk (0 to discard them):", disk
+        };
+        if (JOptionPane.showConfirmDialog(this, message, "Log Retention", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        final int memoryLimit = (Integer) memory.getValue();
+        final int diskLimit = (Integer) disk.getValue();
+        Settings.getUser().set(RETENTION_KEY, String.valueOf(memoryLimit));
+        Settings.getUser().set(SPILL_LIMIT_KEY, String.valueOf(diskLimit));
+        liveStore.setCapacity(memoryLimit);
+        setSpillLimit(diskLimit);
+        if (store == liveStore) {
+            update(false);
+        }
+    }
+
+    @Override
+    public void onUnload() {
+        filterTimer.stop();
+        findTimer.stop();
+        if (pendingFilter != null) {
+            pendingFilter.cancel();
+        }
+        stream.close();
+        liveStore.setSpill(null);
+    }
+
+    /**
+     * Asks for a saved log segment and reads it in the background, then
+     * shows it in place of the live log.
+     */
+    private void openSavedLog() {
+        JFileChooser fc = new JFileChooser(LogArchive.getFolder());
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        final File f = fc.getSelectedFile();
+        new Thread(() -> {
             try {
-                Document doc = logField.getDocument();
-                doc.insertString(doc.getLength(), newText, null);
-            } catch (BadLocationException ex) {
-                // impossible
+                LogStore saved = new LogStore(liveStore.getCapacity());
+                final boolean complete = LogArchive.read(f, saved);
+                EventQueue.invokeLater(() -> showStore(saved, f.getName() + (complete ? "" : " (cut short)")));
+            } catch (IOException ex) {
+                StrangeEons.log.log(Level.WARNING, "unable to read saved log " + f, ex);
+                EventQueue.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                        "Unable to read " + f.getName() + ":\n" + ex.getLocalizedMessage(),
+                        "Open Saved Log", JOptionPane.ERROR_MESSAGE));
+            }
+        }, "Developer Tools log reader").start();
+    }
+
+    /**
+     * Shows the records in a store, applying the current filter and search.
+     *
+     * @param s the store to show
+     * @param name the name of the saved log, or null for the live log
+     */
+    private void showStore(LogStore s, String name) {
+        logTable.clearSelection();
+        store = s;
+        savedName = name;
+        if (s == liveStore) {
+            index = liveIndex;
+            textIndex = liveTextIndex;
+        } else {
+            index = new LogIndex(s);
+            textIndex = new LogTextIndex(s);
+        }
+        liveItem.setEnabled(s != liveStore);
+        loggersListed = 0;
+        findText = null;
+        updateSearch();
+        updateFilter();
+        update(s == liveStore);
+    }
+
+    /**
+     * Lists the records in the index. Only the visible rows are ever
+     * requested, so the cost of painting does not depend on the number of
+     * records.
+     */
+    private final class LogModel extends AbstractTableModel {
+
+        private final String[] columns = {"Time", "Level", "Logger", "Thread", "Message"};
+
+        @Override
+        public int getRowCount() {
+            return index.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            final long seq = index.get(row);
+            final int level = store.getLevel(seq);
+            switch (column) {
+                case 0:
+                    return level == LogStore.UNKNOWN_LEVEL ? "" : timeFormat.format(new Date(store.getTime(seq)));
+                case 1:
+                    return level == LogStore.UNKNOWN_LEVEL ? "" : LogStore.LEVELS[level].getLocalizedName();
+                case 2:
+                    return store.getSymbol(store.getLogger(seq));
+                case 3:
+                    return store.getSymbol(store.getThread(seq));
+                case 4:
+                    final String message = store.getMessage(seq);
+                    final int eol = message.indexOf('\n');
+                    return eol < 0 ? message : message.substring(0, eol) + " ...";
+                default:
+                    throw new AssertionError();
             }
         }
     }
@@ -94,6 +620,22 @@ public class LogViewerPanel extends javax.swing.JPanel {
         createItem("Config", li);
         createItem("Fine", li);
         createItem("All", li);
+        logLevelPopup.addSeparator();
+        JMenuItem retention = new JMenuItem("Retention...");
+        retention.addActionListener((e) -> showRetentionDialog());
+        logLevelPopup.add(retention);
+        logLevelPopup.addSeparator();
+        JCheckBoxMenuItem saveItem = new JCheckBoxMenuItem("Save Log to Disk", LogArchive.isEnabled());
+        saveItem.setToolTipText("Save the log to compressed files in " + LogArchive.getFolder());
+        saveItem.addActionListener((e) -> LogArchive.setEnabled(saveItem.isSelected()));
+        logLevelPopup.add(saveItem);
+        JMenuItem openItem = new JMenuItem("Open Saved Log...");
+        openItem.addActionListener((e) -> openSavedLog());
+        logLevelPopup.add(openItem);
+        liveItem = new JMenuItem("Show Live Log");
+        liveItem.setEnabled(false);
+        liveItem.addActionListener((e) -> showStore(liveStore, null));
+        logLevelPopup.add(liveItem);
     }
 
     private void createItem(String name, ActionListener li) {
@@ -120,34 +662,61 @@ public class LogViewerPanel extends javax.swing.JPanel {
 
         logLevelPopup = new javax.swing.JPopupMenu();
         levelGroup = new javax.swing.ButtonGroup();
+        javax.swing.JSplitPane split = new javax.swing.JSplitPane();
         javax.swing.JScrollPane logScroll = new javax.swing.JScrollPane();
-        logField = new javax.swing.JTextArea();
+        logTable = new javax.swing.JTable();
+        javax.swing.JScrollPane detailScroll = new javax.swing.JScrollPane();
+        detailField = new javax.swing.JTextArea();
 
         setBackground(java.awt.Color.darkGray);
         setLayout(new java.awt.BorderLayout());
 
+        split.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
+        split.setDividerSize(2);
+        split.setOrientation(javax.swing.JSplitPane.VERTICAL_SPLIT);
+        split.setResizeWeight(1.0);
+
         logScroll.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
 
-        logField.setEditable(false);
-        logField.setBackground(java.awt.Color.darkGray);
-        logField.setColumns(20);
-        logField.setFont(new java.awt.Font("Monospaced", 0, 11)); // NOI18N
-        logField.setForeground(java.awt.Color.white);
-        logField.setLineWrap(true);
-        logField.setRows(5);
-        logField.setTabSize(4);
-        logField.setWrapStyleWord(true);
-        logField.setCaretColor(java.awt.Color.white);
-        logField.setComponentPopupMenu(logLevelPopup);
-        logField.setSelectedTextColor(java.awt.Color.black);
-        logField.setSelectionColor(new java.awt.Color(255, 200, 0));
-        logScroll.setViewportView(logField);
-
-        add(logScroll, java.awt.BorderLayout.CENTER);
+        logTable.setBackground(java.awt.Color.darkGray);
+        logTable.setFont(new java.awt.Font("Monospaced", 0, 11)); // NOI18N
+        logTable.setForeground(java.awt.Color.white);
+        logTable.setModel( model );
+        logTable.setAutoResizeMode(javax.swing.JTable.AUTO_RESIZE_LAST_COLUMN);
+        logTable.setComponentPopupMenu(logLevelPopup);
+        logTable.setFillsViewportHeight(true);
+        logTable.setSelectionBackground(new java.awt.Color(255, 200, 0));
+        logTable.setSelectionForeground(java.awt.Color.black);
+        logTable.setShowHorizontalLines(false);
+        logTable.setShowVerticalLines(false);
+        logScroll.setViewportView(logTable);
+
+        split.setTopComponent(logScroll);
+
+        detailScroll.setBorder(javax.swing.BorderFactory.createMatteBorder(1, 0, 0, 0, java.awt.Color.gray));
+
+        detailField.setEditable(false);
+        detailField.setBackground(java.awt.Color.darkGray);
+        detailField.setColumns(20);
+        detailField.setFont(new java.awt.Font("Monospaced", 0, 11)); // NOI18N
+        detailField.setForeground(java.awt.Color.white);
+        detailField.setLineWrap(true);
+        detailField.setRows(5);
+        detailField.setTabSize(4);
+        detailField.setWrapStyleWord(true);
+        detailField.setCaretColor(java.awt.Color.white);
+        detailField.setSelectedTextColor(java.awt.Color.black);
+        detailField.setSelectionColor(new java.awt.Color(255, 200, 0));
+        detailScroll.setViewportView(detailField);
+
+        split.setBottomComponent(detailScroll);
+
+        add(split, java.awt.BorderLayout.CENTER);
     }// </editor-fold>//GEN-END:initComponents
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JTextArea detailField;
     private javax.swing.ButtonGroup levelGroup;
-    private javax.swing.JTextArea logField;
     private javax.swing.JPopupMenu logLevelPopup;
+    private javax.swing.JTable logTable;
     // End of variables declaration//GEN-END:variables
 }
@@ -1,5 +1,6 @@
 package ca.cgjennings.apps.arkham.plugins;
 
+import ca.cgjennings.apps.arkham.StrangeEons;
 import ca.cgjennings.apps.arkham.ToolWindow;
 import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
@@ -7,6 +8,7 @@ import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Cursor;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.LinearGradientPaint;
@@ -20,10 +22,21 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
+import java.io.File;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
-import java.lang.management.MemoryUsage;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import javax.swing.ButtonGroup;
 import javax.swing.JComponent;
+import javax.swing.JFileChooser;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JPopupMenu;
+import javax.swing.JRadioButtonMenuItem;
 import javax.swing.Timer;
 
 /**
@@ -45,14 +58,27 @@ final class MemoryGraph extends JComponent implements MouseListener {
             1f, new float[]{2f, 2f}, 0f
     );
 
+    private static final Color[] POOL_COLORS = new Color[]{
+        new Color(0xffe066), new Color(0xffa94d), new Color(0xff6b6b),
+        new Color(0xda77f2), new Color(0x748ffc), new Color(0x4dabf7),
+        new Color(0x38d9a9), new Color(0x8ce99a), new Color(0xced4da)
+    };
+
+    private static final Color[] GC_MARKER_COLORS = new Color[]{
+        Color.CYAN, Color.MAGENTA, Color.WHITE
+    };
+
     private static final int SAMPLES = 60;
     private static final int LAST_SAMP = SAMPLES - 1;
 
     private static final int WIDTH = SAMPLES * 3;
     private static final int HEIGHT = 64;
 
-    private double[] heapUse = new double[SAMPLES];
+    private final MemorySampler sampler;
+    private final SampleRing.Snapshot snapshot;
+    private final MemoryRates rates;
     private double maxMem = 0d;
+    private double maxStack = 0d;
 
     private ToolWindow owner;
     private MemoryReadings readings;
@@ -68,9 +94,167 @@ final class MemoryGraph extends JComponent implements MouseListener {
         setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
 
         this.readings = readings;
+        sampler = MemorySampler.acquire();
+        snapshot = sampler.getRing().createSnapshot(SAMPLES);
+        rates = new MemoryRates(sampler);
+        initModePopup();
         updateTimer.start();
     }
 
+    private void initModePopup() {
+        ActionListener li = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                poolMode = e.getActionCommand().equals("Memory Pools");
+                updatePoolLegend();
+                repaint();
+            }
+        };
+        JPopupMenu menu = new JPopupMenu();
+        ButtonGroup group = new ButtonGroup();
+        for (String mode : new String[]{"Combined Use", "Memory Pools"}) {
+            JRadioButtonMenuItem it = new JRadioButtonMenuItem(mode);
+            it.setSelected(group.getButtonCount() == 0);
+            it.addActionListener(li);
+            group.add(it);
+            menu.add(it);
+        }
+        menu.addSeparator();
+        JMenuItem historyItem = new JMenuItem("Session History...");
+        historyItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                MemoryHistoryView.showHistory(sampler);
+            }
+        });
+        historyItem.setEnabled(sampler.getLog() != null);
+        menu.add(historyItem);
+        recordItem = new JMenuItem("Start Recording");
+        recordItem.setEnabled(FlightRecorder.isAvailable());
+        recordItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                toggleRecording();
+            }
+        });
+        menu.add(recordItem);
+        dumpItem = new JMenuItem("Heap Dump...");
+        dumpItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                dumpHeap();
+            }
+        });
+        menu.add(dumpItem);
+        setComponentPopupMenu(menu);
+    }
+
+    private JMenuItem dumpItem;
+
+    /**
+     * Asks for a file, writes a heap dump to it, and then summarizes the dump
+     * by class loader in the background.
+     */
+    private void dumpHeap() {
+        JFileChooser fc = new JFileChooser();
+        fc.setSelectedFile(new File(fc.getCurrentDirectory(),
+                "strange-eons-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".hprof"
+        ));
+        if (fc.showSaveDialog(owner) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File chosen = fc.getSelectedFile();
+        if (!chosen.getName().endsWith(".hprof")) {
+            chosen = new File(chosen.getParentFile(), chosen.getName() + ".hprof");
+        }
+        final File f = chosen;
+        // the JVM refuses to dump to an existing file, so it must be deleted first
+        if (f.exists()) {
+            if (JOptionPane.showConfirmDialog(owner, f.getName() + " already exists. Replace it?",
+                    "Heap Dump", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+                return;
+            }
+            if (!f.delete()) {
+                StrangeEons.log.log(Level.WARNING, "unable to replace {0}", f);
+                return;
+            }
+        }
+
+        dumpItem.setText("Analyzing Heap Dump...");
+        dumpItem.setEnabled(false);
+        new Thread(() -> {
+            List<HeapDumpAnalyzer.LoaderSummary> loaders = null;
+            try {
+                HeapDumpAnalyzer.dumpHeap(f);
+                loaders = HeapDumpAnalyzer.analyze(f);
+            } catch (IOException | RuntimeException ex) {
+                StrangeEons.log.log(Level.WARNING, "unable to dump or analyze heap", ex);
+            }
+            final List<HeapDumpAnalyzer.LoaderSummary> result = loaders;
+            EventQueue.invokeLater(() -> {
+                dumpItem.setText("Heap Dump...");
+                dumpItem.setEnabled(true);
+                if (result != null) {
+                    HeapDumpReportPanel.showReport(f, result);
+                }
+            });
+        }, "Developer Tools heap dump").start();
+    }
+
+    private JMenuItem recordItem;
+    private FlightRecorder recorder;
+
+    /**
+     * Starts a flight recording, or stops the current recording and analyzes
+     * it in the background, showing a report when done.
+     */
+    private void toggleRecording() {
+        if (recorder == null) {
+            try {
+                recorder = new FlightRecorder();
+                recorder.start();
+                recordItem.setText("Stop Recording");
+            } catch (IOException | RuntimeException ex) {
+                recorder = null;
+                StrangeEons.log.log(Level.WARNING, "unable to start recording", ex);
+            }
+        } else {
+            final FlightRecorder r = recorder;
+            recorder = null;
+            recordItem.setText("Analyzing Recording...");
+            recordItem.setEnabled(false);
+            new Thread(() -> {
+                File f = null;
+                RecordingReport report = null;
+                try {
+                    f = r.stop();
+                    report = FlightRecorder.analyze(f);
+                } catch (IOException | RuntimeException ex) {
+                    StrangeEons.log.log(Level.WARNING, "unable to analyze recording", ex);
+                } finally {
+                    if (f != null) {
+                        f.delete();
+                    }
+                }
+                final RecordingReport result = report;
+                EventQueue.invokeLater(() -> {
+                    recordItem.setText("Start Recording");
+                    recordItem.setEnabled(true);
+                    if (result != null) {
+                        RecordingReportPanel.showReport(result);
+                    }
+                });
+            }, "Developer Tools recording analyzer").start();
+        }
+        repaint();
+    }
+
+    /**
+     * If true, the graph shows the use of each memory pool as a stacked
+     * series with markers where garbage collections occurred.
+     */
+    private boolean poolMode;
+
     @Override
     protected void paintComponent(Graphics g1) {
         Graphics2D g = (Graphics2D) g1;
@@ -85,8 +269,18 @@ final class MemoryGraph extends JComponent implements MouseListener {
         g.scale((double) w / (SAMPLES - 1), (double) h);
 
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        if (memShape == null) {
-            memShape = makeGraph(heapUse, maxMem, true);
+        if (poolMode) {
+            if (poolShapes == null) {
+                poolShapes = makePoolGraph(snapshot, maxStack);
+            }
+            for (int p = 0; p < poolShapes.length; ++p) {
+                g.setPaint(POOL_COLORS[p % POOL_COLORS.length]);
+                g.fill(poolShapes[p]);
+            }
+        } else {
+            if (memShape == null) {
+                memShape = makeGraph(snapshot, maxMem, true);
+            }
             g.setPaint(MEMORY_GRAPH);
             g.fill(memShape);
         }
@@ -96,7 +290,7 @@ final class MemoryGraph extends JComponent implements MouseListener {
         Stroke oldStroke = g.getStroke();
 
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-        final float onePixelWide = (SAMPLES - 1) / w;
+        final float onePixelWide = (float) (SAMPLES - 1) / w;
         g.setStroke(new BasicStroke(onePixelWide));
         g.setPaint(X_GRID_COLOR);
 
@@ -107,6 +301,11 @@ final class MemoryGraph extends JComponent implements MouseListener {
 
         g.setTransform(oldAT);
 
+        if (poolMode) {
+            paintCollectionMarkers(g, w, h);
+            g.setComposite(gridComp);
+        }
+
         // DRAW Y-AXIS GRID
         g.setPaint(Y_GRID_COLOR);
         final float hf = (float) h;
@@ -121,54 +320,179 @@ final class MemoryGraph extends JComponent implements MouseListener {
         g.drawLine(0, y, w, y);
 
         g.setComposite(oldComp);
-        // DRAW MEMORY USE
+
+        if (recorder != null) {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setPaint(Color.RED);
+            g.fillOval(w - 12, 4, 8, 8);
+        }
     }
 
     private AlphaComposite gridComp = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.8f);
 
-    private void takeSample() {
-        roll(heapUse);
-
-        MemoryUsage hUse = memBean.getHeapMemoryUsage();
-        MemoryUsage nUse = memBean.getNonHeapMemoryUsage();
+    /**
+     * Called periodically on the EDT to check for new samples. The samples
+     * themselves are collected in the background by the shared
+     * {@link MemorySampler}; if there are new ones, a snapshot of the visible
+     * samples is copied out of the ring and the graph shape is invalidated.
+     */
+    private void refresh() {
+        if (!owner.isVisible() || sampler.getRing().getCount() == snapshot.getCount()) {
+            return;
+        }
 
-        double mem = hUse.getUsed() + nUse.getUsed();
-        maxMem = Math.max(mem, maxMem);
-        heapUse[LAST_SAMP] = mem;
+        sampler.getRing().snapshot(snapshot, SAMPLES);
+        for (int s = 0; s < snapshot.size(); ++s) {
+            maxMem = Math.max(maxMem, inUse(snapshot, s));
+            maxStack = Math.max(maxStack, stackedUse(snapshot, s));
+        }
 
         // old shapes are now invalid
         memShape = null;
+        poolShapes = null;
 
-        if (owner.isVisible()) {
-            repaint();
-            if (readings != null) {
-                readings.updateStats();
-            }
+        if (poolMode) {
+            updatePoolLegend();
+        }
+        repaint();
+        if (readings != null) {
+            rates.update(snapshot);
+            readings.updateStats(snapshot, rates);
         }
     }
 
     private Shape memShape;
 
-    private void roll(double[] samples) {
-        for (int i = 1; i < SAMPLES; ++i) {
-            samples[i - 1] = samples[i];
+    private static double inUse(SampleRing.Snapshot samples, int s) {
+        return samples.get(s, MemorySampler.HEAP_USED) + samples.get(s, MemorySampler.NONHEAP_USED);
+    }
+
+    private double stackedUse(SampleRing.Snapshot samples, int s) {
+        long total = 0L;
+        for (int p = 0; p < sampler.getPoolCount(); ++p) {
+            total += samples.get(s, sampler.getPoolChannel(p));
+        }
+        return total;
+    }
+
+    private Shape[] poolShapes;
+
+    /**
+     * Creates one band shape per memory pool, stacking each pool on top of the
+     * pools before it.
+     */
+    private Shape[] makePoolGraph(SampleRing.Snapshot samples, double max) {
+        final int pools = sampler.getPoolCount();
+        final int n = samples.size();
+        Shape[] shapes = new Shape[pools];
+        if (max == 0 || n == 0) {
+            for (int p = 0; p < pools; ++p) {
+                shapes[p] = new Path2D.Double();
+            }
+            return shapes;
+        }
+
+        final int x0 = SAMPLES - n;
+        double[] base = new double[n];
+        double[] top = new double[n];
+        for (int p = 0; p < pools; ++p) {
+            final int ch = sampler.getPoolChannel(p);
+            for (int s = 0; s < n; ++s) {
+                top[s] = base[s] + samples.get(s, ch) / max;
+            }
+            Path2D.Double path = new Path2D.Double();
+            path.moveTo(x0, 1d - base[0]);
+            for (int s = 0; s < n; ++s) {
+                path.lineTo((double) (x0 + s), 1d - top[s]);
+            }
+            for (int s = n - 1; s >= 0; --s) {
+                path.lineTo((double) (x0 + s), 1d - base[s]);
+            }
+            path.closePath();
+            shapes[p] = path;
+
+            double[] swap = base;
+            base = top;
+            top = swap;
+        }
+        return shapes;
+    }
+
+    /**
+     * Draws a vertical marker at each sample during which a collector ran.
+     * The marker is brighter when more of the sample period was spent paused
+     * for collection.
+     */
+    private void paintCollectionMarkers(Graphics2D g, int w, int h) {
+        final double xScale = (double) w / (SAMPLES - 1);
+        final int n = snapshot.size();
+        final int x0 = SAMPLES - n;
+        for (int c = 0; c < sampler.getCollectorCount(); ++c) {
+            final int countCh = sampler.getCollectorCountChannel(c);
+            final int timeCh = sampler.getCollectorTimeChannel(c);
+            final Color color = GC_MARKER_COLORS[Math.min(c, GC_MARKER_COLORS.length - 1)];
+            for (int s = 1; s < n; ++s) {
+                if (snapshot.get(s, countCh) > snapshot.get(s - 1, countCh)) {
+                    long pause = snapshot.get(s, timeCh) - snapshot.get(s - 1, timeCh);
+                    float alpha = 0.4f + 0.6f * Math.min(1f, pause / (float) MemorySampler.PERIOD * 10f);
+                    g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+                    g.setPaint(color);
+                    int x = (int) ((x0 + s) * xScale + 0.5d);
+                    g.drawLine(x, 0, x, h);
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the tool tip to list the pools, their colours, and their
+     * current use.
+     */
+    private void updatePoolLegend() {
+        if (!poolMode) {
+            setToolTipText(null);
+            return;
+        }
+        StringBuilder b = new StringBuilder("<html><table cellspacing=0 cellpadding=1 border=0>");
+        for (int p = sampler.getPoolCount() - 1; p >= 0; --p) {
+            Color c = POOL_COLORS[p % POOL_COLORS.length];
+            b.append(String.format(
+                    "<tr><td><font color='#%06x'>\u25a0</font></td><td>%s%s</td><td align=right>&nbsp;%.1f MiB</td></tr>",
+                    c.getRGB() & 0xffffff, sampler.getPoolName(p), sampler.isHeapPool(p) ? "" : " (non-heap)",
+                    snapshot.getLatest(sampler.getPoolChannel(p)) / BYTES_PER_MB
+            ));
         }
+        for (int c = 0; c < sampler.getCollectorCount(); ++c) {
+            Color col = GC_MARKER_COLORS[Math.min(c, GC_MARKER_COLORS.length - 1)];
+            b.append(String.format(
+                    "<tr><td><font color='#%06x'>|</font></td><td>%s</td><td align=right>&nbsp;%,d</td></tr>",
+                    col.getRGB() & 0xffffff, sampler.getCollectorName(c),
+                    snapshot.getLatest(sampler.getCollectorCountChannel(c))
+            ));
+        }
+        b.append("</table>");
+        setToolTipText(b.toString());
     }
 
-    private Shape makeGraph(double[] samples, double max, boolean solid) {
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    private Shape makeGraph(SampleRing.Snapshot samples, double max, boolean solid) {
         Path2D.Double path = new Path2D.Double();
-        if (max == 0) {
+        final int n = samples.size();
+        if (max == 0 || n == 0) {
             return path;
         }
 
+        // right-align the samples so the newest is always at the right edge
+        final int x0 = SAMPLES - n;
         if (solid) {
-            path.moveTo(0d, 1d);
+            path.moveTo(x0, 1d);
         } else {
-            path.moveTo(0d, 1d - samples[0] / max);
+            path.moveTo(x0, 1d - inUse(samples, 0) / max);
         }
 
-        for (int s = 0; s < samples.length; ++s) {
-            path.lineTo((double) s, 1d - samples[s] / max);
+        for (int s = 0; s < n; ++s) {
+            path.lineTo((double) (x0 + s), 1d - inUse(samples, s) / max);
         }
         path.lineTo((double) LAST_SAMP, 1d);
         path.closePath();
@@ -178,20 +502,32 @@ final class MemoryGraph extends JComponent implements MouseListener {
 
     private MemoryMXBean memBean = ManagementFactory.getMemoryMXBean();
 
-    private Timer updateTimer = new Timer(1000, new ActionListener() {
+    // only checks for new samples, so it can run more often than the sampler
+    private Timer updateTimer = new Timer(MemorySampler.PERIOD / 4, new ActionListener() {
         @Override
         public void actionPerformed(ActionEvent e) {
-            takeSample();
+            refresh();
         }
     });
 
     public void dispose() {
-        updateTimer.stop();
+        if (recorder != null) {
+            try {
+                recorder.stop().delete();
+            } catch (IOException | RuntimeException ex) {
+                StrangeEons.log.log(Level.WARNING, null, ex);
+            }
+            recorder = null;
+        }
+        if (updateTimer.isRunning()) {
+            updateTimer.stop();
+            MemorySampler.release();
+        }
     }
 
     @Override
     public void mouseClicked(MouseEvent e) {
-        if (clickTimer != null) {
+        if (clickTimer != null || e.getButton() != MouseEvent.BUTTON1) {
             return;
         }
 
@@ -0,0 +1,265 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import ca.cgjennings.apps.arkham.ToolWindow;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Cursor;
+import java.awt.Dialog;
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+/**
+ * Displays the complete memory use history of the session from the
+ * {@link MemorySampler}'s sample log. Since the history can span many hours,
+ * the samples are downsampled to a minimum and maximum for each pixel column.
+ * The mouse wheel zooms in and out around the pointer, dragging pans, and
+ * double clicking returns to the full session.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class MemoryHistoryView extends JComponent {
+
+    private static final Color BACKGROUND = Color.DARK_GRAY;
+    private static final Color ENVELOPE = Color.ORANGE;
+    private static final Color GRID = Color.GRAY;
+    private static final long MIN_SPAN = 10_000L;
+
+    /**
+     * Shows the history of a sampler in a new tool window.
+     *
+     * @param sampler the sampler whose log should be shown
+     */
+    public static void showHistory(final MemorySampler sampler) {
+        final ToolWindow tw = new ToolWindow(StrangeEons.getWindow(), "Memory History", Dialog.ModalityType.MODELESS);
+        final MemoryHistoryView view = new MemoryHistoryView(sampler);
+        JPanel body = new JPanel(new BorderLayout());
+        body.add(view);
+        tw.setBody(body);
+        tw.setSize(640, 240);
+        tw.setLocationRelativeTo(StrangeEons.getWindow());
+        tw.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                view.dispose();
+            }
+        });
+        tw.setVisible(true);
+    }
+
+    private final MemorySampler sampler;
+    private final ExecutorService scanner;
+    private final Timer followTimer;
+
+    // the visible time range; when following, the end tracks the newest sample
+    private long viewStart, viewEnd;
+    private boolean following = true;
+
+    // downsampled data for the current range, replaced as a unit on the EDT
+    private Columns columns;
+    private volatile int requestNumber;
+
+    public MemoryHistoryView(MemorySampler sampler) {
+        this.sampler = sampler;
+        setOpaque(true);
+        setPreferredSize(new Dimension(600, 200));
+        setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+        setToolTipText("Wheel to zoom, drag to pan, double click to show the whole session");
+
+        scanner = Executors.newSingleThreadExecutor((r) -> {
+            Thread t = new Thread(r, "Developer Tools memory history");
+            t.setDaemon(true);
+            return t;
+        });
+
+        MouseAdapter li = new MouseAdapter() {
+            private int dragX;
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    following = true;
+                    requestScan();
+                }
+            }
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                final int w = Math.max(1, getWidth());
+                final long dt = (long) ((double) (dragX - e.getX()) / w * (viewEnd - viewStart));
+                dragX = e.getX();
+                setRange(viewStart + dt, viewEnd + dt);
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                final double factor = Math.pow(1.25, e.getPreciseWheelRotation());
+                final double anchor = (double) e.getX() / Math.max(1, getWidth());
+                final long span = viewEnd - viewStart;
+                final long newSpan = Math.max(MIN_SPAN, (long) (span * factor));
+                final long start = viewStart + (long) ((span - newSpan) * anchor);
+                setRange(start, start + newSpan);
+            }
+        };
+        addMouseListener(li);
+        addMouseMotionListener(li);
+        addMouseWheelListener(li);
+
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                requestScan();
+            }
+        });
+
+        followTimer = new Timer(MemorySampler.PERIOD * 5, (e) -> {
+            if (following) {
+                requestScan();
+            }
+        });
+        followTimer.start();
+        requestScan();
+    }
+
+    private void setRange(long start, long end) {
+        following = false;
+        viewStart = start;
+        viewEnd = end;
+        requestScan();
+    }
+
+    /**
+     * Stops updating the view and releases its background thread.
+     */
+    public void dispose() {
+        followTimer.stop();
+        scanner.shutdownNow();
+    }
+
+    /**
+     * Schedules a background scan of the log for the current view range.
+     * Earlier requests that have not started yet are skipped.
+     */
+    private void requestScan() {
+        final SampleLog log = sampler.getLog();
+        if (log == null || log.getStartTime() < 0 || scanner.isShutdown()) {
+            return;
+        }
+        if (following) {
+            viewStart = log.getStartTime();
+            viewEnd = Math.max(viewStart + MIN_SPAN, System.currentTimeMillis());
+        }
+        final long start = viewStart;
+        final long end = viewEnd;
+        final int width = Math.max(1, getWidth());
+        final int request = ++requestNumber;
+        scanner.submit(() -> {
+            if (request != requestNumber) {
+                return;
+            }
+            final Columns cols = new Columns(start, end, width);
+            log.scan(start, end, cols);
+            EventQueue.invokeLater(() -> {
+                if (request == requestNumber) {
+                    columns = cols;
+                    repaint();
+                }
+            });
+        });
+    }
+
+    /**
+     * Accumulates the minimum and maximum combined memory use for each pixel
+     * column of the view.
+     */
+    private static final class Columns implements SampleLog.Visitor {
+
+        final long start, end;
+        final long[] min, max;
+        long peak;
+
+        Columns(long start, long end, int width) {
+            this.start = start;
+            this.end = end;
+            min = new long[width];
+            max = new long[width];
+            Arrays.fill(min, Long.MAX_VALUE);
+            Arrays.fill(max, Long.MIN_VALUE);
+        }
+
+        @Override
+        public void sample(long time, long[] values) {
+            final long use = values[MemorySampler.HEAP_USED] + values[MemorySampler.NONHEAP_USED];
+            final int col = (int) Math.min(min.length - 1, (time - start) * min.length / Math.max(1L, end - start));
+            if (use < min[col]) {
+                min[col] = use;
+            }
+            if (use > max[col]) {
+                max[col] = use;
+            }
+            if (use > peak) {
+                peak = use;
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g1) {
+        Graphics2D g = (Graphics2D) g1;
+        final int w = getWidth();
+        final int h = getHeight();
+        g.setPaint(BACKGROUND);
+        g.fillRect(0, 0, w, h);
+
+        g.setPaint(GRID);
+        for (int q = 1; q < 4; ++q) {
+            final int y = h * q / 4;
+            g.drawLine(0, y, w, y);
+        }
+
+        final Columns cols = columns;
+        if (cols == null || cols.peak <= 0) {
+            return;
+        }
+
+        final double scale = (h - 16) / (double) cols.peak;
+        g.setPaint(ENVELOPE);
+        for (int x = 0; x < cols.min.length && x < w; ++x) {
+            if (cols.max[x] >= 0) {
+                final int y0 = h - (int) (cols.max[x] * scale);
+                final int y1 = h - (int) (cols.min[x] * scale);
+                g.drawLine(x, y0, x, y1);
+            }
+        }
+
+        g.setPaint(Color.WHITE);
+        g.setFont(g.getFont().deriveFont(g.getFont().getSize() - 1f));
+        final SimpleDateFormat fmt = new SimpleDateFormat(cols.end - cols.start > 86_400_000L ? "MMM d HH:mm" : "HH:mm:ss");
+        final int base = g.getFontMetrics().getAscent() + 2;
+        g.drawString(fmt.format(new Date(cols.start)), 4, base);
+        final String endText = fmt.format(new Date(cols.end));
+        g.drawString(endText, w - 4 - g.getFontMetrics().stringWidth(endText), base);
+        final String peakText = String.format("peak %.1f MiB", cols.peak / (1024d * 1024d));
+        g.drawString(peakText, (w - g.getFontMetrics().stringWidth(peakText)) / 2, base);
+    }
+}
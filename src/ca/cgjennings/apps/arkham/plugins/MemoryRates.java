@@ -0,0 +1,129 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+/**
+ * Derives rates from the cumulative counters recorded by a
+ * {@link MemorySampler}: the allocation rate, the fraction of wall time spent
+ * in garbage collection, and the rate at which objects are promoted into the
+ * old generation. Rates are averaged over a short window of recent samples so
+ * that they do not jump around from one sample to the next.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class MemoryRates {
+
+    /**
+     * The default number of sample intervals that rates are averaged over.
+     */
+    public static final int DEFAULT_WINDOW = 5;
+
+    private final MemorySampler sampler;
+    private final int window;
+    private double allocRate = -1d;
+    private double gcPercent = -1d;
+    private double promotionRate = -1d;
+
+    /**
+     * Creates a rate calculator that averages over the default window.
+     *
+     * @param sampler the sampler whose samples will be analyzed
+     */
+    public MemoryRates(MemorySampler sampler) {
+        this(sampler, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Creates a rate calculator that averages over the specified number of
+     * sample intervals.
+     *
+     * @param sampler the sampler whose samples will be analyzed
+     * @param window the number of intervals to average over
+     */
+    public MemoryRates(MemorySampler sampler, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window < 1");
+        }
+        this.sampler = sampler;
+        this.window = window;
+    }
+
+    /**
+     * Updates the rates from the newest samples in a snapshot. The snapshot
+     * must have been taken from this calculator's sampler.
+     *
+     * @param samples the snapshot to analyze
+     */
+    public void update(SampleRing.Snapshot samples) {
+        final int last = samples.size() - 1;
+        final int first = Math.max(0, last - window);
+        if (last <= first) {
+            allocRate = gcPercent = promotionRate = -1d;
+            return;
+        }
+
+        final double seconds = (samples.getTime(last) - samples.getTime(first)) / 1000d;
+        if (seconds <= 0d) {
+            return;
+        }
+
+        long alloc0 = samples.get(first, MemorySampler.ALLOCATED);
+        long alloc1 = samples.get(last, MemorySampler.ALLOCATED);
+        allocRate = alloc0 < 0 || alloc1 < 0 ? -1d : (alloc1 - alloc0) / seconds;
+
+        long gcMillis = 0L;
+        for (int c = 0; c < sampler.getCollectorCount(); ++c) {
+            final int ch = sampler.getCollectorTimeChannel(c);
+            long t0 = samples.get(first, ch);
+            long t1 = samples.get(last, ch);
+            if (t0 >= 0 && t1 >= 0) {
+                gcMillis += t1 - t0;
+            }
+        }
+        gcPercent = Math.min(100d, gcMillis / (seconds * 10d));
+
+        // growth of the old generation approximates promotion; shrinkage
+        // is caused by old collections, which promote nothing
+        final int old = sampler.getOldGenPool();
+        if (old < 0) {
+            promotionRate = -1d;
+        } else {
+            final int ch = sampler.getPoolChannel(old);
+            long promoted = 0L;
+            for (int s = first + 1; s <= last; ++s) {
+                long delta = samples.get(s, ch) - samples.get(s - 1, ch);
+                if (delta > 0) {
+                    promoted += delta;
+                }
+            }
+            promotionRate = promoted / seconds;
+        }
+    }
+
+    /**
+     * Returns the allocation rate in bytes per second, or -1 if unavailable.
+     *
+     * @return the recent allocation rate
+     */
+    public double getAllocationRate() {
+        return allocRate;
+    }
+
+    /**
+     * Returns the percentage of wall time spent in garbage collection, or -1
+     * if unavailable.
+     *
+     * @return the recent garbage collection overhead, from 0 to 100
+     */
+    public double getCollectionOverhead() {
+        return gcPercent;
+    }
+
+    /**
+     * Returns the rate at which memory is promoted into the old generation in
+     * bytes per second, or -1 if unavailable.
+     *
+     * @return the recent promotion rate
+     */
+    public double getPromotionRate() {
+        return promotionRate;
+    }
+}
@@ -1,10 +1,5 @@
 package ca.cgjennings.apps.arkham.plugins;
 
-import java.lang.management.ManagementFactory;
-import java.lang.management.MemoryMXBean;
-import java.lang.management.MemoryUsage;
-import java.lang.management.ThreadMXBean;
-
 /**
  * Status bar that displays current memory use in the memory use window.
  */
@@ -14,13 +9,21 @@ final class MemoryReadings extends javax.swing.JPanel {
         initComponents();
     }
 
-    public void updateStats() {
-        MemoryUsage hUsage = memBean.getHeapMemoryUsage();
-        MemoryUsage nUsage = memBean.getNonHeapMemoryUsage();
+    /**
+     * Updates the readings using the newest sample in a snapshot of the
+     * {@link MemorySampler} ring and the rates derived from it.
+     *
+     * @param samples the snapshot to read
+     * @param rates rates derived from the snapshot
+     */
+    public void updateStats(SampleRing.Snapshot samples, MemoryRates rates) {
+        if (samples.size() == 0) {
+            return;
+        }
 
-        long used = hUsage.getUsed() + nUsage.getUsed();
-        long commit = hUsage.getCommitted() + nUsage.getCommitted();
-        long max = hUsage.getMax() + nUsage.getMax();
+        long used = samples.getLatest(MemorySampler.HEAP_USED) + samples.getLatest(MemorySampler.NONHEAP_USED);
+        long commit = samples.getLatest(MemorySampler.HEAP_COMMITTED) + samples.getLatest(MemorySampler.NONHEAP_COMMITTED);
+        long max = samples.getLatest(MemorySampler.HEAP_MAX) + samples.getLatest(MemorySampler.NONHEAP_MAX);
 
         StringBuilder b = new StringBuilder("In use: ");
         b.append(String.format("%.1f", used / BYTES_PER_MB));
@@ -30,11 +33,23 @@ final class MemoryReadings extends javax.swing.JPanel {
         b.append(" MiB    Committed: ").append(String.format("%.1f", commit / BYTES_PER_MB)).append(" MiB");
         c1.setText(b.toString());
 
-        c2.setText(String.format("    %d Threads", threadBean.getThreadCount()));
+        b.setLength(0);
+        appendRate(b, "Alloc", rates.getAllocationRate());
+        if (rates.getCollectionOverhead() >= 0d) {
+            b.append(String.format("    GC: %.1f%%", rates.getCollectionOverhead()));
+        }
+        appendRate(b, "    Promoted", rates.getPromotionRate());
+        c3.setText(b.toString());
+
+        c2.setText(String.format("    %d Threads", samples.getLatest(MemorySampler.THREADS)));
+    }
+
+    private static void appendRate(StringBuilder b, String label, double bytesPerSecond) {
+        if (bytesPerSecond >= 0d) {
+            b.append(label).append(": ").append(String.format("%.1f", bytesPerSecond / BYTES_PER_MB)).append(" MiB/s");
+        }
     }
 
-    private MemoryMXBean memBean = ManagementFactory.getMemoryMXBean();
-    private ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
     private static final double BYTES_PER_MB = 1024 * 1024;
 
     /**
@@ -48,6 +63,7 @@ final class MemoryReadings extends javax.swing.JPanel {
         java.awt.GridBagConstraints gridBagConstraints;
 
         c1 = new javax.swing.JLabel();
+        c3 = new javax.swing.JLabel();
         c2 = new javax.swing.JLabel();
 
         setBackground(java.awt.Color.darkGray);
@@ -63,6 +79,14 @@ final class MemoryReadings extends javax.swing.JPanel {
         gridBagConstraints.weightx = 1.0;
         add(c1, gridBagConstraints);
 
+        c3.setFont(c3.getFont().deriveFont(c3.getFont().getSize()-1f));
+        c3.setForeground(java.awt.Color.white);
+        c3.setHorizontalAlignment(javax.swing.SwingConstants.CENTER);
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
+        gridBagConstraints.weightx = 1.0;
+        add(c3, gridBagConstraints);
+
         c2.setFont(c2.getFont().deriveFont(c2.getFont().getSize()-1f));
         c2.setForeground(java.awt.Color.white);
         c2.setHorizontalAlignment(javax.swing.SwingConstants.RIGHT);
@@ -75,5 +99,6 @@ final class MemoryReadings extends javax.swing.JPanel {
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JLabel c1;
     private javax.swing.JLabel c2;
+    private javax.swing.JLabel c3;
     // End of variables declaration//GEN-END:variables
 }
@@ -0,0 +1,377 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Samples memory use on a background thread and stores the results in a
+ * {@link SampleRing}. Views such as the memory graph read snapshots from the
+ * ring on the event dispatch thread, so taking a sample never costs the EDT
+ * anything. A single sampler is shared by all clients; it runs while at least
+ * one client has acquired it.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class MemorySampler {
+
+    /**
+     * Channel for the heap memory in use, in bytes.
+     */
+    public static final int HEAP_USED = 0;
+    /**
+     * Channel for the heap memory committed, in bytes.
+     */
+    public static final int HEAP_COMMITTED = 1;
+    /**
+     * Channel for the maximum heap size in bytes, or -1 if undefined.
+     */
+    public static final int HEAP_MAX = 2;
+    /**
+     * Channel for the non-heap memory in use, in bytes.
+     */
+    public static final int NONHEAP_USED = 3;
+    /**
+     * Channel for the non-heap memory committed, in bytes.
+     */
+    public static final int NONHEAP_COMMITTED = 4;
+    /**
+     * Channel for the maximum non-heap size in bytes, or -1 if undefined.
+     */
+    public static final int NONHEAP_MAX = 5;
+    /**
+     * Channel for the number of live threads.
+     */
+    public static final int THREADS = 6;
+    /**
+     * Channel for the total bytes allocated by all threads since sampling
+     * began, or -1 if the JVM does not support measuring thread allocation.
+     */
+    public static final int ALLOCATED = 7;
+
+    private static final int BASE_CHANNELS = 8;
+
+    /**
+     * Time between samples, in milliseconds.
+     */
+    public static final int PERIOD = 1000;
+
+    /**
+     * Number of samples retained: four hours at one sample per second.
+     */
+    public static final int CAPACITY = 4 * 60 * 60 * (1000 / PERIOD);
+
+    private static MemorySampler shared;
+    private static int clients;
+
+    /**
+     * Returns the shared sampler, starting it if it is not already running.
+     * Each call must be balanced by a call to {@link #release()}.
+     *
+     * @return the shared memory sampler
+     */
+    public static synchronized MemorySampler acquire() {
+        if (shared == null) {
+            shared = new MemorySampler();
+        }
+        if (clients++ == 0) {
+            shared.start();
+        }
+        return shared;
+    }
+
+    /**
+     * Releases a client's hold on the shared sampler. When the last client
+     * releases the sampler, it stops sampling. The samples collected so far
+     * are retained.
+     */
+    public static synchronized void release() {
+        if (clients <= 0) {
+            throw new IllegalStateException("not acquired");
+        }
+        if (--clients == 0) {
+            shared.stop();
+        }
+    }
+
+    private final SampleRing ring;
+    private final long[] row;
+    private final MemoryMXBean memBean = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final MemoryPoolMXBean[] pools;
+    private final GarbageCollectorMXBean[] collectors;
+    private final int oldGenPool;
+    private final com.sun.management.ThreadMXBean allocBean;
+    private ScheduledExecutorService executor;
+    private volatile SampleLog log;
+
+    private MemorySampler() {
+        List<MemoryPoolMXBean> poolList = new ArrayList<>(ManagementFactory.getMemoryPoolMXBeans());
+        List<GarbageCollectorMXBean> gcList = ManagementFactory.getGarbageCollectorMXBeans();
+        // list heap pools first so they form the base of a stacked graph
+        poolList.sort((a, b) -> a.getType().compareTo(b.getType()));
+        pools = poolList.toArray(new MemoryPoolMXBean[poolList.size()]);
+        collectors = gcList.toArray(new GarbageCollectorMXBean[gcList.size()]);
+
+        int old = -1;
+        for (int p = 0; p < pools.length && old < 0; ++p) {
+            String name = pools[p].getName();
+            if (isHeapPool(p) && (name.contains("Old Gen") || name.contains("Tenured"))) {
+                old = p;
+            }
+        }
+        oldGenPool = old;
+
+        com.sun.management.ThreadMXBean ab = null;
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            ab = (com.sun.management.ThreadMXBean) threadBean;
+            try {
+                if (ab.isThreadAllocatedMemorySupported() && !ab.isThreadAllocatedMemoryEnabled()) {
+                    ab.setThreadAllocatedMemoryEnabled(true);
+                }
+                if (!ab.isThreadAllocatedMemoryEnabled()) {
+                    ab = null;
+                }
+            } catch (UnsupportedOperationException | SecurityException ex) {
+                ab = null;
+            }
+        }
+        allocBean = ab;
+
+        final int channels = BASE_CHANNELS + pools.length + collectors.length * 2;
+        ring = new SampleRing(CAPACITY, channels);
+        row = new long[channels];
+    }
+
+    /**
+     * Returns the ring that samples are written to. Readers should only take
+     * snapshots of the ring.
+     *
+     * @return the sample buffer
+     */
+    public SampleRing getRing() {
+        return ring;
+    }
+
+    /**
+     * Returns the number of memory pools that are sampled individually.
+     *
+     * @return the number of memory pools
+     */
+    public int getPoolCount() {
+        return pools.length;
+    }
+
+    /**
+     * Returns the name of a sampled memory pool, such as "G1 Eden Space" or
+     * "Metaspace".
+     *
+     * @param pool the pool index
+     * @return the pool name
+     */
+    public String getPoolName(int pool) {
+        return pools[pool].getName();
+    }
+
+    /**
+     * Returns whether a sampled memory pool is part of the heap. Heap pools
+     * have lower indices than non-heap pools.
+     *
+     * @param pool the pool index
+     * @return true if the pool is a heap pool
+     */
+    public boolean isHeapPool(int pool) {
+        return pools[pool].getType() == MemoryType.HEAP;
+    }
+
+    /**
+     * Returns the index of the pool that holds the old (tenured) generation,
+     * or -1 if the collector in use is not generational.
+     *
+     * @return the old generation pool index, or -1
+     */
+    public int getOldGenPool() {
+        return oldGenPool;
+    }
+
+    /**
+     * Returns the channel that records the bytes in use in a memory pool.
+     *
+     * @param pool the pool index
+     * @return the channel for the pool's memory use
+     */
+    public int getPoolChannel(int pool) {
+        return BASE_CHANNELS + pool;
+    }
+
+    /**
+     * Returns the number of garbage collectors that are sampled.
+     *
+     * @return the number of collectors
+     */
+    public int getCollectorCount() {
+        return collectors.length;
+    }
+
+    /**
+     * Returns the name of a sampled garbage collector, such as "G1 Young
+     * Generation".
+     *
+     * @param collector the collector index
+     * @return the collector name
+     */
+    public String getCollectorName(int collector) {
+        return collectors[collector].getName();
+    }
+
+    /**
+     * Returns the channel that records the total number of collections
+     * performed by a collector, or -1 if undefined.
+     *
+     * @param collector the collector index
+     * @return the channel for the collector's collection count
+     */
+    public int getCollectorCountChannel(int collector) {
+        return BASE_CHANNELS + pools.length + collector * 2;
+    }
+
+    /**
+     * Returns the channel that records the total elapsed time of the
+     * collections performed by a collector, in milliseconds, or -1 if
+     * undefined.
+     *
+     * @param collector the collector index
+     * @return the channel for the collector's accumulated collection time
+     */
+    public int getCollectorTimeChannel(int collector) {
+        return BASE_CHANNELS + pools.length + collector * 2 + 1;
+    }
+
+    /**
+     * Returns the log that records every sample taken this session, or
+     * <code>null</code> if the log could not be created. Readers should only
+     * scan the log.
+     *
+     * @return the session sample log, or <code>null</code>
+     */
+    public SampleLog getLog() {
+        return log;
+    }
+
+    private void start() {
+        if (log == null) {
+            try {
+                File f = File.createTempFile("devtools-memory-", ".samples");
+                f.deleteOnExit();
+                log = new SampleLog(f, ring.getChannelCount());
+            } catch (IOException ex) {
+                StrangeEons.log.log(Level.WARNING, "unable to create memory history log", ex);
+            }
+        }
+        executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "Developer Tools memory sampler");
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+        executor.scheduleAtFixedRate(this::takeSample, 0, PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    private void stop() {
+        executor.shutdown();
+        // a sample still being taken must finish before start() can schedule
+        // another, since the ring and row buffer allow only one writer
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    private void takeSample() {
+        try {
+            MemoryUsage hUse = memBean.getHeapMemoryUsage();
+            MemoryUsage nUse = memBean.getNonHeapMemoryUsage();
+            row[HEAP_USED] = hUse.getUsed();
+            row[HEAP_COMMITTED] = hUse.getCommitted();
+            row[HEAP_MAX] = hUse.getMax();
+            row[NONHEAP_USED] = nUse.getUsed();
+            row[NONHEAP_COMMITTED] = nUse.getCommitted();
+            row[NONHEAP_MAX] = nUse.getMax();
+            row[THREADS] = threadBean.getThreadCount();
+            for (int p = 0; p < pools.length; ++p) {
+                MemoryUsage pUse = pools[p].getUsage();
+                row[getPoolChannel(p)] = pUse == null ? 0L : pUse.getUsed();
+            }
+            for (int c = 0; c < collectors.length; ++c) {
+                row[getCollectorCountChannel(c)] = collectors[c].getCollectionCount();
+                row[getCollectorTimeChannel(c)] = collectors[c].getCollectionTime();
+            }
+            row[ALLOCATED] = sampleAllocatedBytes();
+            final long time = System.currentTimeMillis();
+            ring.add(time, row);
+            if (log != null) {
+                try {
+                    log.append(time, row);
+                } catch (IOException ex) {
+                    StrangeEons.log.log(Level.WARNING, "memory history log failed; history disabled", ex);
+                    SampleLog failed = log;
+                    log = null;
+                    failed.close();
+                }
+            }
+        } catch (Throwable t) {
+            // an uncaught exception would silently cancel all future samples
+            StrangeEons.log.log(Level.WARNING, "memory sample failed", t);
+        }
+    }
+
+    // thread IDs (sorted) and allocated bytes from the previous sample
+    private long[] prevIds;
+    private long[] prevBytes;
+    private long allocated;
+
+    /**
+     * Returns the cumulative number of bytes allocated since sampling began.
+     * The per-thread counters are lost when a thread dies, so rather than
+     * summing the live counters this accumulates the growth of each thread's
+     * counter since the previous sample.
+     */
+    private long sampleAllocatedBytes() {
+        if (allocBean == null) {
+            return -1L;
+        }
+        long[] ids = threadBean.getAllThreadIds();
+        Arrays.sort(ids);
+        long[] bytes = allocBean.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length && prevIds != null; ++i) {
+            if (bytes[i] < 0) {
+                // thread died between the two calls
+                continue;
+            }
+            int prev = Arrays.binarySearch(prevIds, ids[i]);
+            long delta = prev >= 0 ? bytes[i] - prevBytes[prev] : bytes[i];
+            if (delta > 0) {
+                allocated += delta;
+            }
+        }
+        prevIds = ids;
+        prevBytes = bytes;
+        return allocated;
+    }
+}
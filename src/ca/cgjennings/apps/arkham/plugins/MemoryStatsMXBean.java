@@ -0,0 +1,43 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+/**
+ * Management interface that publishes the memory readings and rates shown
+ * by the Memory Use tool. Sizes are in bytes and rates in bytes per second;
+ * values that are unavailable are -1.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+public interface MemoryStatsMXBean {
+
+    long getHeapUsed();
+
+    long getHeapCommitted();
+
+    long getHeapMax();
+
+    long getNonHeapUsed();
+
+    long getNonHeapCommitted();
+
+    int getThreadCount();
+
+    double getAllocationRate();
+
+    /**
+     * Returns the percentage of wall time recently spent in garbage
+     * collection.
+     *
+     * @return the collection overhead, from 0 to 100
+     */
+    double getCollectionOverhead();
+
+    double getPromotionRate();
+
+    /**
+     * Returns the total size of all registered caches, using estimates for
+     * caches that do not report their size.
+     *
+     * @return the combined size of the known caches
+     */
+    long getTotalCacheBytes();
+}
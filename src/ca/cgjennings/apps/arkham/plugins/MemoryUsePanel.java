@@ -3,27 +3,50 @@ package ca.cgjennings.apps.arkham.plugins;
 import ca.cgjennings.apps.arkham.ToolWindow;
 import java.awt.BorderLayout;
 import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
 
 /**
  * The panel that combines the memory graph and readings bar to create the
- * memory use window.
+ * memory use window. A second tab lists the CPU use and contention of each
+ * thread.
  *
  * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
  */
 final class MemoryUsePanel extends JPanel implements DevToolProxy.UnloadablePanel {
 
+    private final MemoryGraph graph;
+    private final ThreadsPanel threads;
+
     public MemoryUsePanel(ToolWindow tw) {
         tw.setSize(400, 100);
         BorderLayout bl = new BorderLayout();
         setLayout(bl);
+
+        JPanel memoryPanel = new JPanel(new BorderLayout());
         MemoryReadings readings = new MemoryReadings();
-        readings.updateStats();
-        add(new MemoryGraph(tw, readings), BorderLayout.CENTER);
-        add(readings, BorderLayout.SOUTH);
+        graph = new MemoryGraph(tw, readings);
+        memoryPanel.add(graph, BorderLayout.CENTER);
+        memoryPanel.add(readings, BorderLayout.SOUTH);
+
+        threads = new ThreadsPanel();
+
+        final JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Memory", memoryPanel);
+        tabs.addTab("Threads", threads);
+        // only sample threads while their tab is selected
+        tabs.addChangeListener((e) -> {
+            if (tabs.getSelectedComponent() == threads) {
+                threads.start();
+            } else {
+                threads.stop();
+            }
+        });
+        add(tabs, BorderLayout.CENTER);
     }
 
     @Override
     public void onUnload() {
-        ((MemoryGraph) getComponent(0)).dispose();
+        graph.dispose();
+        threads.dispose();
     }
 }
@@ -0,0 +1,406 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.awt.EventQueue;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import resources.CacheMetrics;
+import resources.ResourceKit;
+import resources.Settings;
+
+/**
+ * Publishes the statistics collected by the developer tools as platform
+ * MBeans, so that they can be read by any JMX client (such as JConsole) or
+ * by a test harness running in the same VM, without opening any windows.
+ * One {@link MemoryStatsMXBean} is registered as
+ * <code>ca.cgjennings.devtools:type=Memory</code>, and one
+ * {@link CacheStatsMXBean} per registered cache as
+ * <code>ca.cgjennings.devtools:type=Cache,name=</code><i>cache name</i>.
+ *
+ * <p>
+ * Publishing is off unless the user turns it on from the Cache Manager,
+ * since while the beans are registered the exporter keeps the shared memory
+ * and cache samplers running so that the derived rates stay current. It does not keep the
+ * {@link CacheSizer} running, so the size of a cache that does not report
+ * its own size is only published while something else, such as a budget or
+ * the Cache Manager, needs it. New caches are picked up periodically.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class MetricsExporter {
+
+    /**
+     * The domain of the object names of the published beans.
+     */
+    public static final String DOMAIN = "ca.cgjennings.devtools";
+
+    private static final String ENABLED_KEY = "devtools-metrics-export";
+
+    private static final int SYNC_PERIOD = 10;
+
+    private static MetricsExporter installed;
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final Map<CacheMetrics, ObjectName> cacheNames = new IdentityHashMap<>();
+    private MemorySampler memorySampler;
+    private CacheSampler cacheSampler;
+    private ObjectName memoryName;
+    private ScheduledExecutorService executor;
+
+    private MetricsExporter() {
+    }
+
+    /**
+     * Registers the beans if publishing is enabled in user settings.
+     */
+    public static void install() {
+        if (isEnabled()) {
+            register();
+        }
+    }
+
+    /**
+     * Unregisters the beans.
+     */
+    public static synchronized void uninstall() {
+        if (installed != null) {
+            installed.stop();
+            installed = null;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return Settings.getUser().getInt(ENABLED_KEY, 0) != 0;
+    }
+
+    /**
+     * Sets whether the statistics are published as MBeans.
+     *
+     * @param enable if true, register the beans
+     */
+    public static void setEnabled(boolean enable) {
+        Settings.getUser().set(ENABLED_KEY, enable ? "1" : "0");
+        if (enable) {
+            register();
+        } else {
+            uninstall();
+        }
+    }
+
+    private static synchronized void register() {
+        if (installed == null) {
+            installed = new MetricsExporter();
+            installed.start();
+        }
+    }
+
+    private void start() {
+        memorySampler = MemorySampler.acquire();
+        cacheSampler = CacheSampler.acquire();
+        try {
+            memoryName = new ObjectName(DOMAIN + ":type=Memory");
+            server.registerMBean(new MemoryStats(memorySampler), memoryName);
+        } catch (JMException ex) {
+            StrangeEons.log.log(Level.WARNING, "unable to register memory bean", ex);
+            memoryName = null;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "Developer Tools metrics exporter");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::syncCaches, 0, SYNC_PERIOD, TimeUnit.SECONDS);
+    }
+
+    private void stop() {
+        executor.shutdownNow();
+        synchronized (cacheNames) {
+            for (ObjectName name : cacheNames.values()) {
+                unregister(name);
+            }
+            cacheNames.clear();
+        }
+        if (memoryName != null) {
+            unregister(memoryName);
+        }
+        CacheSampler.release();
+        MemorySampler.release();
+    }
+
+    /**
+     * Registers beans for new caches and unregisters those for caches that
+     * are no longer registered.
+     */
+    private void syncCaches() {
+        try {
+            syncCachesImpl();
+        } catch (Throwable t) {
+            // an exception would cancel the periodic task
+            StrangeEons.log.log(Level.WARNING, "cache bean update failed", t);
+        }
+    }
+
+    private void syncCachesImpl() {
+        final CacheMetrics[] caches = ResourceKit.getRegisteredCacheMetrics();
+        synchronized (cacheNames) {
+            Map<CacheMetrics, Boolean> current = new IdentityHashMap<>();
+            for (CacheMetrics cm : caches) {
+                current.put(cm, Boolean.TRUE);
+                if (!cacheNames.containsKey(cm)) {
+                    ObjectName name = registerCache(cm);
+                    if (name != null) {
+                        cacheNames.put(cm, name);
+                    }
+                }
+            }
+            for (Iterator<Map.Entry<CacheMetrics, ObjectName>> it = cacheNames.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<CacheMetrics, ObjectName> e = it.next();
+                if (!current.containsKey(e.getKey())) {
+                    unregister(e.getValue());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private ObjectName registerCache(CacheMetrics cm) {
+        final String base = cm.toString();
+        // two caches may share a description; number the later ones
+        for (int n = 1; n < 100; ++n) {
+            try {
+                String name = n == 1 ? base : base + " (" + n + ')';
+                ObjectName on = new ObjectName(DOMAIN + ":type=Cache,name=" + ObjectName.quote(name));
+                server.registerMBean(new CacheStats(cm, cacheSampler), on);
+                return on;
+            } catch (InstanceAlreadyExistsException ex) {
+                // try the next number
+            } catch (JMException ex) {
+                StrangeEons.log.log(Level.WARNING, "unable to register cache bean", ex);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void unregister(ObjectName name) {
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException ex) {
+            StrangeEons.log.log(Level.WARNING, null, ex);
+        }
+    }
+
+    private static final class CacheStats implements CacheStatsMXBean {
+
+        private final CacheMetrics cm;
+        private final CacheSampler sampler;
+
+        CacheStats(CacheMetrics cm, CacheSampler sampler) {
+            this.cm = cm;
+            this.sampler = sampler;
+        }
+
+        private CacheSampler.Stats stats() {
+            return sampler.getStats(cm);
+        }
+
+        @Override
+        public String getName() {
+            return cm.toString();
+        }
+
+        @Override
+        public String getContentType() {
+            return cm.getContentType().getName();
+        }
+
+        @Override
+        public int getItemCount() {
+            return cm.getItemCount();
+        }
+
+        @Override
+        public long getByteSize() {
+            return cm.getByteSize();
+        }
+
+        @Override
+        public long getEstimatedByteSize() {
+            return CacheSizer.getByteSize(cm);
+        }
+
+        @Override
+        public long getLoads() {
+            CacheSampler.Stats s = stats();
+            return s == null ? 0L : s.getLoads();
+        }
+
+        @Override
+        public long getEvictions() {
+            CacheSampler.Stats s = stats();
+            return s == null ? 0L : s.getEvictions();
+        }
+
+        @Override
+        public long getClears() {
+            CacheSampler.Stats s = stats();
+            return s == null ? 0L : s.getClears();
+        }
+
+        @Override
+        public long getLoadedBytes() {
+            CacheSampler.Stats s = stats();
+            return s == null ? 0L : s.getLoadedBytes();
+        }
+
+        @Override
+        public long getEvictedBytes() {
+            CacheSampler.Stats s = stats();
+            return s == null ? 0L : s.getEvictedBytes();
+        }
+
+        @Override
+        public double getLoadRate() {
+            CacheSampler.Stats s = stats();
+            return s == null ? 0d : s.getLoadRate();
+        }
+
+        @Override
+        public double getTurnover() {
+            CacheSampler.Stats s = stats();
+            return s == null ? -1d : s.getTurnover();
+        }
+
+        @Override
+        public int getBudget() {
+            return CacheBudget.getBudget(cm);
+        }
+
+        @Override
+        public boolean isClearSupported() {
+            return cm.isClearSupported();
+        }
+
+        @Override
+        public void clear() {
+            if (!cm.isClearSupported()) {
+                return;
+            }
+            // caches are not thread safe; clear on the EDT like everything else
+            try {
+                EventQueue.invokeAndWait(() -> CacheBudget.clear(cm, CacheSizer.getByteSize(cm), "cleared through JMX"));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (InvocationTargetException ex) {
+                StrangeEons.log.log(Level.WARNING, "unable to clear " + cm, ex.getCause());
+            }
+        }
+    }
+
+    private static final class MemoryStats implements MemoryStatsMXBean {
+
+        private final MemorySampler sampler;
+        private final SampleRing.Snapshot snapshot;
+        private final MemoryRates rates;
+
+        MemoryStats(MemorySampler sampler) {
+            this.sampler = sampler;
+            snapshot = sampler.getRing().createSnapshot(MemoryRates.DEFAULT_WINDOW + 1);
+            rates = new MemoryRates(sampler);
+        }
+
+        /**
+         * Returns the latest value of a sampler channel, refreshing the
+         * snapshot and rates if there are new samples.
+         */
+        private synchronized long latest(int channel) {
+            update();
+            return snapshot.size() == 0 ? -1L : snapshot.getLatest(channel);
+        }
+
+        private synchronized double rate(int which) {
+            update();
+            switch (which) {
+                case 0:
+                    return rates.getAllocationRate();
+                case 1:
+                    return rates.getCollectionOverhead();
+                default:
+                    return rates.getPromotionRate();
+            }
+        }
+
+        private void update() {
+            if (sampler.getRing().getCount() != snapshot.getCount()) {
+                sampler.getRing().snapshot(snapshot, MemoryRates.DEFAULT_WINDOW + 1);
+                rates.update(snapshot);
+            }
+        }
+
+        @Override
+        public long getHeapUsed() {
+            return latest(MemorySampler.HEAP_USED);
+        }
+
+        @Override
+        public long getHeapCommitted() {
+            return latest(MemorySampler.HEAP_COMMITTED);
+        }
+
+        @Override
+        public long getHeapMax() {
+            return latest(MemorySampler.HEAP_MAX);
+        }
+
+        @Override
+        public long getNonHeapUsed() {
+            return latest(MemorySampler.NONHEAP_USED);
+        }
+
+        @Override
+        public long getNonHeapCommitted() {
+            return latest(MemorySampler.NONHEAP_COMMITTED);
+        }
+
+        @Override
+        public int getThreadCount() {
+            return (int) latest(MemorySampler.THREADS);
+        }
+
+        @Override
+        public double getAllocationRate() {
+            return rate(0);
+        }
+
+        @Override
+        public double getCollectionOverhead() {
+            return rate(1);
+        }
+
+        @Override
+        public double getPromotionRate() {
+            return rate(2);
+        }
+
+        @Override
+        public long getTotalCacheBytes() {
+            long total = 0L;
+            for (CacheMetrics cm : ResourceKit.getRegisteredCacheMetrics()) {
+                total += Math.max(0L, CacheSizer.getByteSize(cm));
+            }
+            return total;
+        }
+    }
+}
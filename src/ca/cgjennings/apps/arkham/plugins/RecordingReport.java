@@ -0,0 +1,151 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The aggregated results of analyzing a flight recording: allocation sites,
+ * hot methods, and contended monitors, each ranked by weight. This class does
+ * not depend on the flight recorder API so that it can be used by the user
+ * interface even on JVMs without one.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class RecordingReport {
+
+    private final Map<String, Entry> allocations = new HashMap<>();
+    private final Map<String, Entry> tlabAllocations = new HashMap<>();
+    private final Map<String, Entry> methods = new HashMap<>();
+    private final Map<String, Entry> monitors = new HashMap<>();
+    private long durationMillis;
+    private long collections;
+    private long collectionPauseNanos;
+    private long executionSamples;
+
+    void addAllocation(String site, long bytes) {
+        add(allocations, site, bytes);
+    }
+
+    void addTlabAllocation(String site, long bytes) {
+        add(tlabAllocations, site, bytes);
+    }
+
+    void addExecutionSample(String method) {
+        add(methods, method, 1L);
+        ++executionSamples;
+    }
+
+    void addMonitorContention(String monitorClass, long nanos) {
+        add(monitors, monitorClass, nanos);
+    }
+
+    void addCollection(long pauseNanos) {
+        ++collections;
+        collectionPauseNanos += pauseNanos;
+    }
+
+    void setDuration(long millis) {
+        durationMillis = millis;
+    }
+
+    private static void add(Map<String, Entry> map, String key, long weight) {
+        Entry e = map.get(key);
+        if (e == null) {
+            e = new Entry(key);
+            map.put(key, e);
+        }
+        ++e.count;
+        e.weight += weight;
+    }
+
+    /**
+     * Returns the allocation sites with the most bytes allocated, where the
+     * weight of each entry is an estimate of the bytes allocated at that site.
+     * Allocation samples are used if the recording has any; otherwise the
+     * sites are estimated from TLAB allocations.
+     *
+     * @param limit the maximum number of entries
+     * @return the top allocation sites, heaviest first
+     */
+    public List<Entry> getTopAllocationSites(int limit) {
+        return top(allocations.isEmpty() ? tlabAllocations : allocations, limit);
+    }
+
+    /**
+     * Returns the methods that were most often found executing, where the
+     * weight of each entry is the number of samples.
+     *
+     * @param limit the maximum number of entries
+     * @return the hottest methods, hottest first
+     */
+    public List<Entry> getHotMethods(int limit) {
+        return top(methods, limit);
+    }
+
+    /**
+     * Returns the monitor classes with the longest total contention, where
+     * the weight of each entry is the time spent blocked in nanoseconds.
+     *
+     * @param limit the maximum number of entries
+     * @return the most contended monitors, most contended first
+     */
+    public List<Entry> getContendedMonitors(int limit) {
+        return top(monitors, limit);
+    }
+
+    private static List<Entry> top(Map<String, Entry> map, int limit) {
+        List<Entry> list = new ArrayList<>(map.values());
+        Collections.sort(list, (a, b) -> Long.compare(b.weight, a.weight));
+        return list.size() > limit ? new ArrayList<>(list.subList(0, limit)) : list;
+    }
+
+    public long getDuration() {
+        return durationMillis;
+    }
+
+    public long getCollectionCount() {
+        return collections;
+    }
+
+    public long getCollectionPauseNanos() {
+        return collectionPauseNanos;
+    }
+
+    public long getExecutionSampleCount() {
+        return executionSamples;
+    }
+
+    /**
+     * A single ranked item in a report.
+     */
+    static final class Entry {
+
+        private final String name;
+        private long count;
+        private long weight;
+
+        private Entry(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
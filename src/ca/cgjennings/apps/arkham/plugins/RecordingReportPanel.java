@@ -0,0 +1,123 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import ca.cgjennings.apps.arkham.ToolWindow;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dialog;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * Displays a {@link RecordingReport} produced from a flight recording made
+ * with the memory use tool.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class RecordingReportPanel extends JPanel {
+
+    private static final int ROWS = 50;
+
+    /**
+     * Shows a report in a new tool window.
+     *
+     * @param report the report to display
+     */
+    public static void showReport(RecordingReport report) {
+        ToolWindow tw = new ToolWindow(StrangeEons.getWindow(), "Recording Report", Dialog.ModalityType.MODELESS);
+        tw.setBody(new RecordingReportPanel(report));
+        tw.setSize(640, 400);
+        tw.setLocationRelativeTo(StrangeEons.getWindow());
+        tw.setVisible(true);
+    }
+
+    public RecordingReportPanel(RecordingReport report) {
+        super(new BorderLayout());
+        setBackground(Color.DARK_GRAY);
+
+        JLabel summary = new JLabel(String.format(
+                "%.1f s recorded    %,d collections (%.1f ms paused)    %,d execution samples",
+                report.getDuration() / 1000d, report.getCollectionCount(),
+                report.getCollectionPauseNanos() / 1e6d, report.getExecutionSampleCount()
+        ));
+        summary.setFont(summary.getFont().deriveFont(summary.getFont().getSize() - 1f));
+        summary.setForeground(Color.WHITE);
+        summary.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createMatteBorder(1, 0, 0, 0, Color.LIGHT_GRAY),
+                BorderFactory.createEmptyBorder(2, 4, 2, 4)
+        ));
+        add(summary, BorderLayout.SOUTH);
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Allocation Sites", createTable(
+                report.getTopAllocationSites(ROWS), "Type ← Site", "Samples", "MiB", 1024d * 1024d
+        ));
+        tabs.addTab("Hot Methods", createTable(
+                report.getHotMethods(ROWS), "Method", "Samples", "%", report.getExecutionSampleCount() / 100d
+        ));
+        tabs.addTab("Contended Monitors", createTable(
+                report.getContendedMonitors(ROWS), "Monitor Class", "Events", "ms Blocked", 1e6d
+        ));
+        add(tabs, BorderLayout.CENTER);
+    }
+
+    private JScrollPane createTable(final List<RecordingReport.Entry> entries, final String nameCol, final String countCol, final String weightCol, final double divisor) {
+        JTable table = new JTable(new AbstractTableModel() {
+            @Override
+            public int getRowCount() {
+                return entries.size();
+            }
+
+            @Override
+            public int getColumnCount() {
+                return 3;
+            }
+
+            @Override
+            public String getColumnName(int column) {
+                return column == 0 ? nameCol : column == 1 ? countCol : weightCol;
+            }
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == 0 ? String.class : column == 1 ? Long.class : Double.class;
+            }
+
+            @Override
+            public Object getValueAt(int row, int column) {
+                RecordingReport.Entry e = entries.get(row);
+                switch (column) {
+                    case 0:
+                        return e.getName();
+                    case 1:
+                        return e.getCount();
+                    default:
+                        return divisor <= 0d ? 0d : e.getWeight() / divisor;
+                }
+            }
+        });
+        table.setAutoCreateRowSorter(true);
+        table.setBackground(new Color(64, 64, 64));
+        table.setForeground(Color.WHITE);
+        table.setFont(table.getFont().deriveFont(table.getFont().getSize() - 1f));
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(400);
+        table.setDefaultRenderer(Double.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setHorizontalAlignment(RIGHT);
+                setText(String.format("%,.1f", (Double) value));
+            }
+        });
+        JScrollPane scroll = new JScrollPane(table);
+        scroll.setBorder(BorderFactory.createEmptyBorder());
+        return scroll;
+    }
+}
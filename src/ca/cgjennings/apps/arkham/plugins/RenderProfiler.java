@@ -0,0 +1,267 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.AbstractGameComponentEditor;
+import ca.cgjennings.apps.arkham.StrangeEons;
+import ca.cgjennings.apps.arkham.sheet.Sheet;
+import java.awt.Component;
+import java.awt.Container;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import javax.swing.JComponent;
+
+/**
+ * Times the preview redraws requested by the developer tools. While the
+ * Render Profiler tool is showing, {@link #redraw} requests the redraw and
+ * then has each of the editor's showing sheet viewers paint itself
+ * immediately, timing each one. This is the same paint that the redraw would
+ * otherwise cause a moment later, at the viewer's own resolution, so the
+ * sheets are not rendered any more often than usual; when the delayed repaint
+ * arrives, the sheet is unchanged and the viewer reuses its image. Sheets on
+ * hidden tabs are not painted, and so are not timed. When the profiler is not
+ * showing, {@link #redraw} simply requests the redraw.
+ *
+ * <p>
+ * All methods must be called from the event dispatch thread.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class RenderProfiler {
+
+    /**
+     * The number of recent redraws kept for the trend and for each sheet's
+     * percentiles.
+     */
+    public static final int HISTORY = 500;
+
+    private static boolean enabled;
+    private static final Map<String, Timings> sheets = new LinkedHashMap<>();
+    private static final Timings redraws = new Timings("All Sheets");
+
+    private RenderProfiler() {
+    }
+
+    /**
+     * Enables or disables profiling.
+     *
+     * @param enable if true, redraws will be timed
+     */
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Requests that an editor redraw its preview, timing the redraw if
+     * profiling is enabled.
+     *
+     * @param ed the editor to redraw
+     */
+    public static void redraw(AbstractGameComponentEditor<?> ed) {
+        ed.redrawPreview();
+        if (!enabled) {
+            return;
+        }
+
+        final Object editor = ed;
+        if (!(editor instanceof Container)) {
+            return;
+        }
+        List<JComponent> viewers = new ArrayList<>();
+        findViewers((Container) editor, viewers);
+        if (viewers.isEmpty()) {
+            return;
+        }
+        final String type = ed.getGameComponent() == null ? "" : ed.getGameComponent().getClass().getSimpleName() + ": ";
+        long total = 0L;
+        for (JComponent v : viewers) {
+            final Sheet<?> s = sheetOf(v);
+            final long start = System.nanoTime();
+            try {
+                v.paintImmediately(0, 0, v.getWidth(), v.getHeight());
+            } catch (RuntimeException ex) {
+                StrangeEons.log.log(Level.WARNING, "exception while profiling sheet", ex);
+                continue;
+            }
+            final long elapsed = System.nanoTime() - start;
+            total += elapsed;
+            final String key = type + s.getSheetTitle();
+            Timings t = sheets.get(key);
+            if (t == null) {
+                t = new Timings(key);
+                sheets.put(key, t);
+            }
+            t.add(elapsed);
+        }
+        redraws.add(total);
+    }
+
+    /**
+     * Adds the showing sheet viewers in a container to a list. A viewer is
+     * any component with a public <code>getSheet()</code> method that
+     * currently returns a sheet.
+     */
+    private static void findViewers(Container parent, List<JComponent> viewers) {
+        for (Component c : parent.getComponents()) {
+            if (!c.isShowing()) {
+                continue;
+            }
+            if (c instanceof JComponent && sheetOf((JComponent) c) != null) {
+                viewers.add((JComponent) c);
+            } else if (c instanceof Container) {
+                findViewers((Container) c, viewers);
+            }
+        }
+    }
+
+    private static Sheet<?> sheetOf(JComponent c) {
+        try {
+            Method m = c.getClass().getMethod("getSheet");
+            if (Sheet.class.isAssignableFrom(m.getReturnType())) {
+                return (Sheet<?>) m.invoke(c);
+            }
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
+            // not a sheet viewer
+        }
+        return null;
+    }
+
+    /**
+     * Returns the timings of complete redraws, that is, the sum of the times
+     * for each sheet in the redraw.
+     *
+     * @return the redraw timings
+     */
+    public static Timings getRedrawTimings() {
+        return redraws;
+    }
+
+    /**
+     * Returns the timings for each sheet that has been profiled, in the order
+     * they were first seen.
+     *
+     * @return a list of sheet timings
+     */
+    public static List<Timings> getSheetTimings() {
+        return new ArrayList<>(sheets.values());
+    }
+
+    /**
+     * Discards all timings.
+     */
+    public static void reset() {
+        sheets.clear();
+        redraws.clear();
+    }
+
+    /**
+     * The most recent times for one sheet, or for whole redraws.
+     */
+    static final class Timings {
+
+        private final String name;
+        private final long[] times = new long[HISTORY];
+        private long count;
+        private long max;
+        private long total;
+
+        private Timings(String name) {
+            this.name = name;
+        }
+
+        private void add(long nanos) {
+            times[(int) (count % HISTORY)] = nanos;
+            ++count;
+            total += nanos;
+            if (nanos > max) {
+                max = nanos;
+            }
+        }
+
+        private void clear() {
+            count = 0L;
+            max = 0L;
+            total = 0L;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of times recorded this session.
+         *
+         * @return the total number of timings
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the most recent time, in milliseconds.
+         *
+         * @return the latest time, or 0 if there are none
+         */
+        public double getLatest() {
+            return count == 0L ? 0d : times[(int) ((count - 1L) % HISTORY)] / 1e6d;
+        }
+
+        /**
+         * Returns the longest time this session, in milliseconds.
+         *
+         * @return the maximum time
+         */
+        public double getMax() {
+            return max / 1e6d;
+        }
+
+        /**
+         * Returns the mean time this session, in milliseconds.
+         *
+         * @return the mean time
+         */
+        public double getMean() {
+            return count == 0L ? 0d : total / 1e6d / count;
+        }
+
+        /**
+         * Returns a percentile of the recent times, in milliseconds.
+         *
+         * @param fraction the percentile, between 0 and 1
+         * @return the time that the given fraction of recent times did not
+         * exceed
+         */
+        public double getPercentile(double fraction) {
+            final long[] recent = getRecent();
+            if (recent.length == 0) {
+                return 0d;
+            }
+            Arrays.sort(recent);
+            final int i = (int) Math.min(recent.length - 1, Math.ceil(recent.length * fraction) - 1);
+            return recent[Math.max(0, i)] / 1e6d;
+        }
+
+        /**
+         * Returns the recent times in nanoseconds, oldest first.
+         *
+         * @return a copy of up to {@link #HISTORY} recent times
+         */
+        public long[] getRecent() {
+            final int n = (int) Math.min(count, HISTORY);
+            final long[] recent = new long[n];
+            final long first = count - n;
+            for (int i = 0; i < n; ++i) {
+                recent[i] = times[(int) ((first + i) % HISTORY)];
+            }
+            return recent;
+        }
+    }
+}
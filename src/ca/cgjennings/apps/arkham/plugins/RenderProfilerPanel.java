@@ -0,0 +1,242 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.AbstractGameComponentEditor;
+import ca.cgjennings.apps.arkham.StrangeEons;
+import ca.cgjennings.apps.arkham.StrangeEonsEditor;
+import ca.cgjennings.apps.arkham.ToolWindow;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * Shows the time taken to render each sheet when the preview is redrawn by the
+ * developer tools, such as when adjusting the corner radius or editing
+ * settings. Redraws can also be triggered from the window to measure the
+ * active editor directly. For each sheet, the table lists percentiles of the
+ * recent render times; the trend graph shows the total time of each redraw.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class RenderProfilerPanel extends JPanel implements DevToolProxy.UnloadablePanel {
+
+    private static final Color PANEL_BACKGROUND = new Color(64, 64, 64);
+    private static final int UPDATE_DELAY = 500;
+    private static final int REPEATS = 10;
+
+    private final JLabel summary = new JLabel(" ");
+    private final TimingModel model = new TimingModel();
+    private final Trend trend = new Trend();
+    private final Timer updateTimer;
+    private long shownCount = -1L;
+
+    public RenderProfilerPanel(ToolWindow tw) {
+        super(new BorderLayout());
+        setBackground(PANEL_BACKGROUND);
+        // only time redraws while the results can be seen
+        tw.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentShown(ComponentEvent e) {
+                RenderProfiler.setEnabled(true);
+                updateTimer.start();
+                update();
+            }
+
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                RenderProfiler.setEnabled(false);
+                updateTimer.stop();
+            }
+        });
+
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        controlPanel.setBackground(PANEL_BACKGROUND);
+        controlPanel.setBorder(BorderFactory.createMatteBorder(0, 0, 1, 0, new Color(128, 128, 128)));
+        JButton profileBtn = new JButton("Redraw Active Editor");
+        profileBtn.setToolTipText("Redraw the active editor " + REPEATS + " times");
+        profileBtn.addActionListener((e) -> {
+            StrangeEonsEditor ed = StrangeEons.getWindow().getActiveEditor();
+            if (ed instanceof AbstractGameComponentEditor) {
+                for (int i = 0; i < REPEATS; ++i) {
+                    RenderProfiler.redraw((AbstractGameComponentEditor<?>) ed);
+                }
+                update();
+            }
+        });
+        JButton resetBtn = new JButton("Reset");
+        resetBtn.addActionListener((e) -> {
+            RenderProfiler.reset();
+            update();
+        });
+        smallFont(profileBtn);
+        smallFont(resetBtn);
+        smallFont(summary);
+        summary.setForeground(new Color(192, 192, 192));
+        controlPanel.add(profileBtn);
+        controlPanel.add(resetBtn);
+        controlPanel.add(summary);
+        add(controlPanel, BorderLayout.PAGE_START);
+
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+        table.setBackground(PANEL_BACKGROUND);
+        table.setForeground(Color.WHITE);
+        table.setFillsViewportHeight(true);
+        smallFont(table);
+        table.getColumnModel().getColumn(0).setPreferredWidth(220);
+        table.setDefaultRenderer(Double.class, new DefaultTableCellRenderer() {
+            @Override
+            protected void setValue(Object value) {
+                setHorizontalAlignment(RIGHT);
+                setText(String.format("%,.1f", (Double) value));
+            }
+        });
+        JScrollPane scroll = new JScrollPane(table);
+        scroll.setBorder(BorderFactory.createEmptyBorder());
+        add(scroll, BorderLayout.CENTER);
+        add(trend, BorderLayout.PAGE_END);
+
+        updateTimer = new Timer(UPDATE_DELAY, (e) -> update());
+        update();
+    }
+
+    private static void smallFont(JComponent c) {
+        c.setFont(c.getFont().deriveFont(c.getFont().getSize() - 1f));
+    }
+
+    private void update() {
+        RenderProfiler.Timings all = RenderProfiler.getRedrawTimings();
+        if (all.getCount() == shownCount) {
+            return;
+        }
+        shownCount = all.getCount();
+        summary.setText(all.getCount() == 0L
+                ? "No redraws yet"
+                : String.format("%,d redraws    last %.1f ms    mean %.1f ms    p90 %.1f ms",
+                        all.getCount(), all.getLatest(), all.getMean(), all.getPercentile(0.9d))
+        );
+        model.setTimings(RenderProfiler.getSheetTimings());
+        trend.repaint();
+    }
+
+    @Override
+    public void onUnload() {
+        updateTimer.stop();
+        RenderProfiler.setEnabled(false);
+    }
+
+    private static final class TimingModel extends AbstractTableModel {
+
+        private final String[] names = new String[]{"Sheet", "Renders", "Last ms", "Mean ms", "p50 ms", "p90 ms", "p99 ms", "Max ms"};
+        private List<RenderProfiler.Timings> timings = Collections.emptyList();
+
+        void setTimings(List<RenderProfiler.Timings> timings) {
+            this.timings = timings;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return timings.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return names.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return names[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 0 ? String.class : column == 1 ? Long.class : Double.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            RenderProfiler.Timings t = timings.get(row);
+            switch (column) {
+                case 0:
+                    return t.getName();
+                case 1:
+                    return t.getCount();
+                case 2:
+                    return t.getLatest();
+                case 3:
+                    return t.getMean();
+                case 4:
+                    return t.getPercentile(0.5d);
+                case 5:
+                    return t.getPercentile(0.9d);
+                case 6:
+                    return t.getPercentile(0.99d);
+                default:
+                    return t.getMax();
+            }
+        }
+    }
+
+    /**
+     * Draws the total time of each recent redraw as a bar, newest on the
+     * right, with a line at the mean.
+     */
+    private static final class Trend extends JComponent {
+
+        Trend() {
+            setOpaque(true);
+            setPreferredSize(new Dimension(200, 48));
+            setToolTipText("Total render time of recent redraws");
+        }
+
+        @Override
+        protected void paintComponent(Graphics g1) {
+            Graphics2D g = (Graphics2D) g1;
+            final int w = getWidth();
+            final int h = getHeight();
+            g.setPaint(Color.DARK_GRAY);
+            g.fillRect(0, 0, w, h);
+
+            RenderProfiler.Timings all = RenderProfiler.getRedrawTimings();
+            final long[] recent = all.getRecent();
+            if (recent.length == 0) {
+                return;
+            }
+            long max = 1L;
+            for (long t : recent) {
+                max = Math.max(max, t);
+            }
+            final int n = Math.min(recent.length, w);
+            final int first = recent.length - n;
+            final double barW = (double) w / Math.max(n, 60);
+            final double scale = (h - 2) / (double) max;
+            g.setPaint(Color.ORANGE);
+            for (int i = 0; i < n; ++i) {
+                final int x = (int) (w - (n - i) * barW);
+                final int bh = Math.max(1, (int) (recent[first + i] * scale));
+                g.fillRect(x, h - bh, Math.max(1, (int) barW - 1), bh);
+            }
+            g.setPaint(Color.LIGHT_GRAY);
+            final int meanY = h - (int) (all.getMean() * 1e6d * scale);
+            g.drawLine(0, meanY, w, meanY);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * An append-only, memory-mapped file of timestamped samples, used to keep the
+ * complete history of a session without holding it on the heap. Each sample
+ * is stored as the zig-zag, variable-length encoded difference between each
+ * value and the corresponding value in the previous sample, so slowly
+ * changing channels typically cost a byte or two per sample.
+ *
+ * <p>
+ * The file is mapped in fixed-size segments. Each segment starts from a
+ * zero base, so that readers can skip segments that lie entirely before the
+ * time range they are interested in. Like {@link SampleRing}, the log
+ * supports a single writer thread and any number of readers without locking.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class SampleLog implements Closeable {
+
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final File file;
+    private final int channels;
+    private final int maxRecordSize;
+
+    // writer state
+    private final long[] prev;
+    private long prevTime;
+    private int pos;
+
+    // segments are appended to these arrays; published by committed
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[8];
+    private volatile int[] segmentLengths = new int[8];
+    private volatile long[] segmentStartTimes = new long[8];
+    // (segment index << 32) | bytes used in that segment
+    private volatile long committed = -1L;
+
+    /**
+     * Creates a new log file, replacing the file if it exists.
+     *
+     * @param file the file to write
+     * @param channels the number of values in each sample
+     * @throws IOException if the file cannot be created
+     */
+    public SampleLog(File file, int channels) throws IOException {
+        this.file = file;
+        this.channels = channels;
+        // a varint-encoded long takes up to 10 bytes
+        maxRecordSize = (channels + 1) * 10;
+        prev = new long[channels];
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0L);
+        channel = raf.getChannel();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getChannelCount() {
+        return channels;
+    }
+
+    /**
+     * Returns the number of bytes written to the log so far.
+     *
+     * @return the size of the encoded samples
+     */
+    public long getByteSize() {
+        final long c = committed;
+        return c < 0 ? 0L : (c >>> 32) * SEGMENT_SIZE + (int) c;
+    }
+
+    /**
+     * Appends a sample to the log. This must only be called from the writer
+     * thread.
+     *
+     * @param time the sample time, in milliseconds
+     * @param values the channel values; must have at least as many elements
+     * as there are channels
+     * @throws IOException if the file cannot be extended
+     */
+    public void append(long time, long[] values) throws IOException {
+        long c = committed;
+        int seg = (int) (c >>> 32);
+        MappedByteBuffer buff;
+        if (c < 0 || SEGMENT_SIZE - pos < maxRecordSize) {
+            if (c >= 0) {
+                segmentLengths[seg] = pos;
+            }
+            seg = c < 0 ? 0 : seg + 1;
+            buff = startSegment(seg, time);
+        } else {
+            buff = segments[seg];
+        }
+
+        pos = putVarLong(buff, pos, time - prevTime);
+        prevTime = time;
+        for (int i = 0; i < channels; ++i) {
+            pos = putVarLong(buff, pos, values[i] - prev[i]);
+            prev[i] = values[i];
+        }
+        committed = ((long) seg << 32) | pos;
+    }
+
+    private MappedByteBuffer startSegment(int seg, long time) throws IOException {
+        if (seg == segments.length) {
+            final int n = seg * 2;
+            segmentLengths = Arrays.copyOf(segmentLengths, n);
+            segmentStartTimes = Arrays.copyOf(segmentStartTimes, n);
+            segments = Arrays.copyOf(segments, n);
+        }
+        MappedByteBuffer buff = channel.map(FileChannel.MapMode.READ_WRITE, (long) seg * SEGMENT_SIZE, SEGMENT_SIZE);
+        segments[seg] = buff;
+        segmentStartTimes[seg] = time;
+        Arrays.fill(prev, 0L);
+        prevTime = 0L;
+        pos = 0;
+        return buff;
+    }
+
+    private static int putVarLong(MappedByteBuffer b, int pos, long v) {
+        // zig-zag encode so that small negative deltas are also short
+        v = (v << 1) ^ (v >> 63);
+        while ((v & ~0x7fL) != 0L) {
+            b.put(pos++, (byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        b.put(pos++, (byte) v);
+        return pos;
+    }
+
+    /**
+     * Receives samples read from a log.
+     */
+    static interface Visitor {
+
+        /**
+         * Called for each sample in the requested time range, in order. The
+         * values array is reused between calls.
+         *
+         * @param time the sample time
+         * @param values the sample values
+         */
+        void sample(long time, long[] values);
+    }
+
+    /**
+     * Returns the time of the first sample in the log, or -1 if the log is
+     * empty.
+     *
+     * @return the time the log began
+     */
+    public long getStartTime() {
+        return committed < 0 ? -1L : segmentStartTimes[0];
+    }
+
+    /**
+     * Decodes the samples committed so far and passes those whose time falls
+     * in the specified range to a visitor. Segments that end before the start
+     * of the range are skipped without being decoded.
+     *
+     * @param from the earliest time to include
+     * @param to the latest time to include
+     * @param v the visitor to receive the samples
+     */
+    public void scan(long from, long to, Visitor v) {
+        final long c = committed;
+        if (c < 0) {
+            return;
+        }
+        final int lastSeg = (int) (c >>> 32);
+        final int lastLen = (int) c;
+        final MappedByteBuffer[] segs = segments;
+        final int[] lens = segmentLengths;
+        final long[] starts = segmentStartTimes;
+
+        final long[] values = new long[channels];
+        final int[] cursor = new int[1];
+        for (int s = 0; s <= lastSeg; ++s) {
+            if (s < lastSeg && starts[s + 1] < from) {
+                continue;
+            }
+            if (starts[s] > to) {
+                break;
+            }
+            final MappedByteBuffer b = segs[s];
+            final int len = s == lastSeg ? lastLen : lens[s];
+            Arrays.fill(values, 0L);
+            long time = 0L;
+            cursor[0] = 0;
+            while (cursor[0] < len) {
+                time += getVarLong(b, cursor);
+                for (int i = 0; i < channels; ++i) {
+                    values[i] += getVarLong(b, cursor);
+                }
+                if (time > to) {
+                    return;
+                }
+                if (time >= from) {
+                    v.sample(time, values);
+                }
+            }
+        }
+    }
+
+    private static long getVarLong(MappedByteBuffer b, int[] cursor) {
+        int pos = cursor[0];
+        long v = 0L;
+        int shift = 0;
+        byte x;
+        do {
+            x = b.get(pos++);
+            v |= (long) (x & 0x7f) << shift;
+            shift += 7;
+        } while (x < 0);
+        cursor[0] = pos;
+        return (v >>> 1) ^ -(v & 1L);
+    }
+
+    /**
+     * Closes the log file. The log must not be used after it is closed.
+     *
+     * @throws IOException if an error occurs while closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,198 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+/**
+ * A fixed-capacity ring buffer of timestamped samples, where each sample
+ * consists of one or more <code>long</code> channels. The buffer supports a
+ * single writer thread and any number of reader threads without locking:
+ * readers copy the samples they need and then check that the writer did not
+ * overwrite any of them while the copy was in progress, retrying if it did.
+ * No objects are allocated when adding samples or taking snapshots into an
+ * existing {@link Snapshot}.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class SampleRing {
+
+    private final int capacity;
+    private final int channels;
+    private final long[] times;
+    private final long[] data;
+    // total number of samples ever written; publishes the slots to readers
+    private volatile long count;
+
+    /**
+     * Creates a new ring that holds up to <code>capacity</code> samples of
+     * <code>channels</code> values each.
+     *
+     * @param capacity the maximum number of samples retained
+     * @param channels the number of values in each sample
+     */
+    public SampleRing(int capacity, int channels) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity < 2");
+        }
+        if (channels < 1) {
+            throw new IllegalArgumentException("channels < 1");
+        }
+        this.capacity = capacity;
+        this.channels = channels;
+        times = new long[capacity];
+        data = new long[capacity * channels];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getChannelCount() {
+        return channels;
+    }
+
+    /**
+     * Returns the total number of samples that have ever been added. This
+     * increases monotonically and can be used to cheaply detect new samples.
+     *
+     * @return the number of samples added to the ring
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of samples currently held by the ring.
+     *
+     * @return the number of samples available to a snapshot
+     */
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    /**
+     * Adds a new sample, overwriting the oldest sample if the ring is full.
+     * This must only be called from the writer thread.
+     *
+     * @param time the time of the sample, in milliseconds
+     * @param values the channel values; must have at least as many elements
+     * as there are channels
+     */
+    public void add(long time, long[] values) {
+        final long n = count;
+        final int slot = (int) (n % capacity);
+        times[slot] = time;
+        System.arraycopy(values, 0, data, slot * channels, channels);
+        count = n + 1;
+    }
+
+    /**
+     * Copies up to the <code>max</code> most recent samples into a snapshot.
+     * The snapshot will be consistent: if the writer overwrites any of the
+     * copied samples during the copy, the copy is repeated. At most
+     * <code>capacity-1</code> samples can be copied, since the slot after the
+     * newest sample may be in the process of being overwritten.
+     *
+     * @param s the snapshot to fill in
+     * @param max the maximum number of samples to copy
+     * @return the snapshot that was passed in
+     */
+    public Snapshot snapshot(Snapshot s, int max) {
+        max = Math.min(Math.min(max, s.capacity), capacity - 1);
+        for (;;) {
+            final long end = count;
+            final int n = (int) Math.min(Math.min(end, capacity), max);
+            final long start = end - n;
+            for (int i = 0; i < n; ++i) {
+                final int slot = (int) ((start + i) % capacity);
+                s.times[i] = times[slot];
+                System.arraycopy(data, slot * channels, s.data, i * channels, channels);
+            }
+            // if the writer has not reached the oldest copied slot, the copy is good
+            if (count - start < capacity) {
+                s.size = n;
+                s.count = end;
+                return s;
+            }
+        }
+    }
+
+    /**
+     * Creates a snapshot that can hold up to <code>capacity</code> samples
+     * from this ring.
+     *
+     * @param capacity the maximum number of samples the snapshot can hold
+     * @return a new, empty snapshot
+     */
+    public Snapshot createSnapshot(int capacity) {
+        return new Snapshot(Math.min(capacity, this.capacity), channels);
+    }
+
+    /**
+     * Creates a snapshot that can hold up to <code>capacity</code> samples
+     * from any ring with the given number of channels.
+     *
+     * @param capacity the maximum number of samples the snapshot can hold
+     * @param channels the number of values in each sample
+     * @return a new, empty snapshot
+     */
+    public static Snapshot createSnapshot(int capacity, int channels) {
+        return new Snapshot(capacity, channels);
+    }
+
+    /**
+     * A reader-owned copy of some of the most recent samples in a ring.
+     * Samples are ordered from oldest (index 0) to newest.
+     */
+    static final class Snapshot {
+
+        private final int capacity;
+        private final int channels;
+        private final long[] times;
+        private final long[] data;
+        private int size;
+        private long count;
+
+        private Snapshot(int capacity, int channels) {
+            this.capacity = capacity;
+            this.channels = channels;
+            times = new long[capacity];
+            data = new long[capacity * channels];
+        }
+
+        /**
+         * Returns the number of samples in the snapshot.
+         *
+         * @return the number of valid samples
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the ring's total sample count at the time the snapshot was
+         * taken.
+         *
+         * @return the ring count when this snapshot was filled in
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public long getTime(int sample) {
+            return times[sample];
+        }
+
+        public long get(int sample, int channel) {
+            return data[sample * channels + channel];
+        }
+
+        /**
+         * Returns the value of a channel in the newest sample, or 0 if the
+         * snapshot is empty.
+         *
+         * @param channel the channel to read
+         * @return the latest value of the channel
+         */
+        public long getLatest(int channel) {
+            return size == 0 ? 0L : data[(size - 1) * channels + channel];
+        }
+    }
+}
@@ -653,7 +653,7 @@ final class SettingExplorerPanel extends javax.swing.JPanel {
                     if (editMayAffectEditedComponent(key)) {
                         StrangeEonsEditor ed = StrangeEons.getActiveEditor();
                         if (ed instanceof AbstractGameComponentEditor) {
-                            ((AbstractGameComponentEditor) ed).redrawPreview();
+                            RenderProfiler.redraw((AbstractGameComponentEditor<?>) ed);
                         }
                     }
                 }
@@ -0,0 +1,83 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Field;
+import java.util.logging.Level;
+
+/**
+ * A Java agent that lets the {@link SizeEstimator} measure exact object
+ * sizes. To use it, package this class in a JAR whose manifest names it as
+ * the <code>Premain-Class</code> and start the application with
+ * <code>-javaagent:</code><i>path-to-jar</i>.
+ *
+ * <p>
+ * The agent is loaded by the system class loader while the plug-in has a
+ * class loader of its own, so the plug-in's copy of this class is not the
+ * one the VM called. The agent keeps its {@link Instrumentation} instance in
+ * a static field, and the plug-in reads that field from the system class
+ * loader's copy of the class by reflection.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+public final class SizeAgent {
+
+    private static final String FIELD = "instrumentation";
+
+    // set in the system class loader's copy of this class
+    private static volatile Instrumentation instrumentation;
+
+    private SizeAgent() {
+    }
+
+    /**
+     * Called by the VM when the agent is loaded at startup.
+     *
+     * @param args the agent arguments (ignored)
+     * @param inst the instrumentation instance
+     */
+    public static void premain(String args, Instrumentation inst) {
+        instrumentation = inst;
+    }
+
+    /**
+     * Called by the VM when the agent is attached to a running application.
+     *
+     * @param args the agent arguments (ignored)
+     * @param inst the instrumentation instance
+     */
+    public static void agentmain(String args, Instrumentation inst) {
+        premain(args, inst);
+    }
+
+    /**
+     * Returns the instrumentation instance held by the agent, or
+     * <code>null</code> if no agent was loaded. This returns an
+     * <code>Object</code> so that the agent class does not refer to other
+     * plug-in classes, which are not in the agent's JAR.
+     *
+     * @return the instrumentation instance, or <code>null</code>
+     */
+    static Object getInstrumentation() {
+        try {
+            Class<?> agent = Class.forName(SizeAgent.class.getName(), true, ClassLoader.getSystemClassLoader());
+            Field f = agent.getDeclaredField(FIELD);
+            f.setAccessible(true);
+            return f.get(null);
+        } catch (ClassNotFoundException ex) {
+            // the agent JAR is not on the class path
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            StrangeEons.log.log(Level.WARNING, "unable to read agent instrumentation", ex);
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether an agent has published an instrumentation instance.
+     *
+     * @return true if exact sizes are available
+     */
+    static boolean isAvailable() {
+        return getInstrumentation() != null;
+    }
+}
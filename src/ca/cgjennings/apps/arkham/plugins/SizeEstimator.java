@@ -0,0 +1,369 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.awt.Component;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.instrument.Instrumentation;
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * Estimates the memory used by cached objects. Images are measured by the
+ * size of their pixel data; other objects by walking the graph of objects
+ * reachable from them and adding up their approximate shallow sizes.
+ *
+ * <p>
+ * Shallow sizes assume a 64-bit VM with compressed object pointers: a 12 byte
+ * header, 4 byte references, and sizes rounded up to 8 bytes. The walk does
+ * not follow references to classes, class loaders, threads, or UI components,
+ * since these are shared with the rest of the application and would
+ * otherwise swamp the result. It also stops after visiting
+ * {@link #MAX_OBJECTS} objects, in which case the estimate is a lower bound.
+ * When the fields of an object cannot be read due to module access rules,
+ * strings, maps, and collections are measured through their public
+ * interface; other such objects contribute their shallow size only.
+ *
+ * <p>
+ * The shallow size of each object is measured by a {@link ShallowSizer}.
+ * When a Java agent has published an {@link java.lang.instrument.Instrumentation}
+ * instance (see {@link SizeAgent}), the default sizer asks the VM for exact
+ * shallow sizes; otherwise it computes them from the field layout as
+ * described above.
+ *
+ * <p>
+ * An estimator is not thread safe, but it may be used from any thread. It
+ * caches the field layout of the classes it has seen, so reusing one
+ * estimator for many objects is faster than creating a new one for each.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class SizeEstimator {
+
+    /**
+     * The maximum number of objects visited when estimating one object.
+     */
+    public static final int MAX_OBJECTS = 100_000;
+
+    private static final int HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    private static ShallowSizer defaultSizer;
+
+    private final Map<Class<?>, Layout> layouts = new HashMap<>();
+    private final ShallowSizer sizer;
+    private boolean truncated;
+
+    /**
+     * Creates an estimator that uses the default shallow sizer.
+     */
+    public SizeEstimator() {
+        this(getDefaultSizer());
+    }
+
+    /**
+     * Creates an estimator that uses the specified shallow sizer.
+     *
+     * @param sizer the sizer used to measure each object, or <code>null</code>
+     * to compute sizes from the field layout
+     */
+    public SizeEstimator(ShallowSizer sizer) {
+        this.sizer = sizer;
+    }
+
+    /**
+     * Measures the shallow size of a single object, that is, the size of the
+     * object itself not counting the objects it refers to. The estimator
+     * decides which objects to measure.
+     */
+    @FunctionalInterface
+    interface ShallowSizer {
+
+        /**
+         * Returns the shallow size of an object or array.
+         *
+         * @param o the object to measure
+         * @return the size in bytes
+         */
+        long getShallowSize(Object o);
+    }
+
+    /**
+     * Returns the sizer used by new estimators that do not specify one. If no
+     * default has been set, this is an instrumentation-based sizer when an
+     * agent is available, or <code>null</code> to compute sizes from the
+     * field layout.
+     *
+     * @return the default sizer, or <code>null</code>
+     */
+    public static synchronized ShallowSizer getDefaultSizer() {
+        if (defaultSizer == null) {
+            defaultSizer = createInstrumentedSizer();
+        }
+        return defaultSizer;
+    }
+
+    /**
+     * Returns a sizer that uses the instrumentation instance published by
+     * the {@link SizeAgent}, or <code>null</code> if there is none.
+     */
+    private static ShallowSizer createInstrumentedSizer() {
+        try {
+            final Object inst = SizeAgent.getInstrumentation();
+            if (inst instanceof Instrumentation) {
+                return ((Instrumentation) inst)::getObjectSize;
+            }
+        } catch (LinkageError e) {
+            // the runtime does not include the java.instrument module
+            StrangeEons.log.log(Level.INFO, "instrumentation is not available", e);
+        }
+        return null;
+    }
+
+    /**
+     * Sets the sizer used by new estimators that do not specify one.
+     *
+     * @param sizer the new default, or <code>null</code> to restore the
+     * automatically chosen sizer
+     */
+    public static synchronized void setDefaultSizer(ShallowSizer sizer) {
+        defaultSizer = sizer;
+    }
+
+    /**
+     * Returns whether shallow sizes are measured exactly by the VM.
+     *
+     * @return true if an instrumentation agent is in use
+     */
+    public static boolean isExact() {
+        return SizeAgent.isAvailable();
+    }
+
+    /**
+     * Returns an estimate of the number of bytes used by an object. A
+     * {@link Reference} is measured by its referent.
+     *
+     * @param o the object to measure
+     * @return the estimated size in bytes
+     */
+    public long estimate(Object o) {
+        truncated = false;
+        if (o instanceof Reference) {
+            o = ((Reference<?>) o).get();
+        }
+        if (o == null) {
+            return 0L;
+        }
+        if (o instanceof Image) {
+            return estimateImage((Image) o);
+        }
+        return estimateGraph(o);
+    }
+
+    /**
+     * Returns whether the most recent estimate stopped before visiting every
+     * reachable object.
+     *
+     * @return true if the last estimate is a lower bound
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns the size of an image's pixel data.
+     *
+     * @param im the image to measure
+     * @return the estimated size in bytes, or -1 if the image is not loaded
+     */
+    public static long estimateImage(Image im) {
+        if (im instanceof BufferedImage) {
+            DataBuffer db = ((BufferedImage) im).getRaster().getDataBuffer();
+            final long bytesPerElement = DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+            return (long) db.getSize() * db.getNumBanks() * bytesPerElement;
+        }
+        // assume other images are stored as 32-bit pixels
+        final int w = im.getWidth(null);
+        final int h = im.getHeight(null);
+        return w < 0 || h < 0 ? -1L : 4L * w * h;
+    }
+
+    private long estimateGraph(Object root) {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        seen.add(root);
+        pending.add(root);
+        long total = 0L;
+        while (!pending.isEmpty()) {
+            if (seen.size() > MAX_OBJECTS) {
+                truncated = true;
+                break;
+            }
+            final Object o = pending.poll();
+            final Class<?> type = o.getClass();
+            if (type.isArray()) {
+                total += visitArray(o, type.getComponentType(), seen, pending);
+                continue;
+            }
+            if (o instanceof Image) {
+                // the pixel data would be counted again if the image were walked
+                total += Math.max(0L, estimateImage((Image) o));
+                continue;
+            }
+            Layout layout = layout(type);
+            total += sizer == null ? layout.shallowSize : sizer.getShallowSize(o);
+            if (layout.closed) {
+                total += visitClosed(o, seen, pending);
+                continue;
+            }
+            for (Field f : layout.references) {
+                try {
+                    enqueue(f.get(o), seen, pending);
+                } catch (ReflectiveOperationException | RuntimeException ex) {
+                    // field changed or became inaccessible; count it as empty
+                }
+            }
+        }
+        return total;
+    }
+
+    private long visitArray(Object array, Class<?> componentType, Set<Object> seen, ArrayDeque<Object> pending) {
+        final int length = Array.getLength(array);
+        if (componentType.isPrimitive()) {
+            return sizer == null ? align(ARRAY_HEADER + (long) length * primitiveSize(componentType)) : sizer.getShallowSize(array);
+        }
+        final Object[] elements = (Object[]) array;
+        for (int i = 0; i < length; ++i) {
+            enqueue(elements[i], seen, pending);
+        }
+        return sizer == null ? align(ARRAY_HEADER + (long) length * REFERENCE) : sizer.getShallowSize(array);
+    }
+
+    /**
+     * Estimates the internals of an object whose fields cannot be read, such
+     * as the platform collections, by way of its public interface.
+     */
+    private static long visitClosed(Object o, Set<Object> seen, ArrayDeque<Object> pending) {
+        if (o instanceof CharSequence) {
+            // assume the worst case of two bytes per character
+            return align(ARRAY_HEADER + 2L * ((CharSequence) o).length());
+        }
+        if (o instanceof Map) {
+            // a table slot and a node of four fields per entry
+            final Map<?, ?> m = (Map<?, ?>) o;
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                enqueue(e.getKey(), seen, pending);
+                enqueue(e.getValue(), seen, pending);
+            }
+            return m.size() * (REFERENCE * 2L + align(HEADER + 4 * REFERENCE));
+        }
+        if (o instanceof Collection) {
+            final Collection<?> c = (Collection<?>) o;
+            for (Object element : c) {
+                enqueue(element, seen, pending);
+            }
+            return align(ARRAY_HEADER + (long) c.size() * REFERENCE);
+        }
+        return 0L;
+    }
+
+    private static void enqueue(Object o, Set<Object> seen, ArrayDeque<Object> pending) {
+        if (o == null || isShared(o)) {
+            return;
+        }
+        if (seen.add(o)) {
+            pending.add(o);
+        }
+    }
+
+    /**
+     * Returns whether an object belongs to the application as a whole rather
+     * than to the object being measured.
+     */
+    private static boolean isShared(Object o) {
+        return o instanceof Class
+                || o instanceof ClassLoader
+                || o instanceof Thread
+                || o instanceof Component;
+    }
+
+    private Layout layout(Class<?> type) {
+        Layout layout = layouts.get(type);
+        if (layout == null) {
+            layout = new Layout(type);
+            layouts.put(type, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * The shallow size of a class and the reference fields to follow.
+     */
+    private static final class Layout {
+
+        final long shallowSize;
+        final Field[] references;
+        // true if some reference fields could not be made accessible
+        final boolean closed;
+
+        Layout(Class<?> type) {
+            long size = HEADER;
+            boolean inaccessible = false;
+            List<Field> refs = new ArrayList<>();
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field f : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers())) {
+                        continue;
+                    }
+                    final Class<?> ft = f.getType();
+                    if (ft.isPrimitive()) {
+                        size += primitiveSize(ft);
+                    } else {
+                        size += REFERENCE;
+                        try {
+                            f.setAccessible(true);
+                            refs.add(f);
+                        } catch (RuntimeException ex) {
+                            // not open to us; count the reference only
+                            inaccessible = true;
+                        }
+                    }
+                }
+            }
+            shallowSize = align(size);
+            references = refs.toArray(new Field[refs.size()]);
+            closed = inaccessible;
+        }
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7L) & ~7L;
+    }
+}
@@ -0,0 +1,329 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * Lists the live threads with their recent CPU use, time spent blocked and
+ * waiting, and the lock each is waiting on, ranked by CPU use. Deadlocked
+ * threads are highlighted. This makes it easy to see whether the event
+ * dispatch thread or a worker thread is saturated.
+ *
+ * <p>
+ * Threads are sampled in the background once per sampler period, but only
+ * while the panel is showing.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class ThreadsPanel extends JPanel {
+
+    private static final Color PANEL_BACKGROUND = new Color(64, 64, 64);
+    private static final Color DEADLOCKED = new Color(255, 107, 107);
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final boolean cpuSupported;
+    private final boolean contentionSupported;
+    private final boolean contentionWasEnabled;
+
+    private final JLabel summary = new JLabel(" ");
+    private final JTable table = new JTable();
+    private final ThreadModel model = new ThreadModel();
+    private final ExecutorService worker;
+    private final Timer updateTimer;
+
+    // sampler state, only accessed from the worker thread
+    private Map<Long, Long> prevCpu = new HashMap<>();
+    private long prevWallTime;
+
+    public ThreadsPanel() {
+        super(new BorderLayout());
+        setBackground(PANEL_BACKGROUND);
+
+        cpuSupported = threadBean.isThreadCpuTimeSupported();
+        if (cpuSupported && !threadBean.isThreadCpuTimeEnabled()) {
+            threadBean.setThreadCpuTimeEnabled(true);
+        }
+        contentionSupported = threadBean.isThreadContentionMonitoringSupported();
+        contentionWasEnabled = contentionSupported && threadBean.isThreadContentionMonitoringEnabled();
+
+        summary.setFont(summary.getFont().deriveFont(summary.getFont().getSize() - 1f));
+        summary.setForeground(Color.WHITE);
+        summary.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createMatteBorder(0, 0, 1, 0, new Color(128, 128, 128)),
+                BorderFactory.createEmptyBorder(2, 4, 2, 4)
+        ));
+        add(summary, BorderLayout.PAGE_START);
+
+        table.setModel(model);
+        table.setAutoCreateRowSorter(true);
+        table.getRowSorter().setSortKeys(Collections.singletonList(new RowSorter.SortKey(2, SortOrder.DESCENDING)));
+        table.setBackground(PANEL_BACKGROUND);
+        table.setForeground(Color.WHITE);
+        table.setFont(table.getFont().deriveFont(table.getFont().getSize() - 1f));
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(200);
+        table.getColumnModel().getColumn(8).setPreferredWidth(200);
+        DefaultTableCellRenderer renderer = new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+                super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                if (value instanceof Number) {
+                    setHorizontalAlignment(RIGHT);
+                    if (value instanceof Double) {
+                        setText(String.format("%,.1f", (Double) value));
+                    } else {
+                        setText(String.format("%,d", ((Number) value).longValue()));
+                    }
+                } else {
+                    setHorizontalAlignment(LEFT);
+                }
+                if (!isSelected) {
+                    ThreadRow r = model.rows.get(table.convertRowIndexToModel(row));
+                    setForeground(r.deadlocked ? DEADLOCKED : table.getForeground());
+                }
+                return this;
+            }
+        };
+        table.setDefaultRenderer(Object.class, renderer);
+        table.setDefaultRenderer(Double.class, renderer);
+        table.setDefaultRenderer(Long.class, renderer);
+        JScrollPane scroll = new JScrollPane(table);
+        scroll.setBorder(BorderFactory.createEmptyBorder());
+        add(scroll, BorderLayout.CENTER);
+
+        worker = Executors.newSingleThreadExecutor((r) -> {
+            Thread t = new Thread(r, "Developer Tools thread sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        updateTimer = new Timer(MemorySampler.PERIOD, (e) -> {
+            if (isShowing()) {
+                worker.submit(this::sample);
+            }
+        });
+        updateTimer.setInitialDelay(0);
+    }
+
+    /**
+     * Starts sampling threads. Contention monitoring, which is needed for
+     * blocked and waited times, is enabled while sampling.
+     */
+    public void start() {
+        if (contentionSupported) {
+            threadBean.setThreadContentionMonitoringEnabled(true);
+        }
+        updateTimer.start();
+    }
+
+    /**
+     * Stops sampling and restores the previous contention monitoring setting.
+     */
+    public void stop() {
+        updateTimer.stop();
+        if (contentionSupported && !contentionWasEnabled) {
+            threadBean.setThreadContentionMonitoringEnabled(false);
+        }
+    }
+
+    /**
+     * Stops sampling and releases the background thread.
+     */
+    public void dispose() {
+        stop();
+        worker.shutdownNow();
+    }
+
+    private static final class ThreadRow {
+
+        String name;
+        Thread.State state;
+        double cpuPercent;
+        long cpuMillis;
+        long blockedCount, blockedMillis;
+        long waitedCount, waitedMillis;
+        String lock;
+        boolean deadlocked;
+    }
+
+    /**
+     * Takes one sample of all threads; called from the worker thread.
+     */
+    private void sample() {
+        try {
+            final long now = System.nanoTime();
+            final long elapsed = prevWallTime == 0L ? 0L : now - prevWallTime;
+            prevWallTime = now;
+
+            final long[] ids = threadBean.getAllThreadIds();
+            final ThreadInfo[] infos = threadBean.getThreadInfo(ids, 0);
+            final long[] deadlockedIds = threadBean.findDeadlockedThreads();
+            final Set<Long> deadlocked = new HashSet<>();
+            if (deadlockedIds != null) {
+                for (long id : deadlockedIds) {
+                    deadlocked.add(id);
+                }
+            }
+
+            final Map<Long, Long> cpu = new HashMap<>(ids.length * 2);
+            final List<ThreadRow> rows = new ArrayList<>(ids.length);
+            ThreadRow edt = null;
+            ThreadRow busiest = null;
+            for (ThreadInfo ti : infos) {
+                if (ti == null) {
+                    continue; // thread died
+                }
+                final long id = ti.getThreadId();
+                ThreadRow r = new ThreadRow();
+                r.name = ti.getThreadName();
+                r.state = ti.getThreadState();
+                if (cpuSupported) {
+                    final long t = threadBean.getThreadCpuTime(id);
+                    if (t >= 0L) {
+                        cpu.put(id, t);
+                        r.cpuMillis = t / 1_000_000L;
+                        final Long prev = prevCpu.get(id);
+                        if (prev != null && elapsed > 0L) {
+                            r.cpuPercent = (t - prev) * 100d / elapsed;
+                        }
+                    }
+                }
+                r.blockedCount = ti.getBlockedCount();
+                r.blockedMillis = Math.max(0L, ti.getBlockedTime());
+                r.waitedCount = ti.getWaitedCount();
+                r.waitedMillis = Math.max(0L, ti.getWaitedTime());
+                if (ti.getLockName() != null) {
+                    r.lock = ti.getLockOwnerName() == null
+                            ? ti.getLockName()
+                            : ti.getLockName() + " held by " + ti.getLockOwnerName();
+                } else {
+                    r.lock = "";
+                }
+                r.deadlocked = deadlocked.contains(id);
+                rows.add(r);
+
+                if (r.name.startsWith("AWT-EventQueue")) {
+                    edt = r;
+                }
+                if (busiest == null || r.cpuPercent > busiest.cpuPercent) {
+                    busiest = r;
+                }
+            }
+            prevCpu = cpu;
+
+            final String text = summarize(rows.size(), edt, busiest, deadlocked.size());
+            EventQueue.invokeLater(() -> {
+                summary.setText(text);
+                summary.setForeground(deadlocked.isEmpty() ? Color.WHITE : DEADLOCKED);
+                model.setRows(rows);
+            });
+        } catch (RuntimeException ex) {
+            StrangeEons.log.log(Level.WARNING, "thread sample failed", ex);
+        }
+    }
+
+    private String summarize(int threads, ThreadRow edt, ThreadRow busiest, int deadlocks) {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("%d threads", threads));
+        if (cpuSupported) {
+            if (edt != null) {
+                b.append(String.format("    EDT %.0f%% CPU", edt.cpuPercent));
+            }
+            if (busiest != null && busiest != edt) {
+                b.append(String.format("    Busiest: %s %.0f%%", busiest.name, busiest.cpuPercent));
+            }
+        } else {
+            b.append("    CPU time not supported");
+        }
+        if (deadlocks > 0) {
+            b.append(String.format("    DEADLOCK: %d threads", deadlocks));
+        }
+        return b.toString();
+    }
+
+    private final class ThreadModel extends AbstractTableModel {
+
+        private final String[] names = new String[]{
+            "Thread", "State", "CPU %", "CPU ms", "Blocked", "Blocked ms", "Waited", "Waited ms", "Waiting On"
+        };
+        private final Class<?>[] types = new Class<?>[]{
+            String.class, String.class, Double.class, Long.class, Long.class, Long.class, Long.class, Long.class, String.class
+        };
+        private List<ThreadRow> rows = Collections.emptyList();
+
+        void setRows(List<ThreadRow> rows) {
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return names.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return names[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return types[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            ThreadRow r = rows.get(row);
+            switch (column) {
+                case 0:
+                    return r.name;
+                case 1:
+                    return r.state.toString();
+                case 2:
+                    return r.cpuPercent;
+                case 3:
+                    return r.cpuMillis;
+                case 4:
+                    return r.blockedCount;
+                case 5:
+                    return r.blockedMillis;
+                case 6:
+                    return r.waitedCount;
+                case 7:
+                    return r.waitedMillis;
+                default:
+                    return r.lock;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import ca.cgjennings.apps.arkham.StrangeEons;
+import java.awt.Image;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import resources.CacheMetrics;
+import resources.ResourceKit;
+import resources.Settings;
+
+/**
+ * Records the images held in the registered caches so that they can be
+ * loaded in the background the next time the application starts. Opening the
+ * first component of a large project is otherwise slow because every image
+ * must be loaded from scratch.
+ *
+ * <p>
+ * Only caches of images whose keys are resource identifiers can be replayed,
+ * since those can be reloaded by passing the key to
+ * {@link ResourceKit#getImage}. Caches whose contents cannot be located (see
+ * {@link CacheContents}) are skipped.
+ *
+ * @author Christopher G. Jennings (<https://cgjennings.ca/contact>)
+ */
+final class WarmUpProfile {
+
+    private static final String PROFILE_FILE = "devtools-warm-up-profile";
+    private static final String ENABLED_KEY = "devtools-cache-warm-up";
+    private static final int MAX_ENTRIES = 4000;
+
+    private static ExecutorService executor;
+
+    private WarmUpProfile() {
+    }
+
+    private static File profileFile() {
+        return StrangeEons.getUserStorageFile(PROFILE_FILE);
+    }
+
+    public static boolean isEnabled() {
+        return Settings.getUser().getInt(ENABLED_KEY, 0) != 0;
+    }
+
+    /**
+     * Sets whether the saved profile is replayed when the plug-in starts.
+     *
+     * @param enable if true, replay the profile at startup
+     */
+    public static void setEnabled(boolean enable) {
+        Settings.getUser().set(ENABLED_KEY, enable ? "1" : "0");
+    }
+
+    /**
+     * Returns whether a profile has been saved.
+     *
+     * @return true if there is a profile to replay
+     */
+    public static boolean exists() {
+        return profileFile().exists();
+    }
+
+    /**
+     * Saves the resource identifiers of the images currently held in the
+     * registered caches as the new profile.
+     *
+     * @return the number of resources recorded
+     * @throws IOException if the profile cannot be written
+     */
+    public static int record() throws IOException {
+        Set<String> resources = new LinkedHashSet<>();
+        for (CacheMetrics cm : ResourceKit.getRegisteredCacheMetrics()) {
+            if (!Image.class.isAssignableFrom(cm.getContentType())) {
+                continue;
+            }
+            List<Object> keys = CacheContents.getKeys(cm);
+            if (keys == null) {
+                continue;
+            }
+            for (Object k : keys) {
+                if (k instanceof String && resources.size() < MAX_ENTRIES) {
+                    resources.add((String) k);
+                }
+            }
+        }
+
+        File f = profileFile();
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8))) {
+            for (String r : resources) {
+                out.write(r);
+                out.write('\n');
+            }
+        }
+        return resources.size();
+    }
+
+    /**
+     * Starts loading the resources in the saved profile on background
+     * threads, if warm-up is enabled and a profile exists. Returns
+     * immediately.
+     */
+    public static synchronized void replay() {
+        if (!isEnabled() || !exists() || executor != null) {
+            return;
+        }
+        final Set<String> resources = new LinkedHashSet<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(profileFile()), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    resources.add(line);
+                }
+            }
+        } catch (IOException ex) {
+            StrangeEons.log.log(Level.WARNING, "unable to read warm-up profile", ex);
+            return;
+        }
+
+        final int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        final AtomicInteger threadNum = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, (r) -> {
+            Thread t = new Thread(r, "Developer Tools cache warm-up " + threadNum.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+
+        final long start = System.nanoTime();
+        final AtomicInteger loaded = new AtomicInteger();
+        for (final String r : resources) {
+            executor.submit(() -> {
+                try {
+                    if (ResourceKit.getImage(r) != null) {
+                        loaded.incrementAndGet();
+                    }
+                } catch (RuntimeException ex) {
+                    // the resource may no longer exist
+                }
+            });
+        }
+        executor.shutdown();
+
+        // log the result once all of the tasks finish
+        final ExecutorService pool = executor;
+        Thread waiter = new Thread(() -> {
+            try {
+                if (pool.awaitTermination(5, TimeUnit.MINUTES)) {
+                    StrangeEons.log.log(Level.INFO, "warmed up {0} of {1} cached images in {2} ms", new Object[]{
+                        loaded.get(), resources.size(), (System.nanoTime() - start) / 1_000_000L
+                    });
+                }
+            } catch (InterruptedException ex) {
+                // cancelled
+            }
+        }, "Developer Tools cache warm-up monitor");
+        waiter.setDaemon(true);
+        waiter.start();
+    }
+
+    /**
+     * Stops any warm-up that is still in progress.
+     */
+    public static synchronized void cancel() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
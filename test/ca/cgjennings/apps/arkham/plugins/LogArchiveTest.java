@@ -0,0 +1,75 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for reading saved log segments with {@link LogArchive}.
+ */
+public class LogArchiveTest {
+
+    private static final String HEADER = "# Developer Tools log: time\tlevel\tlogger\tthread\tmessage\tstack trace\n";
+    private File file;
+
+    @After
+    public void tearDown() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes a segment, optionally leaving it unclosed as a crash would.
+     */
+    private File writeSegment(String text, boolean close) throws IOException {
+        file = File.createTempFile("log-test-", LogArchive.EXTENSION);
+        OutputStream fileOut = new FileOutputStream(file);
+        GZIPOutputStream out = new GZIPOutputStream(fileOut, 8192, true);
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+        if (close) {
+            out.close();
+        } else {
+            out.flush();
+            fileOut.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testReadComplete() throws IOException {
+        LogStore store = new LogStore(LogSpill.BLOCK_SIZE);
+        File f = writeSegment(HEADER
+                + "1\tINFO\tlog\tmain\tfirst\t\n"
+                + "2\tWARNING\tlog\tmain\tline\\nbreak\ttrace\\tx\n", true);
+        assertTrue(LogArchive.read(f, store));
+        assertEquals(2L, store.getCount());
+        assertEquals("line\nbreak", store.getMessage(1L));
+        assertEquals("trace\tx", store.getStackTrace(1L));
+        assertNull(store.getStackTrace(0L));
+    }
+
+    @Test
+    public void testReadIgnoresPartialLastLine() throws IOException {
+        LogStore store = new LogStore(LogSpill.BLOCK_SIZE);
+        File f = writeSegment(HEADER
+                + "1\tINFO\tlog\tmain\tfirst\t\n"
+                + "2\tINFO\tlog\tmain\tsecond\t\n"
+                + "3\tINFO\tlo", false);
+        assertFalse(LogArchive.read(f, store));
+        assertEquals(2L, store.getCount());
+        assertEquals("second", store.getMessage(1L));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedLineInCompleteSegment() throws IOException {
+        File f = writeSegment(HEADER + "1\tINFO\tlo\n", true);
+        LogArchive.read(f, new LogStore(LogSpill.BLOCK_SIZE));
+    }
+}
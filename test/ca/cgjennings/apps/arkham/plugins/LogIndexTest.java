@@ -0,0 +1,132 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LogIndex}.
+ */
+public class LogIndexTest {
+
+    private static LogStore createStore() {
+        LogStore store = new LogStore(LogSpill.BLOCK_SIZE);
+        store.add(0L, Level.SEVERE, "a", "t", "disk failed", null);
+        store.add(1L, Level.INFO, "b", "t", "started", null);
+        store.add(2L, Level.FINE, "a", "t", "detail", null);
+        store.add(3L, null, null, null, "old text", null);
+        store.add(4L, Level.WARNING, "b", "t", "disk low", null);
+        return store;
+    }
+
+    private static long[] rows(LogIndex index) {
+        long[] rows = new long[index.size()];
+        for (int i = 0; i < rows.length; ++i) {
+            rows[i] = index.get(i);
+        }
+        return rows;
+    }
+
+    @Test
+    public void testUnfiltered() {
+        LogIndex index = new LogIndex(createStore());
+        index.setFilter(LogStore.LEVELS.length - 1, -1, null);
+        assertArrayEquals(new long[]{0, 1, 2, 3, 4}, rows(index));
+    }
+
+    @Test
+    public void testLevelFilterKeepsUnknownLevels() {
+        LogIndex index = new LogIndex(createStore());
+        index.setFilter(LogStore.levelCode(Level.WARNING), -1, null);
+        assertArrayEquals(new long[]{0, 3, 4}, rows(index));
+    }
+
+    @Test
+    public void testLoggerFilter() {
+        LogStore store = createStore();
+        LogIndex index = new LogIndex(store);
+        index.setFilter(LogStore.LEVELS.length - 1, store.getSymbolId("b"), null);
+        assertArrayEquals(new long[]{1, 4}, rows(index));
+    }
+
+    @Test
+    public void testPatternFilter() {
+        LogIndex index = new LogIndex(createStore());
+        index.setFilter(LogStore.LEVELS.length - 1, -1, Pattern.compile("disk"));
+        assertArrayEquals(new long[]{0, 4}, rows(index));
+        assertEquals(1, index.indexOf(4L));
+        assertEquals(-2, index.indexOf(1L));
+    }
+
+    @Test
+    public void testScanAddsNewRecords() {
+        LogStore store = createStore();
+        LogIndex index = new LogIndex(store);
+        index.setFilter(LogStore.LEVELS.length - 1, -1, Pattern.compile("disk"));
+        store.add(5L, Level.INFO, "a", "t", "disk ok", null);
+        store.add(6L, Level.INFO, "a", "t", "other", null);
+        assertEquals(1, index.scan());
+        assertArrayEquals(new long[]{0, 4, 5}, rows(index));
+    }
+
+    @Test
+    public void testPruneDropsDiscardedRecords() {
+        LogStore store = new LogStore(LogSpill.BLOCK_SIZE);
+        LogIndex index = new LogIndex(store);
+        index.setFilter(LogStore.LEVELS.length - 1, -1, null);
+        for (int i = 0; i < LogSpill.BLOCK_SIZE; ++i) {
+            store.add(i, Level.INFO, "a", "t", "m", null);
+        }
+        index.scan();
+        for (int i = 0; i < 5; ++i) {
+            store.add(i, Level.INFO, "a", "t", "m", null);
+        }
+        assertEquals(5, index.prune());
+        index.scan();
+        assertEquals(LogSpill.BLOCK_SIZE, index.size());
+        assertEquals(5L, index.get(0));
+    }
+
+    @Test
+    public void testRebuildIncludesRecordsAddedWhileRunning() {
+        LogStore store = createStore();
+        LogIndex index = new LogIndex(store);
+        index.setFilter(LogStore.LEVELS.length - 1, -1, null);
+        LogIndex.Rebuild r = index.startFilter(LogStore.LEVELS.length - 1, -1, Pattern.compile("disk"));
+        store.add(5L, Level.INFO, "a", "t", "disk ok", null);
+        r.run();
+        assertTrue(r.isDone());
+        // the old filter stays in effect until the rebuild is finished
+        assertEquals(5, index.size());
+        index.finishFilter(r);
+        assertArrayEquals(new long[]{0, 4, 5}, rows(index));
+    }
+
+    @Test
+    public void testCancelledRebuildIsNotDone() {
+        LogIndex index = new LogIndex(createStore());
+        LogIndex.Rebuild r = index.startFilter(0, -1, null);
+        r.cancel();
+        r.run();
+        assertFalse(r.isDone());
+    }
+
+    @Test
+    public void testFilterSpilledRecords() {
+        LogStore store = new LogStore(LogSpill.BLOCK_SIZE);
+        store.setSpill(new LogSpill(store.getSpillStart(), Long.MAX_VALUE));
+        try {
+            for (int i = 0; i < LogSpill.BLOCK_SIZE * 4; ++i) {
+                store.add(i, i % 100 == 0 ? Level.SEVERE : Level.INFO, i % 2 == 0 ? "even" : "odd", "t", "record " + i, null);
+            }
+            LogIndex index = new LogIndex(store);
+            index.setFilter(0, store.getSymbolId("even"), Pattern.compile("0$"));
+            assertEquals((LogSpill.BLOCK_SIZE * 4 + 99) / 100, index.size());
+            assertEquals(0L, index.get(0));
+            assertEquals(100L, index.get(1));
+        } finally {
+            store.setSpill(null);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LogSpill}.
+ */
+public class LogSpillTest {
+
+    private LogSpill spill;
+
+    @After
+    public void tearDown() {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    private static LogSpill.Block block(long first, int size) {
+        LogSpill.Block b = new LogSpill.Block(first, size);
+        for (int i = 0; i < size; ++i) {
+            final long seq = first + i;
+            b.times[i] = seq * 10L;
+            b.levels[i] = (byte) (seq % LogStore.LEVELS.length);
+            b.loggers[i] = (int) (seq % 3);
+            b.threads[i] = (int) (seq % 5);
+            b.messages[i] = "record " + seq + " \u00e9";
+            b.thrown[i] = seq % 2 == 0 ? null : "trace " + seq;
+        }
+        return b;
+    }
+
+    private static void assertRecord(LogSpill.Block b, long seq) {
+        final int i = (int) (seq - b.first);
+        assertEquals(seq * 10L, b.times[i]);
+        assertEquals(seq % LogStore.LEVELS.length, b.levels[i]);
+        assertEquals(seq % 3, b.loggers[i]);
+        assertEquals(seq % 5, b.threads[i]);
+        assertEquals("record " + seq + " \u00e9", b.messages[i]);
+        assertEquals(seq % 2 == 0 ? null : "trace " + seq, b.thrown[i]);
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        spill = new LogSpill(100L, Long.MAX_VALUE);
+        assertEquals(100L, spill.getFirst());
+        assertEquals(100L, spill.getEnd());
+        spill.write(block(100L, LogSpill.BLOCK_SIZE));
+        spill.write(block(100L + LogSpill.BLOCK_SIZE, 7));
+        assertEquals(100L + LogSpill.BLOCK_SIZE + 7, spill.getEnd());
+        for (long seq = spill.getFirst(); seq < spill.getEnd(); ++seq) {
+            assertRecord(spill.read(seq), seq);
+            assertEquals(seq % LogStore.LEVELS.length, spill.getLevel(seq));
+            assertEquals(seq % 3, spill.getLogger(seq));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBlocksMustBeConsecutive() throws IOException {
+        spill = new LogSpill(0L, Long.MAX_VALUE);
+        spill.write(block(1L, 1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testReadPastEnd() throws IOException {
+        spill = new LogSpill(0L, Long.MAX_VALUE);
+        spill.write(block(0L, 4));
+        spill.read(4L);
+    }
+
+    @Test
+    public void testLimitDeletesOldSegments() throws IOException {
+        spill = new LogSpill(0L, LogSpill.BLOCK_SIZE);
+        // enough blocks to fill several segments
+        for (int i = 0; i < 200; ++i) {
+            spill.write(block(spill.getEnd(), LogSpill.BLOCK_SIZE));
+        }
+        assertTrue(spill.getFirst() > 0L);
+        assertEquals(200L * LogSpill.BLOCK_SIZE, spill.getEnd());
+        assertRecord(spill.read(spill.getFirst()), spill.getFirst());
+        assertRecord(spill.read(spill.getEnd() - 1L), spill.getEnd() - 1L);
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        spill = new LogSpill(0L, Long.MAX_VALUE);
+        spill.write(block(0L, 10));
+        spill.close();
+        assertEquals(spill.getEnd(), spill.getFirst());
+    }
+}
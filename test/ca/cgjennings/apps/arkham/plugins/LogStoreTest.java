@@ -0,0 +1,128 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.util.logging.Level;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LogStore}.
+ */
+public class LogStoreTest {
+
+    private LogStore store;
+
+    @After
+    public void tearDown() {
+        if (store != null) {
+            store.setSpill(null);
+        }
+    }
+
+    private static void addRecords(LogStore store, int n) {
+        for (int i = 0; i < n; ++i) {
+            final long seq = store.getCount();
+            store.add(seq, Level.INFO, "logger", "thread", "message " + seq, null);
+        }
+    }
+
+    @Test
+    public void testAddAndRead() {
+        store = new LogStore(LogSpill.BLOCK_SIZE);
+        final long seq = store.add(42L, Level.WARNING, "log", "main", "hello", "trace");
+        assertEquals(0L, seq);
+        assertEquals(1L, store.getCount());
+        assertEquals(42L, store.getTime(seq));
+        assertEquals(1, store.getLevel(seq));
+        assertEquals("log", store.getSymbol(store.getLogger(seq)));
+        assertEquals("main", store.getSymbol(store.getThread(seq)));
+        assertEquals("hello", store.getMessage(seq));
+        assertEquals("trace", store.getStackTrace(seq));
+    }
+
+    @Test
+    public void testNullFields() {
+        store = new LogStore(LogSpill.BLOCK_SIZE);
+        final long seq = store.add(0L, null, null, null, null, null);
+        assertEquals(LogStore.UNKNOWN_LEVEL, store.getLevel(seq));
+        assertEquals("", store.getSymbol(store.getLogger(seq)));
+        assertEquals("", store.getMessage(seq));
+        assertNull(store.getStackTrace(seq));
+    }
+
+    @Test
+    public void testLevelCode() {
+        assertEquals(0, LogStore.levelCode(Level.SEVERE));
+        assertEquals(2, LogStore.levelCode(Level.INFO));
+        assertEquals(LogStore.LEVELS.length - 1, LogStore.levelCode(Level.ALL));
+        assertEquals(LogStore.UNKNOWN_LEVEL, LogStore.levelCode(null));
+        // a custom level between INFO and WARNING is classified as INFO
+        assertEquals(2, LogStore.levelCode(Level.parse("850")));
+    }
+
+    @Test
+    public void testRingDiscardsOldest() {
+        store = new LogStore(LogSpill.BLOCK_SIZE);
+        addRecords(store, LogSpill.BLOCK_SIZE + 10);
+        assertEquals(10L, store.getFirst());
+        assertEquals(LogSpill.BLOCK_SIZE, store.size());
+        assertEquals("message 10", store.getMessage(10L));
+        assertEquals("message " + (LogSpill.BLOCK_SIZE + 9), store.getMessage(LogSpill.BLOCK_SIZE + 9));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testDiscardedRecordIsNotAvailable() {
+        store = new LogStore(LogSpill.BLOCK_SIZE);
+        addRecords(store, LogSpill.BLOCK_SIZE + 1);
+        store.getMessage(0L);
+    }
+
+    @Test
+    public void testSetCapacity() {
+        store = new LogStore(LogSpill.BLOCK_SIZE * 2);
+        addRecords(store, LogSpill.BLOCK_SIZE * 2);
+        store.setCapacity(LogSpill.BLOCK_SIZE);
+        assertEquals(LogSpill.BLOCK_SIZE, store.getFirst());
+        assertEquals("message " + LogSpill.BLOCK_SIZE, store.getMessage(LogSpill.BLOCK_SIZE));
+        store.setCapacity(LogSpill.BLOCK_SIZE * 3);
+        addRecords(store, LogSpill.BLOCK_SIZE);
+        assertEquals(LogSpill.BLOCK_SIZE, store.getFirst());
+        assertEquals("message " + (LogSpill.BLOCK_SIZE * 2), store.getMessage(LogSpill.BLOCK_SIZE * 2));
+    }
+
+    @Test
+    public void testSpilledRecordsAreReadable() {
+        store = new LogStore(LogSpill.BLOCK_SIZE);
+        store.setSpill(new LogSpill(store.getSpillStart(), Long.MAX_VALUE));
+        addRecords(store, LogSpill.BLOCK_SIZE * 5 + 3);
+        assertEquals(0L, store.getFirst());
+        for (long seq = 0L; seq < store.getCount(); seq += 97L) {
+            assertEquals("message " + seq, store.getMessage(seq));
+            assertEquals(seq, store.getTime(seq));
+            assertEquals("logger", store.getSymbol(store.getLogger(seq)));
+        }
+    }
+
+    @Test
+    public void testSymbolTableLimit() {
+        store = new LogStore(LogSpill.BLOCK_SIZE);
+        for (int i = 0; i < 5_000; ++i) {
+            store.add(i, Level.INFO, "logger", "thread " + i, "message", null);
+        }
+        // names after the limit share one symbol instead of failing
+        assertEquals("thread 4000", store.getSymbol(store.getThread(4_000L)));
+        assertEquals("(other)", store.getSymbol(store.getThread(4_999L)));
+        assertEquals(store.getThread(4_998L), store.getThread(4_999L));
+    }
+
+    @Test
+    public void testLoggersListedOnce() {
+        store = new LogStore(LogSpill.BLOCK_SIZE);
+        store.add(0L, Level.INFO, "a", "t", "m", null);
+        store.add(1L, Level.INFO, "b", "t", "m", null);
+        store.add(2L, Level.INFO, "a", "t", "m", null);
+        assertEquals(2, store.getLoggers().size());
+        assertEquals(store.getSymbolId("a"), (int) store.getLoggers().get(0));
+        assertEquals(-1, store.getSymbolId("missing"));
+    }
+}
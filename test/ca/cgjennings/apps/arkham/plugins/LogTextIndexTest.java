@@ -0,0 +1,136 @@
+package ca.cgjennings.apps.arkham.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LogTextIndex}.
+ */
+public class LogTextIndexTest {
+
+    private static LogTextIndex createIndex(String... messages) {
+        LogStore store = new LogStore(LogSpill.BLOCK_SIZE);
+        for (String m : messages) {
+            store.add(0L, Level.INFO, "a", "t", m, null);
+        }
+        return new LogTextIndex(store);
+    }
+
+    @Test
+    public void testTokenize() {
+        List<String> tokens = new ArrayList<>();
+        LogTextIndex.tokenize("Loaded plug-in X in 25ms", tokens);
+        assertEquals(Arrays.asList("loaded", "plug", "in", "in", "25ms"), tokens);
+    }
+
+    @Test
+    public void testTokenizeTruncatesLongWords() {
+        List<String> tokens = new ArrayList<>();
+        char[] word = new char[LogTextIndex.MAX_WORD * 2];
+        Arrays.fill(word, 'a');
+        LogTextIndex.tokenize(new String(word), tokens);
+        assertEquals(LogTextIndex.MAX_WORD, tokens.get(0).length());
+    }
+
+    @Test
+    public void testSearchWholeWords() {
+        LogTextIndex index = createIndex("Font cache cleared", "cache miss", "clearing fonts", "font cache full");
+        assertArrayEquals(new long[]{0, 3}, index.search(" cache "));
+        assertArrayEquals(new long[]{0}, index.search(" cache cleared"));
+    }
+
+    @Test
+    public void testSearchPartialWords() {
+        LogTextIndex index = createIndex("Font cache cleared", "cache miss", "clearing fonts", "font cache full");
+        assertArrayEquals(new long[]{0, 2}, index.search("clear"));
+        assertArrayEquals(new long[]{0, 3}, index.search("nt cac"));
+        assertArrayEquals(new long[]{0}, index.search("e clea"));
+    }
+
+    @Test
+    public void testSearchWithoutWords() {
+        LogTextIndex index = createIndex("a: b", "x-y", "a:b");
+        assertArrayEquals(new long[]{0}, index.search(": "));
+    }
+
+    @Test
+    public void testSearchFrom() {
+        LogTextIndex index = createIndex("cache", "cache", "cache");
+        assertArrayEquals(new long[]{1, 2}, index.search("cache", 1L));
+    }
+
+    @Test
+    public void testNoMatch() {
+        LogTextIndex index = createIndex("Font cache cleared");
+        assertEquals(0, index.search("missing").length);
+        assertEquals(0, index.search(" cache missing ").length);
+    }
+
+    @Test
+    public void testTokenizeSkipsNumbers() {
+        List<String> tokens = new ArrayList<>();
+        assertTrue(LogTextIndex.tokenize("object@0x7f3a at 12345 in cafe 1f", tokens));
+        assertEquals(Arrays.asList("object", "at", "in", "cafe"), tokens);
+        tokens.clear();
+        assertFalse(LogTextIndex.tokenize("no numbers here", tokens));
+    }
+
+    @Test
+    public void testSearchFindsNumbers() {
+        LogTextIndex index = createIndex("hash abc123 ok", "id 12345 loaded", "address 0x7f3a", "plain text");
+        assertArrayEquals(new long[]{0}, index.search("abc"));
+        assertArrayEquals(new long[]{0, 1}, index.search("123"));
+        assertArrayEquals(new long[]{1}, index.search("id 12345 loaded"));
+        assertArrayEquals(new long[]{2}, index.search("x7f"));
+        assertArrayEquals(new long[]{1}, index.search(" 12345 "));
+    }
+
+    @Test
+    public void testSearchOnlyNumbers() {
+        LogTextIndex index = createIndex(
+                "request 550e8400-e29b-41d4-a716-446655440000 done",
+                "request 550e8400-e29b-41d4-a716-000000000000 done",
+                "object@0x7F3A freed",
+                "object@0x7f3b freed",
+                "register mx7f3az",
+                "no numbers here"
+        );
+        assertArrayEquals(new long[]{0}, index.search("550e8400-e29b-41d4-a716-446655440000"));
+        assertArrayEquals(new long[]{0, 1}, index.search("e29b-41d4-a716"));
+        assertArrayEquals(new long[]{2}, index.search("0x7f3a"));
+        assertArrayEquals(new long[]{2, 4}, index.search("x7f3a"));
+        assertEquals(0, index.search("0x7f3c").length);
+    }
+
+    @Test
+    public void testSearchMatchesScan() {
+        final String[] words = {"cache", "cleared", "font", "0x1f", "42", "a1b2", "plug", "in", "deadbeef", "loaded"};
+        final Random random = new Random(7);
+        final String[] messages = new String[500];
+        for (int i = 0; i < messages.length; ++i) {
+            StringBuilder b = new StringBuilder();
+            for (int w = random.nextInt(6); w >= 0; --w) {
+                b.append(words[random.nextInt(words.length)]).append(random.nextBoolean() ? " " : "-");
+            }
+            messages[i] = b.toString();
+        }
+        LogTextIndex index = createIndex(messages);
+        final String[] queries = {"cache", "ache clea", "d-font", "0x1", "2 plug", "in 42", "beef lo", "a1", "ared",
+            "42 0x1f", "-42-", "deadbeef", "1f-a1b2-"};
+        for (String q : queries) {
+            long[] expected = new long[messages.length];
+            int n = 0;
+            for (int i = 0; i < messages.length; ++i) {
+                if (messages[i].contains(q)) {
+                    expected[n++] = i;
+                }
+            }
+            assertArrayEquals(Arrays.copyOf(expected, n), index.search(q));
+        }
+    }
+}